@@ -0,0 +1,185 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.io.File;
+ import java.io.IOException;
+ import java.nio.charset.StandardCharsets;
+ import java.nio.file.Files;
+ import java.sql.Connection;
+ import java.sql.DriverManager;
+ import java.sql.PreparedStatement;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Statement;
+
+ /**
+  * A throwaway schema holding a synthetic data set, so benchmarks can
+  * write orders and flip statuses without touching the database's own
+  * tables.
+  *
+  * The schema is made with the table, trigger and index scripts and
+  * filled from the CSV files of a data directory with BulkLoader; the
+  * files are generated with DataGenerator first if the directory has
+  * none, so the scale is set with the gen.* options. Connections reach the
+  * schema through the currentSchema parameter of the JDBC URL, which puts
+  * it alone on the search_path. close() drops the schema with everything
+  * in it.
+  *
+  * Run from the directory holding the SQL scripts, as for BulkLoader.
+  *
+  * Options (-D on the java command line):
+  *   bench.schema=NAME     schema to create (default pizzastore_bench)
+  *   bench.tables=FILE     table script (default create_tables.sql)
+  *   bench.data=DIR        CSV directory; generated there if empty
+  *                         (default a temporary directory, deleted after loading)
+  *   bench.keepSchema=true keep the schema after the run, and reuse it
+  *                         instead of loading again if it already exists
+  *
+  */
+ public class BenchmarkSchema implements AutoCloseable {
+
+    static final String SCHEMA = System.getProperty("bench.schema", "pizzastore_bench");
+    static final String TABLES_SCRIPT = System.getProperty("bench.tables", "create_tables.sql");
+    static final String DATA_DIR = System.getProperty("bench.data", "");
+    static final boolean KEEP_SCHEMA = Boolean.getBoolean("bench.keepSchema");
+
+    // run in this order in the new schema.
+    static final String TRIGGER_SCRIPT = "create_triggers.sql";
+    static final String INDEX_SCRIPT = "create_indexes.sql";
+
+    private final String _dbname;
+    private final String _dbport;
+    private final String _user;
+    private final String _schema;
+
+    /**
+     * @param schema a lowercase SQL identifier; it is dropped by close()
+     */
+    public BenchmarkSchema(String dbname, String dbport, String user, String schema) {
+       if (!schema.matches("[a-z_][a-z0-9_]*")) {
+          throw new IllegalArgumentException("Not a plain schema name: " + schema);
+       }
+       _dbname = dbname;
+       _dbport = dbport;
+       _user = user;
+       _schema = schema;
+    }
+
+    /**
+     * Returns the bench.schema schema, created and loaded unless
+     * bench.keepSchema is set and it already exists.
+     */
+    public static BenchmarkSchema prepare(String dbname, String dbport, String user) throws Exception {
+       BenchmarkSchema schema = new BenchmarkSchema(dbname, dbport, user, SCHEMA);
+       if (KEEP_SCHEMA && schema.exists()) {
+          System.out.println("Reusing schema " + SCHEMA);
+       } else {
+          schema.create();
+       }
+       return schema;
+    }
+
+    /**
+     * The database name to give PizzaStore to work in this schema.
+     */
+    public String dbname() {
+       return _dbname + "?currentSchema=" + _schema;
+    }
+
+    public String url() {
+       return "jdbc:postgresql://localhost:" + _dbport + "/" + dbname();
+    }
+
+    public String getUser() {
+       return _user;
+    }
+
+    public boolean exists() throws SQLException {
+       String url = "jdbc:postgresql://localhost:" + _dbport + "/" + _dbname;
+       try (Connection conn = DriverManager.getConnection(url, _user, "");
+            PreparedStatement stmt = conn.prepareStatement(
+               "SELECT 1 FROM information_schema.schemata WHERE schema_name = ?")) {
+          stmt.setString(1, _schema);
+          try (ResultSet rs = stmt.executeQuery()) {
+             return rs.next();
+          }
+       }
+    }
+
+    /**
+     * Drops the schema if it exists, then creates it and loads the data
+     * set into it.
+     */
+    public void create() throws Exception {
+       long start = System.nanoTime();
+       String url = "jdbc:postgresql://localhost:" + _dbport + "/" + _dbname;
+       try (Connection conn = DriverManager.getConnection(url, _user, "");
+            Statement stmt = conn.createStatement()) {
+          stmt.execute("DROP SCHEMA IF EXISTS " + _schema + " CASCADE");
+          stmt.execute("CREATE SCHEMA " + _schema);
+       }
+       // the schema is alone on the search_path here, so the scripts'
+       // DROP ... IF EXISTS statements cannot reach the public tables
+       try (Connection conn = DriverManager.getConnection(url(), _user, "");
+            Statement stmt = conn.createStatement()) {
+          for (String script : new String[] { TABLES_SCRIPT, TRIGGER_SCRIPT, INDEX_SCRIPT }) {
+             // the driver splits the script itself, keeping $BODY$ blocks whole
+             stmt.execute(new String(Files.readAllBytes(new File(script).toPath()), StandardCharsets.UTF_8));
+          }
+       }
+
+       File dataDir = DATA_DIR.isEmpty() ? Files.createTempDirectory("pizzastore-bench").toFile() : new File(DATA_DIR);
+       try {
+          if (!new File(dataDir, "foodorder.csv").isFile()) {
+             if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+                throw new IOException("Cannot create " + dataDir);
+             }
+             new DataGenerator(dataDir).generate();
+          }
+          new BulkLoader(url(), _user, dataDir).load();
+       } finally {
+          if (DATA_DIR.isEmpty()) {
+             deleteFiles(dataDir);
+          }
+       }
+       try (Connection conn = DriverManager.getConnection(url(), _user, "");
+            Statement stmt = conn.createStatement()) {
+          stmt.execute("ANALYZE");
+       }
+       System.out.println(String.format("Schema %s ready in %.1f s%n", _schema, (System.nanoTime() - start) / 1e9));
+    }//end create
+
+    /**
+     * Drops the schema, unless bench.keepSchema is set.
+     */
+    public void close() throws SQLException {
+       if (KEEP_SCHEMA) {
+          System.out.println("Keeping schema " + _schema);
+          return;
+       }
+       String url = "jdbc:postgresql://localhost:" + _dbport + "/" + _dbname;
+       try (Connection conn = DriverManager.getConnection(url, _user, "");
+            Statement stmt = conn.createStatement()) {
+          stmt.execute("DROP SCHEMA IF EXISTS " + _schema + " CASCADE");
+       }
+    }
+
+    private static void deleteFiles(File dir) {
+       File[] files = dir.listFiles();
+       if (files != null) {
+          for (File file : files) {
+             file.delete();
+          }
+       }
+       dir.delete();
+    }
+ }//end BenchmarkSchema
@@ -0,0 +1,392 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.io.BufferedInputStream;
+ import java.io.File;
+ import java.io.FileInputStream;
+ import java.io.FilterInputStream;
+ import java.io.IOException;
+ import java.io.InputStream;
+ import java.nio.charset.StandardCharsets;
+ import java.nio.file.Files;
+ import java.sql.Connection;
+ import java.sql.DriverManager;
+ import java.sql.SQLException;
+ import java.sql.Statement;
+ import java.util.ArrayList;
+ import java.util.List;
+ import java.util.concurrent.ExecutorService;
+ import java.util.concurrent.Executors;
+ import java.util.concurrent.Future;
+ import java.util.concurrent.atomic.AtomicLong;
+ import org.postgresql.PGConnection;
+
+ /**
+  * Loads the CSV data set from the client machine with the COPY protocol,
+  * so the files do not have to sit on the database host as load_data.sql
+  * requires.
+  *
+  * Tables are loaded in foreign key order, with the tables of one level
+  * streamed in parallel, each on its own connection:
+  *   1. Users, Items, Store
+  *   2. FoodOrder
+  *   3. ItemsInOrder
+  * The secondary indexes of create_indexes.sql are dropped first and
+  * rebuilt once all rows are in, which is much faster than maintaining
+  * them row by row; after a failed load they are rebuilt as well. The
+  * CustomerOrderSummary trigger is likewise skipped and the summary
+  * rebuilt in one pass. Progress and rows/sec are printed while loading.
+  *
+  * With the partitioned schema (create_tables_partitioned.sql), orders
+  * outside the existing monthly partitions are given partitions of their
+  * own once FoodOrder is loaded, and ItemsInOrder is staged and joined
+  * with FoodOrder to fill in each line's orderTimestamp. Lines whose order
+  * is missing fail the load, as the foreign key does otherwise.
+  *
+  * Options (-D on the java command line):
+  *   load.indexes=FILE           index script to defer (default create_indexes.sql)
+  *   load.keepIndexes=true       load with the indexes in place
+  *   load.progressSeconds=N      seconds between progress lines (default 5)
+  *   load.maintenanceWorkMem=X   maintenance_work_mem for the index build (default 512MB)
+  *
+  */
+ public class BulkLoader {
+
+    // tables in foreign key order; the tables of one level load in parallel.
+    static final String[][] LEVELS = {
+       { "Users", "Items", "Store" },
+       { "FoodOrder" },
+       { "ItemsInOrder" }
+    };
+
+    static final String INDEX_SCRIPT = System.getProperty("load.indexes", "create_indexes.sql");
+    static final boolean KEEP_INDEXES = Boolean.getBoolean("load.keepIndexes");
+    static final long PROGRESS_SECONDS = Long.getLong("load.progressSeconds", 5L);
+    static final String MAINTENANCE_WORK_MEM = System.getProperty("load.maintenanceWorkMem", "512MB");
+    static final int COPY_BUFFER_BYTES = 1 << 20;
+
+    private final String _url;
+    private final String _user;
+    private final File _dataDir;
+    private final List<TableLoad> _active = new ArrayList<TableLoad>();
+    private boolean _partitioned = false;
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <dbname> <port> <user> <data directory>
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length != 4) {
+          System.err.println (
+             "Usage: " +
+             "java [-classpath <classpath>] " +
+             BulkLoader.class.getName () +
+             " <dbname> <port> <user> <data directory>");
+          return;
+       }//end if
+
+       Class.forName ("org.postgresql.Driver");
+       String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+       BulkLoader loader = new BulkLoader(url, args[2], new File(args[3]));
+       try {
+          loader.load();
+       } catch (Exception e) {
+          System.err.println("Load failed: " + e.getMessage());
+          System.exit(1);
+       }
+    }//end main
+
+    public BulkLoader(String url, String user, File dataDir) {
+       _url = url;
+       _user = user;
+       _dataDir = dataDir;
+    }
+
+    /**
+     * Loads every table, then rebuilds the indexes and moves orderID_seq
+     * past the loaded orders.
+     */
+    public void load() throws Exception {
+       for (String[] level : LEVELS) {
+          for (String table : level) {
+             File file = csvFile(table);
+             if (!file.isFile()) {
+                throw new IOException("Missing " + file);
+             }
+          }
+       }
+
+       long start = System.nanoTime();
+       _partitioned = isPartitioned();
+       List<String> indexScript = KEEP_INDEXES ? null : readScript(new File(INDEX_SCRIPT));
+       if (indexScript != null) {
+          List<String> drops = new ArrayList<String>();
+          for (String statement : indexScript) {
+             if (statement.toUpperCase().startsWith("DROP INDEX")) {
+                drops.add(statement);
+             }
+          }
+          System.out.println("Dropping " + drops.size() + " secondary indexes...");
+          execute(drops, null);
+       }
+
+       Thread reporter = startReporter();
+       boolean loaded = false;
+       try {
+          for (String[] level : LEVELS) {
+             loadLevel(level);
+             if (_partitioned && level[0].equals("FoodOrder")) {
+                List<String> partitions = new ArrayList<String>();
+                partitions.add("SELECT create_order_partitions(MIN(F.orderTimestamp), MAX(F.orderTimestamp) + interval '1 second') "
+                   + "FROM FoodOrder_default F");
+                System.out.println("Creating partitions for the loaded months...");
+                execute(partitions, null);
+             }
+          }
+          loaded = true;
+       } finally {
+          reporter.interrupt();
+          // rebuilt even when a level failed, so the tables are not left without them
+          if (indexScript != null) {
+             try {
+                long indexStart = System.nanoTime();
+                System.out.println("Building indexes from " + INDEX_SCRIPT + "...");
+                execute(indexScript, "SET maintenance_work_mem = '" + MAINTENANCE_WORK_MEM + "'");
+                System.out.println(String.format("Indexes built in %.1f s", (System.nanoTime() - indexStart) / 1e9));
+             } catch (SQLException e) {
+                if (loaded) {
+                   throw e;
+                }
+                // the load failure is the one reported
+                System.err.println("The secondary indexes could not be rebuilt: " + e.getMessage()
+                   + "\nRebuild them with: psql -f " + INDEX_SCRIPT);
+             }
+          }
+       }
+
+       List<String> finish = new ArrayList<String>();
+       finish.add("SELECT setval('orderID_seq', GREATEST(10000, (SELECT COALESCE(MAX(orderID), 0) + 1 FROM FoodOrder)), false)");
+       finish.add("SELECT backfill_customer_order_summary()");
+       finish.add("ANALYZE");
+       execute(finish, null);
+
+       System.out.println(String.format("Loaded in %.1f s", (System.nanoTime() - start) / 1e9));
+    }//end load
+
+    /*
+     * Streams the tables of one level in parallel and waits for all of them.
+     */
+    private void loadLevel(String[] tables) throws Exception {
+       ExecutorService pool = Executors.newFixedThreadPool(tables.length);
+       try {
+          List<Future<Long>> results = new ArrayList<Future<Long>>();
+          for (final String table : tables) {
+             final TableLoad load = new TableLoad(table, csvFile(table).length());
+             synchronized (_active) {
+                _active.add(load);
+             }
+             results.add(pool.submit(() -> copy(load)));
+          }
+          for (Future<Long> result : results) {
+             try {
+                result.get();
+             } catch (java.util.concurrent.ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+             }
+          }
+       } finally {
+          pool.shutdownNow();
+       }
+    }//end loadLevel
+
+    private long copy(TableLoad load) throws SQLException, IOException {
+       long start = System.nanoTime();
+       // partitioned lines need their order's timestamp, which the file lacks
+       boolean staged = _partitioned && load.table.equals("ItemsInOrder");
+       try (Connection conn = DriverManager.getConnection(_url, _user, "");
+            InputStream in = new CountingInputStream(
+               new BufferedInputStream(new FileInputStream(csvFile(load.table)), COPY_BUFFER_BYTES), load)) {
+          try (Statement setup = conn.createStatement()) {
+             // the per-row summary trigger is skipped; the summary is rebuilt once at the end
+             setup.execute("SET pizzastore.bulk_load = on");
+             if (staged) {
+                setup.execute("CREATE TEMP TABLE ItemsInOrderStage (orderID integer, itemName varchar(50), quantity integer)");
+             }
+          }
+          long rows = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(
+             "COPY " + (staged ? "ItemsInOrderStage" : load.table) + " FROM STDIN WITH (FORMAT csv, HEADER true, DELIMITER ',')",
+             in, COPY_BUFFER_BYTES);
+          if (staged) {
+             // in one transaction, so lines without an order fail the load as
+             // the foreign key would with a direct COPY, and nothing is kept
+             conn.setAutoCommit(false);
+             try (Statement insert = conn.createStatement()) {
+                long inserted = insert.executeUpdate("INSERT INTO ItemsInOrder (orderID, orderTimestamp, itemName, quantity) "
+                   + "SELECT S.orderID, F.orderTimestamp, S.itemName, S.quantity "
+                   + "FROM ItemsInOrderStage S JOIN FoodOrder F ON F.orderID = S.orderID");
+                if (inserted != rows) {
+                   conn.rollback();
+                   throw new SQLException(String.format("%,d of %,d ItemsInOrder rows reference an order that is not in FoodOrder",
+                      rows - inserted, rows));
+                }
+                conn.commit();
+             }
+          }
+          double seconds = (System.nanoTime() - start) / 1e9;
+          System.out.println(String.format("%-14s done: %,d rows in %.1f s (%,.0f rows/s)",
+             load.table, rows, seconds, rows / Math.max(seconds, 1e-9)));
+          return rows;
+       } finally {
+          synchronized (_active) {
+             _active.remove(load);
+          }
+       }
+    }//end copy
+
+    /*
+     * Prints one progress line per table being loaded every PROGRESS_SECONDS.
+     */
+    private Thread startReporter() {
+       Thread reporter = new Thread(() -> {
+          try {
+             while (true) {
+                Thread.sleep(PROGRESS_SECONDS * 1000);
+                synchronized (_active) {
+                   for (TableLoad load : _active) {
+                      System.out.println(load.progress());
+                   }
+                }
+             }
+          } catch (InterruptedException e) {
+             // loading finished.
+          }
+       }, "load-progress");
+       reporter.setDaemon(true);
+       reporter.start();
+       return reporter;
+    }
+
+    private void execute(List<String> statements, String setup) throws SQLException {
+       Connection conn = DriverManager.getConnection(_url, _user, "");
+       try {
+          Statement stmt = conn.createStatement();
+          if (setup != null) {
+             stmt.execute(setup);
+          }
+          for (String statement : statements) {
+             stmt.execute(statement);
+          }
+          stmt.close();
+       } finally {
+          conn.close();
+       }
+    }
+
+    private boolean isPartitioned() throws SQLException {
+       Connection conn = DriverManager.getConnection(_url, _user, "");
+       try {
+          return PartitionMaintainer.isPartitioned(conn);
+       } finally {
+          conn.close();
+       }
+    }
+
+    private File csvFile(String table) {
+       return new File(_dataDir, table.toLowerCase() + ".csv");
+    }
+
+    /*
+     * Splits a SQL script into statements, dropping "--" comment lines.
+     */
+    static List<String> readScript(File script) throws IOException {
+       StringBuilder sql = new StringBuilder();
+       for (String line : Files.readAllLines(script.toPath(), StandardCharsets.UTF_8)) {
+          if (!line.trim().startsWith("--")) {
+             sql.append(line).append('\n');
+          }
+       }
+       List<String> statements = new ArrayList<String>();
+       for (String statement : sql.toString().split(";")) {
+          if (!statement.trim().isEmpty()) {
+             statements.add(statement.trim());
+          }
+       }
+       return statements;
+    }
+
+    /*
+     * Bytes and lines read so far from one table's file.
+     */
+    static final class TableLoad {
+       final String table;
+       final long totalBytes;
+       final long startNanos = System.nanoTime();
+       final AtomicLong bytes = new AtomicLong();
+       final AtomicLong lines = new AtomicLong();
+
+       TableLoad(String table, long totalBytes) {
+          this.table = table;
+          this.totalBytes = totalBytes;
+       }
+
+       String progress() {
+          long rows = Math.max(0, lines.get() - 1);
+          double seconds = (System.nanoTime() - startNanos) / 1e9;
+          return String.format("%-14s %5.1f%%  %,d rows  %,.0f rows/s  %.1f MB/s",
+             table, totalBytes == 0 ? 100.0 : 100.0 * bytes.get() / totalBytes, rows,
+             rows / seconds, bytes.get() / seconds / (1024 * 1024));
+       }
+    }
+
+    /*
+     * Counts bytes and newlines as COPY reads the file. Rows with quoted
+     * newlines count twice, so row progress is approximate; the final
+     * count comes from the server.
+     */
+    static final class CountingInputStream extends FilterInputStream {
+       private final TableLoad _load;
+
+       CountingInputStream(InputStream in, TableLoad load) {
+          super(in);
+          _load = load;
+       }
+
+       @Override
+       public int read() throws IOException {
+          int b = super.read();
+          if (b >= 0) {
+             _load.bytes.incrementAndGet();
+             if (b == '\n') {
+                _load.lines.incrementAndGet();
+             }
+          }
+          return b;
+       }
+
+       @Override
+       public int read(byte[] buffer, int off, int len) throws IOException {
+          int n = super.read(buffer, off, len);
+          if (n > 0) {
+             int newlines = 0;
+             for (int i = off; i < off + n; ++i) {
+                if (buffer[i] == '\n') {
+                   ++newlines;
+                }
+             }
+             _load.bytes.addAndGet(n);
+             _load.lines.addAndGet(newlines);
+          }
+          return n;
+       }
+    }
+ }//end BulkLoader
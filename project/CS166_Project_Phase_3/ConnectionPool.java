@@ -0,0 +1,328 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.Connection;
+ import java.sql.DriverManager;
+ import java.sql.SQLException;
+ import java.sql.SQLTransientConnectionException;
+ import java.util.ArrayDeque;
+ import java.util.ArrayList;
+ import java.util.Deque;
+ import java.util.Iterator;
+ import java.util.List;
+ import java.util.Properties;
+ import java.util.Set;
+ import java.util.concurrent.ConcurrentHashMap;
+ import java.util.concurrent.Executors;
+ import java.util.concurrent.ScheduledExecutorService;
+ import java.util.concurrent.Semaphore;
+ import java.util.concurrent.TimeUnit;
+ import java.util.concurrent.atomic.AtomicLong;
+
+ /**
+  * A bounded pool of physical PostgreSQL connections.
+  *
+  * Connections are created lazily up to maxSize, validated when they are
+  * borrowed after sitting idle, evicted once they have been idle for longer
+  * than idleTimeoutMillis, and reported on standard error when a borrower
+  * holds one for longer than leakThresholdMillis. A report shows where the
+  * holding thread is at the time; the stack of the borrow itself is only
+  * captured with captureBorrowSites, as that costs a stack walk per borrow.
+  *
+  */
+ public class ConnectionPool {
+
+    // how often the housekeeping thread looks for idle and leaked connections.
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 5000;
+
+    // idle connections younger than this are handed out without a round-trip.
+    private static final long VALIDATION_INTERVAL_MILLIS = 1000;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String _url;
+    private final Properties _properties;
+    private final int _maxSize;
+    private final long _borrowTimeoutMillis;
+    private final long _idleTimeoutMillis;
+    private final long _leakThresholdMillis;
+    private final boolean _captureBorrowSites;
+    private final int _statementCacheSize;
+
+    // one permit per connection that may still be handed out.
+    private final Semaphore _permits;
+
+    // most recently released connections are at the head (LIFO keeps them warm).
+    private final Deque<PooledConnection> _idle = new ArrayDeque<PooledConnection>();
+    private final Set<PooledConnection> _leased =
+       ConcurrentHashMap.<PooledConnection>newKeySet();
+
+    private final ScheduledExecutorService _housekeeper;
+    private volatile boolean _closed = false;
+
+    // borrow metrics.
+    private final AtomicLong _borrowCount = new AtomicLong();
+    private final AtomicLong _borrowNanosTotal = new AtomicLong();
+    private final AtomicLong _borrowNanosMax = new AtomicLong();
+    private final AtomicLong _borrowTimeouts = new AtomicLong();
+    private final AtomicLong _created = new AtomicLong();
+    private final AtomicLong _evicted = new AtomicLong();
+    private final AtomicLong _validationFailures = new AtomicLong();
+    private final AtomicLong _leaksDetected = new AtomicLong();
+
+    // prepared statement cache metrics, summed over all connections.
+    private final AtomicLong _statementHits = new AtomicLong();
+    private final AtomicLong _statementMisses = new AtomicLong();
+
+    /**
+     * Creates a new pool. One connection is opened immediately so that a bad
+     * URL or credentials fail here rather than on the first query.
+     *
+     * @param url the JDBC connection URL
+     * @param properties driver properties (user, password, ...)
+     * @param maxSize the maximum number of physical connections
+     * @param borrowTimeoutMillis how long borrow waits for a free connection
+     * @param idleTimeoutMillis idle connections older than this are closed
+     * @param leakThresholdMillis leases held longer than this are reported
+     * @param captureBorrowSites record the stack of every borrow for leak reports
+     * @param statementCacheSize prepared statements cached per connection
+     * @throws java.sql.SQLException when failed to make a connection.
+     */
+    public ConnectionPool(String url, Properties properties, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis,
+                          long leakThresholdMillis, boolean captureBorrowSites,
+                          int statementCacheSize) throws SQLException {
+       if (maxSize < 1) {
+          throw new IllegalArgumentException("maxSize must be at least 1");
+       }
+       _url = url;
+       _properties = properties;
+       _maxSize = maxSize;
+       _borrowTimeoutMillis = borrowTimeoutMillis;
+       _idleTimeoutMillis = idleTimeoutMillis;
+       _leakThresholdMillis = leakThresholdMillis;
+       _captureBorrowSites = captureBorrowSites && leakThresholdMillis > 0;
+       _statementCacheSize = statementCacheSize;
+       _permits = new Semaphore(maxSize, true);
+
+       _idle.push(openConnection());
+
+       _housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread t = new Thread(r, "pizzastore-pool-housekeeper");
+          t.setDaemon(true);
+          return t;
+       });
+       _housekeeper.scheduleWithFixedDelay(this::housekeep,
+          HOUSEKEEPING_INTERVAL_MILLIS, HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }//end ConnectionPool
+
+    /**
+     * Borrows a connection, waiting up to borrowTimeoutMillis for one to
+     * become available. Every successful borrow must be paired with release.
+     *
+     * @return a validated connection
+     * @throws java.sql.SQLException when the pool is closed or a new
+     *         connection could not be opened; a
+     *         SQLTransientConnectionException when it stayed exhausted
+     *         for borrowTimeoutMillis
+     */
+    public PooledConnection borrow() throws SQLException {
+       if (_closed) {
+          throw new SQLException("Connection pool is closed");
+       }
+
+       long start = System.nanoTime();
+       try {
+          if (!_permits.tryAcquire(_borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+             _borrowTimeouts.incrementAndGet();
+             throw new SQLTransientConnectionException("Timed out after " + _borrowTimeoutMillis
+                + " ms waiting for a database connection (pool size " + _maxSize + ")");
+          }
+       } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted while waiting for a database connection", e);
+       }
+
+       PooledConnection pooled;
+       try {
+          pooled = takeValidIdle();
+          if (pooled == null) {
+             pooled = openConnection();
+          }
+       } catch (SQLException | RuntimeException e) {
+          _permits.release();
+          throw e;
+       }
+
+       pooled.markBorrowed(Thread.currentThread(), _captureBorrowSites ? new Throwable("borrowed here") : null);
+       _leased.add(pooled);
+       recordBorrow(System.nanoTime() - start);
+       return pooled;
+    }//end borrow
+
+    /**
+     * Returns a borrowed connection to the pool. Connections that are closed,
+     * or that were left inside a transaction, are discarded.
+     *
+     * @param pooled the connection obtained from borrow; null is ignored
+     */
+    public void release(PooledConnection pooled) {
+       if (pooled == null || !_leased.remove(pooled)) {
+          return;
+       }
+
+       boolean reusable;
+       try {
+          Connection conn = pooled.getConnection();
+          reusable = !conn.isClosed() && conn.getAutoCommit();
+       } catch (SQLException e) {
+          reusable = false;
+       }
+
+       if (reusable && !_closed) {
+          pooled.markReleased();
+          synchronized (_idle) {
+             _idle.push(pooled);
+          }
+       } else {
+          pooled.closeQuietly();
+       }
+       _permits.release();
+    }//end release
+
+    /**
+     * Closes all idle connections and stops the housekeeping thread.
+     * Connections still on loan are closed as they are released.
+     */
+    public void close() {
+       _closed = true;
+       _housekeeper.shutdownNow();
+       synchronized (_idle) {
+          for (PooledConnection pooled : _idle) {
+             pooled.closeQuietly();
+          }
+          _idle.clear();
+       }
+    }//end close
+
+    /**
+     * Returns a one-line summary of pool usage and borrow latency.
+     */
+    public String stats() {
+       long count = _borrowCount.get();
+       double avgMicros = count == 0 ? 0.0 : _borrowNanosTotal.get() / 1000.0 / count;
+       int idle;
+       synchronized (_idle) {
+          idle = _idle.size();
+       }
+       return String.format(
+          "pool[max=%d, leased=%d, idle=%d, created=%d, evicted=%d, validationFailures=%d, "
+          + "leaks=%d, borrows=%d, timeouts=%d, avgBorrow=%.1fus, maxBorrow=%.1fus]",
+          _maxSize, _leased.size(), idle, _created.get(), _evicted.get(),
+          _validationFailures.get(), _leaksDetected.get(), count, _borrowTimeouts.get(),
+          avgMicros, _borrowNanosMax.get() / 1000.0);
+    }//end stats
+
+    private PooledConnection takeValidIdle() {
+       while (true) {
+          PooledConnection pooled;
+          synchronized (_idle) {
+             pooled = _idle.poll();
+          }
+          if (pooled == null) {
+             return null;
+          }
+
+          long idleFor = System.currentTimeMillis() - pooled.getLastReleasedMillis();
+          if (idleFor < VALIDATION_INTERVAL_MILLIS || isValid(pooled)) {
+             return pooled;
+          }
+          _validationFailures.incrementAndGet();
+          pooled.closeQuietly();
+       }
+    }//end takeValidIdle
+
+    private boolean isValid(PooledConnection pooled) {
+       try {
+          return pooled.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+       } catch (SQLException e) {
+          return false;
+       }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+       Connection conn = DriverManager.getConnection(_url, _properties);
+       _created.incrementAndGet();
+       return new PooledConnection(conn,
+          new StatementCache(conn, _statementCacheSize, _statementHits, _statementMisses));
+    }
+
+    private void recordBorrow(long nanos) {
+       _borrowCount.incrementAndGet();
+       _borrowNanosTotal.addAndGet(nanos);
+       long max;
+       while (nanos > (max = _borrowNanosMax.get())) {
+          if (_borrowNanosMax.compareAndSet(max, nanos)) {
+             break;
+          }
+       }
+    }
+
+    /*
+     * Closes connections idle for longer than the idle timeout and reports
+     * leases held for longer than the leak threshold.
+     */
+    private void housekeep() {
+       long now = System.currentTimeMillis();
+
+       if (_idleTimeoutMillis > 0) {
+          List<PooledConnection> expired = new ArrayList<PooledConnection>();
+          synchronized (_idle) {
+             Iterator<PooledConnection> it = _idle.iterator();
+             while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.getLastReleasedMillis() > _idleTimeoutMillis) {
+                   it.remove();
+                   expired.add(pooled);
+                }
+             }
+          }
+          for (PooledConnection pooled : expired) {
+             pooled.closeQuietly();
+             _evicted.incrementAndGet();
+          }
+       }
+
+       if (_leakThresholdMillis > 0) {
+          for (PooledConnection pooled : _leased) {
+             long heldFor = now - pooled.getBorrowedAtMillis();
+             if (heldFor > _leakThresholdMillis && !pooled.isLeakReported()) {
+                pooled.markLeakReported();
+                _leaksDetected.incrementAndGet();
+                System.err.println("Warning - database connection held for " + heldFor
+                   + " ms without being released");
+                Throwable site = pooled.getBorrowSite();
+                if (site != null) {
+                   site.printStackTrace();
+                }
+                Thread holder = pooled.getBorrower();
+                if (holder != null) {
+                   System.err.println("    held by thread " + holder.getName() + ", now at:");
+                   for (StackTraceElement frame : holder.getStackTrace()) {
+                      System.err.println("        at " + frame);
+                   }
+                }
+             }
+          }
+       }
+    }//end housekeep
+ }//end ConnectionPool
@@ -0,0 +1,89 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.math.BigDecimal;
+ import java.sql.Array;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Timestamp;
+
+ /**
+  * One row of the CustomerOrderSummary table, which the FoodOrder triggers
+  * keep current.
+  *
+  */
+ public final class CustomerOrderSummary {
+
+    public static final RowMapper<CustomerOrderSummary> MAPPER =
+       new RowMapper<CustomerOrderSummary>("login", "orderCount", "lifetimeSpend", "recentOrderIDs", "lastOrderTimestamp") {
+          @Override
+          protected CustomerOrderSummary map(ResultSet rs, int[] columns) throws SQLException {
+             Array recent = rs.getArray(columns[3]);
+             Integer[] ids = recent == null ? new Integer[0] : (Integer[]) recent.getArray();
+             int[] recentOrderIDs = new int[ids.length];
+             for (int i = 0; i < ids.length; ++i) {
+                recentOrderIDs[i] = ids[i];
+             }
+             return new CustomerOrderSummary(rs.getString(columns[0]), rs.getInt(columns[1]),
+                                             rs.getBigDecimal(columns[2]), recentOrderIDs,
+                                             rs.getTimestamp(columns[4]));
+          }
+       };
+
+    private final String _login;
+    private final int _orderCount;
+    private final BigDecimal _lifetimeSpend;
+    private final int[] _recentOrderIDs;
+    private final Timestamp _lastOrderTimestamp;
+
+    public CustomerOrderSummary(String login, int orderCount, BigDecimal lifetimeSpend,
+                                int[] recentOrderIDs, Timestamp lastOrderTimestamp) {
+       _login = login;
+       _orderCount = orderCount;
+       _lifetimeSpend = lifetimeSpend;
+       _recentOrderIDs = recentOrderIDs;
+       _lastOrderTimestamp = lastOrderTimestamp;
+    }
+
+    /**
+     * Returns the summary of a customer with no orders.
+     */
+    public static CustomerOrderSummary empty(String login) {
+       return new CustomerOrderSummary(login, 0, BigDecimal.ZERO, new int[0], null);
+    }
+
+    public String getLogin() {
+       return _login;
+    }
+
+    public int getOrderCount() {
+       return _orderCount;
+    }
+
+    public BigDecimal getLifetimeSpend() {
+       return _lifetimeSpend;
+    }
+
+    /**
+     * Returns the IDs of the customer's five most recent orders, newest first.
+     */
+    public int[] getRecentOrderIDs() {
+       return _recentOrderIDs.clone();
+    }
+
+    /**
+     * Returns the time of the customer's latest order, or null if they have none.
+     */
+    public Timestamp getLastOrderTimestamp() {
+       return _lastOrderTimestamp;
+    }
+ }//end CustomerOrderSummary
@@ -0,0 +1,435 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.io.BufferedWriter;
+ import java.io.File;
+ import java.io.FileInputStream;
+ import java.io.FileOutputStream;
+ import java.io.IOException;
+ import java.io.OutputStreamWriter;
+ import java.io.Writer;
+ import java.math.BigDecimal;
+ import java.nio.channels.FileChannel;
+ import java.nio.charset.StandardCharsets;
+ import java.time.LocalDate;
+ import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.List;
+ import java.util.Locale;
+ import java.util.SplittableRandom;
+ import java.util.concurrent.ExecutorService;
+ import java.util.concurrent.Executors;
+ import java.util.concurrent.Future;
+
+ /**
+  * Generates a synthetic data set for scale testing, in the CSV layout
+  * load_data.sql and BulkLoader read (one file per table, with a header).
+  *
+  * The output depends only on the seed and the scale options, not on the
+  * number of threads: orders are generated in fixed-size chunks, each with
+  * its own random stream, written to part files in parallel and then
+  * concatenated in chunk order.
+  *
+  * The data is skewed the way real orders are:
+  *   - customers and items are drawn from Zipf distributions, so a few
+  *     customers order very often and a few items dominate sales;
+  *   - order times follow lunch and dinner peaks, with busier weekends;
+  *   - only orders from the last day are still incomplete.
+  *
+  * Options (-D on the java command line):
+  *   gen.seed=N          random seed (default 42)
+  *   gen.orders=N        number of orders (default 1000000)
+  *   gen.customers=N     number of customers (default orders / 20)
+  *   gen.stores=N        number of stores (default orders / 100000, at least 10)
+  *   gen.items=N         number of menu items (default 200)
+  *   gen.days=N          days of history ending at gen.endDate (default 365)
+  *   gen.endDate=DATE    last day of history, yyyy-mm-dd (default 2024-12-31)
+  *   gen.customerSkew=S  Zipf exponent for customers (default 0.8)
+  *   gen.itemSkew=S      Zipf exponent for items (default 1.2)
+  *   gen.threads=N       generator threads (default available processors)
+  *
+  */
+ public class DataGenerator {
+
+    static final long SEED = Long.getLong("gen.seed", 42L);
+    static final int ORDERS = Integer.getInteger("gen.orders", 1000000);
+    static final int CUSTOMERS = Integer.getInteger("gen.customers", Math.max(100, ORDERS / 20));
+    static final int STORES = Integer.getInteger("gen.stores", Math.max(10, ORDERS / 100000));
+    static final int ITEMS = Integer.getInteger("gen.items", 200);
+    static final int DAYS = Integer.getInteger("gen.days", 365);
+    static final LocalDate END_DATE = LocalDate.parse(System.getProperty("gen.endDate", "2024-12-31"));
+    static final double CUSTOMER_SKEW = Double.parseDouble(System.getProperty("gen.customerSkew", "0.8"));
+    static final double ITEM_SKEW = Double.parseDouble(System.getProperty("gen.itemSkew", "1.2"));
+    static final int THREADS = Integer.getInteger("gen.threads", Runtime.getRuntime().availableProcessors());
+
+    // orders per chunk; chunks are the unit of parallelism and of determinism.
+    static final int CHUNK_ORDERS = 100000;
+
+    static final int FIRST_ORDER_ID = 10000;
+    static final int MANAGERS = 5;
+    static final int DRIVERS = 50;
+
+    // relative order volume per hour of the day, peaking at lunch and dinner.
+    static final double[] HOUR_WEIGHTS = {
+       0.2, 0.1, 0.05, 0.05, 0.05, 0.1, 0.3, 0.6, 0.8, 1.0, 1.5, 4.0,
+       5.0, 3.5, 1.5, 1.2, 2.0, 4.5, 6.0, 5.5, 3.5, 2.0, 1.0, 0.5 };
+
+    // relative order volume per day of the week, Monday first.
+    static final double[] WEEKDAY_WEIGHTS = { 0.8, 0.8, 0.9, 1.0, 1.4, 1.6, 1.3 };
+
+    static final String[] TYPES = { " entree", " sides", " drinks" };
+    static final String[] FLAVORS = {
+       "Pepperoni", "Margherita", "Hawaiian", "Veggie", "BBQ Chicken", "Meat Lovers", "Buffalo",
+       "Supreme", "Mushroom", "Pesto", "Four Cheese", "Sausage", "Spinach", "Garlic", "Jalapeno" };
+    static final String[][] BASES = {
+       { "Pizza", "Calzone", "Flatbread", "Stromboli" },
+       { "Wings", "Breadsticks", "Salad", "Fries", "Knots" },
+       { "Soda", "Lemonade", "Iced Tea", "Shake", "Sparkling Water" } };
+    static final String[] INGREDIENTS = {
+       "dough", "tomato sauce", "mozzarella", "pepperoni", "ham", "pineapple", "peppers", "onions",
+       "chicken", "bbq sauce", "sausage", "mushrooms", "spinach", "garlic", "jalapenos", "basil" };
+    static final String[] CITIES = {
+       "Riverside", "Los Angeles", "San Diego", "Irvine", "Pasadena", "Ontario", "Fresno",
+       "Sacramento", "San Jose", "Oakland", "Phoenix", "Las Vegas", "Portland", "Seattle" };
+    static final String[] STATES = {
+       "CA", "CA", "CA", "CA", "CA", "CA", "CA", "CA", "CA", "CA", "AZ", "NV", "OR", "WA" };
+    static final String[] STREETS = { "Main St", "University Ave", "Market St", "Oak Ave", "1st St", "Park Blvd" };
+
+    private final File _outDir;
+    private String[] _itemNames;
+    private BigDecimal[] _itemPrices;
+    private double[] _customerCdf;
+    private double[] _itemCdf;
+    private double[] _hourCdf;
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <output directory>
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length != 1) {
+          System.err.println (
+             "Usage: " +
+             "java [-classpath <classpath>] " +
+             DataGenerator.class.getName () +
+             " <output directory>");
+          return;
+       }//end if
+
+       File outDir = new File(args[0]);
+       if (!outDir.isDirectory() && !outDir.mkdirs()) {
+          System.err.println("Cannot create " + outDir);
+          System.exit(1);
+       }
+       new DataGenerator(outDir).generate();
+    }//end main
+
+    public DataGenerator(File outDir) {
+       _outDir = outDir;
+    }
+
+    public void generate() throws Exception {
+       long start = System.nanoTime();
+       System.out.println(String.format("Generating %,d orders for %,d customers, %,d stores and %,d items (seed %d)...",
+          ORDERS, CUSTOMERS, STORES, ITEMS, SEED));
+
+       _customerCdf = zipfCdf(CUSTOMERS, CUSTOMER_SKEW);
+       _itemCdf = zipfCdf(ITEMS, ITEM_SKEW);
+       _hourCdf = cdf(HOUR_WEIGHTS);
+
+       writeItems();
+       writeStores();
+       writeUsers();
+
+       int chunks = (ORDERS + CHUNK_ORDERS - 1) / CHUNK_ORDERS;
+       ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, THREADS));
+       try {
+          List<Future<?>> results = new ArrayList<Future<?>>();
+          for (int chunk = 0; chunk < chunks; ++chunk) {
+             final int c = chunk;
+             results.add(pool.submit(() -> {
+                writeOrderChunk(c);
+                return null;
+             }));
+          }
+          for (Future<?> result : results) {
+             result.get();
+          }
+       } finally {
+          pool.shutdown();
+       }
+
+       merge("foodorder", "orderID,login,storeID,totalPrice,orderTimestamp,orderStatus", chunks);
+       merge("itemsinorder", "orderID,itemName,quantity", chunks);
+
+       System.out.println(String.format("Done in %.1f s; files are in %s",
+          (System.nanoTime() - start) / 1e9, _outDir));
+    }//end generate
+
+    private void writeItems() throws IOException {
+       SplittableRandom random = new SplittableRandom(SEED);
+       _itemNames = new String[ITEMS];
+       _itemPrices = new BigDecimal[ITEMS];
+
+       try (Writer out = open("items.csv")) {
+          out.write("itemName,ingredients,typeOfItem,price,description\n");
+          for (int i = 0; i < ITEMS; ++i) {
+             // entrees are the most common and the priciest.
+             int type = i % 5 < 3 ? 0 : i % 5 == 3 ? 1 : 2;
+             String[] bases = BASES[type];
+             String name = FLAVORS[(i / 5) % FLAVORS.length] + " " + bases[(i / 5 / FLAVORS.length + i) % bases.length];
+             int round = i / (5 * FLAVORS.length);
+             if (round > 0) {
+                name += " " + (round + 1);
+             }
+             _itemNames[i] = name;
+
+             int cents = type == 0 ? 899 + random.nextInt(1200) : type == 1 ? 299 + random.nextInt(600) : 99 + random.nextInt(400);
+             _itemPrices[i] = BigDecimal.valueOf(cents, 2);
+
+             StringBuilder ingredients = new StringBuilder("dough");
+             for (int k = 0, n = 1 + random.nextInt(4); k < n; ++k) {
+                ingredients.append(',').append(INGREDIENTS[1 + random.nextInt(INGREDIENTS.length - 1)]);
+             }
+
+             StringBuilder row = new StringBuilder();
+             csv(row, name).append(',');
+             csv(row, ingredients.toString()).append(',');
+             csv(row, TYPES[type]).append(',');
+             row.append(_itemPrices[i].toPlainString()).append(',');
+             csv(row, "Our " + name.toLowerCase()).append('\n');
+             out.write(row.toString());
+          }
+       }
+    }//end writeItems
+
+    private void writeStores() throws IOException {
+       SplittableRandom random = new SplittableRandom(SEED + 1);
+       try (Writer out = open("store.csv")) {
+          out.write("storeID,address,city,state,isOpen,reviewScore\n");
+          for (int i = 1; i <= STORES; ++i) {
+             int city = random.nextInt(CITIES.length);
+             StringBuilder row = new StringBuilder();
+             row.append(i).append(',');
+             csv(row, (100 + random.nextInt(9900)) + " " + STREETS[random.nextInt(STREETS.length)]).append(',');
+             row.append(CITIES[city]).append(',').append(STATES[city]).append(',');
+             row.append(random.nextInt(10) == 0 ? "no" : "yes").append(',');
+             row.append(String.format(Locale.ROOT, "%.1f", 2.5 + random.nextDouble() * 2.5)).append('\n');
+             out.write(row.toString());
+          }
+       }
+    }//end writeStores
+
+    private void writeUsers() throws IOException {
+       SplittableRandom random = new SplittableRandom(SEED + 2);
+       try (Writer out = open("users.csv")) {
+          out.write("login,password,role,favoriteItems,phoneNum\n");
+          StringBuilder row = new StringBuilder();
+          for (int i = 0; i < MANAGERS + DRIVERS + CUSTOMERS; ++i) {
+             String login;
+             String role;
+             if (i < MANAGERS) {
+                login = "manager" + i;
+                role = "manager";
+             } else if (i < MANAGERS + DRIVERS) {
+                login = "driver" + (i - MANAGERS);
+                role = "driver";
+             } else {
+                login = customerLogin(i - MANAGERS - DRIVERS);
+                role = "customer";
+             }
+
+             row.setLength(0);
+             row.append(login).append(',');
+             for (int k = 0; k < 10; ++k) {
+                row.append((char) ('a' + random.nextInt(26)));
+             }
+             row.append(',').append(role).append(',');
+             csv(row, _itemNames[sample(_itemCdf, random)]).append(',');
+             row.append(String.format("(%03d)%03d-%04d",
+                200 + random.nextInt(800), random.nextInt(1000), random.nextInt(10000))).append('\n');
+             out.write(row.toString());
+          }
+       }
+    }//end writeUsers
+
+    /*
+     * Writes the orders of one chunk and their lines to part files.
+     */
+    private void writeOrderChunk(int chunk) throws IOException {
+       SplittableRandom random = new SplittableRandom(SEED * 1000003L + chunk);
+       int first = chunk * CHUNK_ORDERS;
+       int last = Math.min(ORDERS, first + CHUNK_ORDERS);
+       long endDay = END_DATE.toEpochDay();
+
+       int[] lineItems = new int[8];
+       StringBuilder order = new StringBuilder(128);
+       StringBuilder lines = new StringBuilder(256);
+       try (Writer orders = open(partName("foodorder", chunk));
+            Writer items = open(partName("itemsinorder", chunk))) {
+          for (int n = first; n < last; ++n) {
+             int orderID = FIRST_ORDER_ID + n;
+
+             // 1 to 8 distinct items, most orders small.
+             int count = 1;
+             while (count < lineItems.length && random.nextInt(100) < 45) {
+                ++count;
+             }
+             BigDecimal total = BigDecimal.ZERO;
+             lines.setLength(0);
+             for (int k = 0; k < count; ++k) {
+                int item;
+                boolean repeated;
+                int attempts = 0;
+                do {
+                   item = sample(_itemCdf, random);
+                   repeated = false;
+                   for (int j = 0; j < k; ++j) {
+                      repeated |= lineItems[j] == item;
+                   }
+                } while (repeated && ++attempts < 20);
+                if (repeated) {
+                   count = k;
+                   break;
+                }
+                lineItems[k] = item;
+
+                int quantity = random.nextInt(10) < 7 ? 1 : 2 + random.nextInt(3);
+                total = total.add(_itemPrices[item].multiply(BigDecimal.valueOf(quantity)));
+                lines.append(orderID).append(',');
+                csv(lines, _itemNames[item]).append(',').append(quantity).append('\n');
+             }
+
+             long day = pickDay(random, endDay);
+             int hour = sample(_hourCdf, random);
+             boolean recent = day == endDay;
+
+             order.setLength(0);
+             order.append(orderID).append(',')
+                .append(customerLogin(sample(_customerCdf, random))).append(',')
+                .append(1 + random.nextInt(STORES)).append(',')
+                .append(total.toPlainString()).append(',');
+             timestamp(order, day, hour, random.nextInt(60), random.nextInt(60)).append(',')
+                .append(recent && random.nextInt(10) < 3 ? "incomplete" : "completed").append('\n');
+
+             orders.write(order.toString());
+             items.write(lines.toString());
+          }
+       }
+    }//end writeOrderChunk
+
+    /*
+     * Picks a day of history, weighted by the day of the week.
+     */
+    private static long pickDay(SplittableRandom random, long endDay) {
+       while (true) {
+          long day = endDay - random.nextInt(DAYS);
+          int weekday = LocalDate.ofEpochDay(day).getDayOfWeek().getValue() - 1;
+          if (random.nextDouble() * 1.6 < WEEKDAY_WEIGHTS[weekday]) {
+             return day;
+          }
+       }
+    }
+
+    /*
+     * Concatenates the part files of a table in chunk order, after a header.
+     */
+    private void merge(String table, String header, int chunks) throws IOException {
+       File target = new File(_outDir, table + ".csv");
+       try (FileOutputStream out = new FileOutputStream(target)) {
+          out.write((header + "\n").getBytes(StandardCharsets.UTF_8));
+          FileChannel channel = out.getChannel();
+          for (int chunk = 0; chunk < chunks; ++chunk) {
+             File part = new File(_outDir, partName(table, chunk));
+             try (FileInputStream in = new FileInputStream(part)) {
+                FileChannel source = in.getChannel();
+                long position = 0;
+                long size = source.size();
+                while (position < size) {
+                   position += source.transferTo(position, size - position, channel);
+                }
+             }
+             if (!part.delete()) {
+                throw new IOException("Cannot delete " + part);
+             }
+          }
+       }
+    }//end merge
+
+    private Writer open(String name) throws IOException {
+       return new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(new File(_outDir, name)), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static String partName(String table, int chunk) {
+       return table + ".part-" + chunk + ".csv";
+    }
+
+    static String customerLogin(int i) {
+       return "customer" + i;
+    }
+
+    /*
+     * Cumulative distribution of a Zipf law over n ranks; rank 0 is the
+     * most frequent.
+     */
+    static double[] zipfCdf(int n, double skew) {
+       double[] weights = new double[n];
+       for (int i = 0; i < n; ++i) {
+          weights[i] = 1.0 / Math.pow(i + 1, skew);
+       }
+       return cdf(weights);
+    }
+
+    static double[] cdf(double[] weights) {
+       double[] cdf = new double[weights.length];
+       double sum = 0;
+       for (int i = 0; i < weights.length; ++i) {
+          sum += weights[i];
+          cdf[i] = sum;
+       }
+       for (int i = 0; i < cdf.length; ++i) {
+          cdf[i] /= sum;
+       }
+       return cdf;
+    }
+
+    /*
+     * Draws an index from a cumulative distribution.
+     */
+    static int sample(double[] cdf, SplittableRandom random) {
+       int i = Arrays.binarySearch(cdf, random.nextDouble());
+       return Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    static StringBuilder timestamp(StringBuilder out, long epochDay, int hour, int minute, int second) {
+       out.append(LocalDate.ofEpochDay(epochDay)).append(' ');
+       pad(out, hour).append(':');
+       pad(out, minute).append(':');
+       return pad(out, second);
+    }
+
+    private static StringBuilder pad(StringBuilder out, int value) {
+       return (value < 10 ? out.append('0') : out).append(value);
+    }
+
+    /*
+     * Appends a CSV field, quoted when it contains a delimiter or quote.
+     */
+    static StringBuilder csv(StringBuilder out, String value) {
+       if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+          return out.append(value);
+       }
+       return out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+ }//end DataGenerator
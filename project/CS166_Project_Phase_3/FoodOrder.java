@@ -0,0 +1,77 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.math.BigDecimal;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Timestamp;
+
+ /**
+  * One row of the FoodOrder table.
+  *
+  */
+ public final class FoodOrder {
+
+    public static final RowMapper<FoodOrder> MAPPER =
+       new RowMapper<FoodOrder>("orderID", "login", "storeID", "totalPrice", "orderTimestamp", "orderStatus") {
+          @Override
+          protected FoodOrder map(ResultSet rs, int[] columns) throws SQLException {
+             return new FoodOrder(rs.getInt(columns[0]), rs.getString(columns[1]),
+                                  rs.getInt(columns[2]), rs.getBigDecimal(columns[3]),
+                                  rs.getTimestamp(columns[4]), getTrimmed(rs, columns[5]));
+          }
+       };
+
+    private final int _orderID;
+    private final String _login;
+    private final int _storeID;
+    private final BigDecimal _totalPrice;
+    private final Timestamp _orderTimestamp;
+    private final String _orderStatus;
+
+    public FoodOrder(int orderID, String login, int storeID, BigDecimal totalPrice,
+                     Timestamp orderTimestamp, String orderStatus) {
+       _orderID = orderID;
+       _login = login;
+       _storeID = storeID;
+       _totalPrice = totalPrice;
+       _orderTimestamp = orderTimestamp;
+       _orderStatus = orderStatus;
+    }
+
+    public int getOrderID() {
+       return _orderID;
+    }
+
+    public String getLogin() {
+       return _login;
+    }
+
+    public int getStoreID() {
+       return _storeID;
+    }
+
+    public BigDecimal getTotalPrice() {
+       return _totalPrice;
+    }
+
+    public Timestamp getOrderTimestamp() {
+       return _orderTimestamp;
+    }
+
+    /**
+     * Returns the status with the char(50) padding trimmed, or null.
+     */
+    public String getOrderStatus() {
+       return _orderStatus;
+    }
+ }//end FoodOrder
@@ -0,0 +1,205 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.Connection;
+ import java.sql.DriverManager;
+ import java.sql.PreparedStatement;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Statement;
+ import java.sql.Timestamp;
+ import java.util.ArrayList;
+ import java.util.Calendar;
+ import java.util.List;
+ import java.util.regex.Matcher;
+ import java.util.regex.Pattern;
+
+ /**
+  * Regression check for the indexes in create_indexes.sql.
+  *
+  * EXPLAINs the queries behind the order screens, and the scan the
+  * CustomerOrderSummary trigger runs for each new order, and exits with
+  * status 1 if any plan reads FoodOrder, ItemsInOrder or
+  * CustomerOrderSummary with a sequential scan.
+  * Sequential scans are disabled for the session first: on a small data
+  * set the planner rightly prefers them, so the check asks whether an
+  * index *can* serve each query rather than which plan is cheapest today.
+  *
+  * With the partitioned schema (create_tables_partitioned.sql) it also
+  * checks that an order history page further back in time prunes the
+  * FoodOrder partitions of the months after it.
+  *
+  */
+ public class IndexCheck {
+
+    // tables that must never be read with a sequential scan by these screens.
+    static final String[] GUARDED_TABLES = { "foodorder", "itemsinorder", "customerordersummary" };
+
+    // monthly FoodOrder partitions as named by create_order_partition().
+    static final Pattern ORDER_PARTITION = Pattern.compile("on (foodorder_p(\\d{6}))");
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <dbname> <port> <user>
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length != 3) {
+          System.err.println (
+             "Usage: " +
+             "java [-classpath <classpath>] " +
+             IndexCheck.class.getName () +
+             " <dbname> <port> <user>");
+          return;
+       }//end if
+
+       Class.forName ("org.postgresql.Driver");
+       String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+       Connection conn = DriverManager.getConnection(url, args[2], "");
+       int failures;
+       try {
+          failures = check(conn);
+       } finally {
+          conn.close();
+       }
+
+       if (failures > 0) {
+          System.out.println(failures + " screen(s) fell back to a sequential scan or scanned pruned months.");
+          System.exit(1);
+       }
+       System.out.println("All screens are served by indexes.");
+    }//end main
+
+    /**
+     * Explains every checked query and prints its verdict.
+     *
+     * @return the number of queries whose plan contains a guarded Seq Scan
+     */
+    static int check(Connection conn) throws SQLException {
+       Statement setup = conn.createStatement();
+       setup.execute("SET enable_seqscan = off");
+       setup.close();
+
+       String login = sampleLogin(conn);
+       Timestamp now = new Timestamp(System.currentTimeMillis());
+
+       int failures = 0;
+       failures += explain(conn, "recent orders (summary)", PizzaStore.CUSTOMER_SUMMARY_QUERY, login);
+       failures += explain(conn, "recent orders (recent_order_ids)", PizzaStore.RECENT_ORDER_IDS_QUERY, login);
+       failures += explain(conn, "order info", PizzaStore.ORDER_INFO_QUERY, 10000);
+       failures += explain(conn, "order detail", OrderDetails.DETAIL_QUERY, 10000);
+       failures += explain(conn, "order history (all), first page",
+          PizzaStore.orderPageQuery(false, false), 20);
+       failures += explain(conn, "order history (all), next page",
+          PizzaStore.orderPageQuery(false, true), now, now, Integer.MAX_VALUE, 20);
+       failures += explain(conn, "order history (customer), first page",
+          PizzaStore.orderPageQuery(true, false), login, 20);
+       failures += explain(conn, "order history (customer), next page",
+          PizzaStore.orderPageQuery(true, true), login, now, now, Integer.MAX_VALUE, 20);
+       failures += explain(conn, "order lines",
+          "SELECT IO.itemName, IO.quantity FROM ItemsInOrder IO WHERE IO.orderID = ?;", 10000);
+
+       if (PartitionMaintainer.isPartitioned(conn)) {
+          Calendar cutoff = Calendar.getInstance();
+          cutoff.add(Calendar.MONTH, -2);
+          Timestamp after = new Timestamp(cutoff.getTimeInMillis());
+          failures += explainPruning(conn, "order history (all), older page",
+             PizzaStore.orderPageQuery(false, true), cutoff, after, after, Integer.MAX_VALUE, 20);
+          failures += explainPruning(conn, "order history (customer), older page",
+             PizzaStore.orderPageQuery(true, true), cutoff, login, after, after, Integer.MAX_VALUE, 20);
+       }
+       return failures;
+    }//end check
+
+    /*
+     * Returns a login that has orders, so the planner sees a realistic value.
+     */
+    static String sampleLogin(Connection conn) throws SQLException {
+       Statement stmt = conn.createStatement();
+       ResultSet rs = stmt.executeQuery("SELECT F.login FROM FoodOrder F LIMIT 1;");
+       String login = rs.next() ? rs.getString(1) : "nobody";
+       stmt.close();
+       return login;
+    }
+
+    /*
+     * Prints the plan of one query and returns 1 if it is a regression.
+     */
+    static int explain(Connection conn, String screen, String query, Object... params) throws SQLException {
+       List<String> plan = plan(conn, query, params);
+
+       String offending = null;
+       for (String line : plan) {
+          for (String table : GUARDED_TABLES) {
+             if (line.toLowerCase().contains("seq scan on " + table)) {
+                offending = table;
+             }
+          }
+       }
+
+       System.out.println((offending == null ? "OK    " : "FAIL  ") + screen
+          + (offending == null ? "" : " (sequential scan on " + offending + ")"));
+       if (offending != null) {
+          for (String line : plan) {
+             System.out.println("        " + line);
+          }
+       }
+       return offending == null ? 0 : 1;
+    }//end explain
+
+    /*
+     * Prints whether a page starting in the cutoff month leaves out every
+     * FoodOrder partition after that month, and returns 1 if it does not.
+     */
+    static int explainPruning(Connection conn, String screen, String query, Calendar cutoff, Object... params)
+       throws SQLException {
+       List<String> plan = plan(conn, query, params);
+       int cutoffMonth = cutoff.get(Calendar.YEAR) * 100 + cutoff.get(Calendar.MONTH) + 1;
+
+       String offending = null;
+       for (String line : plan) {
+          Matcher m = ORDER_PARTITION.matcher(line.toLowerCase());
+          while (m.find()) {
+             if (Integer.parseInt(m.group(2)) > cutoffMonth) {
+                offending = m.group(1);
+             }
+          }
+       }
+
+       System.out.println((offending == null ? "OK    " : "FAIL  ") + screen
+          + (offending == null ? "" : " (scans " + offending + ", after " + cutoffMonth + ")"));
+       if (offending != null) {
+          for (String line : plan) {
+             System.out.println("        " + line);
+          }
+       }
+       return offending == null ? 0 : 1;
+    }//end explainPruning
+
+    /*
+     * Returns the EXPLAIN output of a query, one line per element.
+     */
+    static List<String> plan(Connection conn, String query, Object... params) throws SQLException {
+       PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + query);
+       for (int i = 0; i < params.length; ++i) {
+          stmt.setObject(i + 1, params[i]);
+       }
+
+       List<String> plan = new ArrayList<String>();
+       ResultSet rs = stmt.executeQuery();
+       while (rs.next()) {
+          plan.add(rs.getString(1));
+       }
+       stmt.close();
+       return plan;
+    }
+ }//end IndexCheck
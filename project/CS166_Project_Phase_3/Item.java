@@ -0,0 +1,70 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.math.BigDecimal;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+
+ /**
+  * One row of the Items table.
+  *
+  */
+ public final class Item {
+
+    public static final RowMapper<Item> MAPPER =
+       new RowMapper<Item>("itemName", "ingredients", "typeOfItem", "price", "description") {
+          @Override
+          protected Item map(ResultSet rs, int[] columns) throws SQLException {
+             return new Item(rs.getString(columns[0]), rs.getString(columns[1]),
+                             rs.getString(columns[2]), rs.getBigDecimal(columns[3]),
+                             rs.getString(columns[4]));
+          }
+       };
+
+    private final String _itemName;
+    private final String _ingredients;
+    private final String _typeOfItem;
+    private final BigDecimal _price;
+    private final String _description;
+
+    public Item(String itemName, String ingredients, String typeOfItem,
+                BigDecimal price, String description) {
+       _itemName = itemName;
+       _ingredients = ingredients;
+       _typeOfItem = typeOfItem;
+       _price = price;
+       _description = description;
+    }
+
+    public String getItemName() {
+       return _itemName;
+    }
+
+    public String getIngredients() {
+       return _ingredients;
+    }
+
+    /**
+     * Returns the type as stored, which may carry leading spaces.
+     */
+    public String getTypeOfItem() {
+       return _typeOfItem;
+    }
+
+    public BigDecimal getPrice() {
+       return _price;
+    }
+
+    public String getDescription() {
+       return _description;
+    }
+ }//end Item
@@ -0,0 +1,51 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+
+ /**
+  * One row of the ItemsInOrder table: a line item of an order.
+  *
+  */
+ public final class ItemInOrder {
+
+    public static final RowMapper<ItemInOrder> MAPPER =
+       new RowMapper<ItemInOrder>("orderID", "itemName", "quantity") {
+          @Override
+          protected ItemInOrder map(ResultSet rs, int[] columns) throws SQLException {
+             return new ItemInOrder(rs.getInt(columns[0]), rs.getString(columns[1]), rs.getInt(columns[2]));
+          }
+       };
+
+    private final int _orderID;
+    private final String _itemName;
+    private final int _quantity;
+
+    public ItemInOrder(int orderID, String itemName, int quantity) {
+       _orderID = orderID;
+       _itemName = itemName;
+       _quantity = quantity;
+    }
+
+    public int getOrderID() {
+       return _orderID;
+    }
+
+    public String getItemName() {
+       return _itemName;
+    }
+
+    public int getQuantity() {
+       return _quantity;
+    }
+ }//end ItemInOrder
@@ -0,0 +1,56 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+
+ /**
+  * Units of one item sold over a report range, from the ItemSalesDaily
+  * rollup.
+  *
+  */
+ public final class ItemSales {
+
+    public static final RowMapper<ItemSales> MAPPER =
+       new RowMapper<ItemSales>("itemName", "quantity", "orderCount") {
+          @Override
+          protected ItemSales map(ResultSet rs, int[] columns) throws SQLException {
+             return new ItemSales(rs.getString(columns[0]), rs.getLong(columns[1]), rs.getLong(columns[2]));
+          }
+       };
+
+    private final String _itemName;
+    private final long _quantity;
+    private final long _orderCount;
+
+    public ItemSales(String itemName, long quantity, long orderCount) {
+       _itemName = itemName;
+       _quantity = quantity;
+       _orderCount = orderCount;
+    }
+
+    public String getItemName() {
+       return _itemName;
+    }
+
+    public long getQuantity() {
+       return _quantity;
+    }
+
+    /**
+     * Returns the number of orders the item appeared in.
+     */
+    public long getOrderCount() {
+       return _orderCount;
+    }
+ }//end ItemSales
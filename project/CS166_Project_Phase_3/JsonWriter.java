@@ -0,0 +1,137 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.io.IOException;
+ import java.io.Writer;
+ import java.math.BigDecimal;
+
+ /**
+  * A minimal JSON writer. Values are written to the underlying Writer as
+  * they are produced, without building a document tree; PizzaStoreHttpServer
+  * hands it a StringWriter and sends the buffer once the handler is done.
+  * The caller is responsible for well-formed nesting.
+  *
+  */
+ public class JsonWriter {
+
+    private final Writer _out;
+
+    // whether the next value or name must be preceded by a comma.
+    private boolean _needComma = false;
+
+    public JsonWriter(Writer out) {
+       _out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+       separate();
+       _out.write('{');
+       _needComma = false;
+       return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+       _out.write('}');
+       _needComma = true;
+       return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+       separate();
+       _out.write('[');
+       _needComma = false;
+       return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+       _out.write(']');
+       _needComma = true;
+       return this;
+    }
+
+    /**
+     * Writes an object member name; the next call writes its value.
+     */
+    public JsonWriter name(String name) throws IOException {
+       separate();
+       string(name);
+       _out.write(':');
+       _needComma = false;
+       return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+       separate();
+       if (value == null) {
+          _out.write("null");
+       } else {
+          string(value);
+       }
+       _needComma = true;
+       return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+       return raw(Long.toString(value));
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+       return raw(value ? "true" : "false");
+    }
+
+    public JsonWriter value(Double value) throws IOException {
+       return raw(value == null || value.isNaN() || value.isInfinite() ? "null" : value.toString());
+    }
+
+    public JsonWriter value(BigDecimal value) throws IOException {
+       return raw(value == null ? "null" : value.toPlainString());
+    }
+
+    public void flush() throws IOException {
+       _out.flush();
+    }
+
+    private JsonWriter raw(String literal) throws IOException {
+       separate();
+       _out.write(literal);
+       _needComma = true;
+       return this;
+    }
+
+    private void separate() throws IOException {
+       if (_needComma) {
+          _out.write(',');
+          _needComma = false;
+       }
+    }
+
+    private void string(String s) throws IOException {
+       _out.write('"');
+       for (int i = 0; i < s.length(); ++i) {
+          char c = s.charAt(i);
+          switch (c) {
+             case '"': _out.write("\\\""); break;
+             case '\\': _out.write("\\\\"); break;
+             case '\n': _out.write("\\n"); break;
+             case '\r': _out.write("\\r"); break;
+             case '\t': _out.write("\\t"); break;
+             default:
+                if (c < 0x20) {
+                   _out.write(String.format("\\u%04x", (int) c));
+                } else {
+                   _out.write(c);
+                }
+          }
+       }
+       _out.write('"');
+    }
+ }//end JsonWriter
@@ -0,0 +1,165 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.lang.management.ManagementFactory;
+ import java.util.ArrayList;
+ import java.util.Collections;
+ import java.util.List;
+ import java.util.concurrent.ConcurrentHashMap;
+ import java.util.concurrent.atomic.AtomicInteger;
+ import java.util.regex.Pattern;
+ import javax.management.JMException;
+ import javax.management.MBeanServer;
+ import javax.management.ObjectName;
+
+ /**
+  * Latency histograms keyed by operation and SQL template.
+  *
+  * The PizzaStore helpers record every database call under the helper's
+  * name and the normalized SQL, and the console records every menu action
+  * under "menu". dump() prints p50/p95/p99/max and row counts per key; the
+  * same table is available over JMX and from the HTTP server's /metrics.
+  *
+  */
+ public class LatencyMetrics implements LatencyMetricsMBean {
+
+    // templates normalized so far; beyond this many, new SQL is normalized on every call.
+    static final int MAX_CACHED_TEMPLATES = 1000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, Entry> _entries = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentHashMap<String, String> _templates = new ConcurrentHashMap<String, String>();
+    private ObjectName _jmxName = null;
+
+    /**
+     * Records one call.
+     *
+     * @param operation the helper or kind of action, e.g. "executeUpdate" or "menu"
+     * @param sql the statement, or the menu action's name; literals are
+     *        replaced with '?' so calls group by template
+     * @param startNanos System.nanoTime() when the call began
+     * @param rows rows read or written; negative if the call failed
+     */
+    public void record(String operation, String sql, long startNanos, long rows) {
+       long nanos = System.nanoTime() - startNanos;
+       String template = template(sql);
+       String key = operation + '\u0000' + template;
+       Entry entry = _entries.get(key);
+       if (entry == null) {
+          entry = _entries.computeIfAbsent(key, k -> new Entry(operation, template));
+       }
+       entry.recorder.record(nanos, rows);
+    }
+
+    /**
+     * Returns the normalized form of a statement: literals replaced with
+     * '?' and whitespace collapsed.
+     */
+    public String template(String sql) {
+       String template = _templates.get(sql);
+       if (template == null) {
+          template = normalize(sql);
+          if (_templates.size() < MAX_CACHED_TEMPLATES) {
+             _templates.put(sql, template);
+          }
+       }
+       return template;
+    }
+
+    static String normalize(String sql) {
+       String template = STRING_LITERAL.matcher(sql).replaceAll("?");
+       template = NUMBER_LITERAL.matcher(template).replaceAll("?");
+       return WHITESPACE.matcher(template).replaceAll(" ").trim();
+    }
+
+    /**
+     * Returns the recorder for one key, or null if it has no samples.
+     */
+    public LatencyRecorder get(String operation, String sql) {
+       Entry entry = _entries.get(operation + '\u0000' + template(sql));
+       return entry == null ? null : entry.recorder;
+    }
+
+    @Override
+    public String dump() {
+       List<Entry> entries = new ArrayList<Entry>(_entries.values());
+       Collections.sort(entries, (a, b) -> Long.compare(b.recorder.getTotalNanos(), a.recorder.getTotalNanos()));
+
+       StringBuilder out = new StringBuilder();
+       out.append(String.format("%-28s %9s %7s %11s %9s %9s %9s %9s %10s  %s%n",
+          "operation", "count", "errors", "rows", "p50 ms", "p95 ms", "p99 ms", "max ms", "total s", "template"));
+       for (Entry entry : entries) {
+          LatencyRecorder r = entry.recorder;
+          out.append(String.format("%-28s %9d %7d %11d %9.3f %9.3f %9.3f %9.3f %10.2f  %s%n",
+             entry.operation, r.getCount(), r.getErrors(), r.getRows(),
+             r.percentile(0.50) / 1e6, r.percentile(0.95) / 1e6, r.percentile(0.99) / 1e6,
+             r.getMaxNanos() / 1e6, r.getTotalNanos() / 1e9, entry.template));
+       }
+       return out.toString();
+    }//end dump
+
+    @Override
+    public int getOperationCount() {
+       return _entries.size();
+    }
+
+    @Override
+    public void reset() {
+       _entries.clear();
+    }
+
+    /**
+     * Registers this instance with the platform MBean server. A second
+     * PizzaStore in the same JVM gets a numbered name.
+     */
+    public void registerMBean() {
+       try {
+          MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+          int instance = INSTANCES.getAndIncrement();
+          _jmxName = new ObjectName("PizzaStore:type=LatencyMetrics" + (instance == 0 ? "" : ",instance=" + instance));
+          server.registerMBean(this, _jmxName);
+       } catch (JMException e) {
+          System.err.println("Latency metrics are not available over JMX: " + e.getMessage());
+          _jmxName = null;
+       }
+    }
+
+    public void unregisterMBean() {
+       if (_jmxName == null) {
+          return;
+       }
+       try {
+          ManagementFactory.getPlatformMBeanServer().unregisterMBean(_jmxName);
+       } catch (JMException e) {
+          // already gone.
+       }
+       _jmxName = null;
+    }
+
+    /*
+     * One histogram and the key it is recorded under.
+     */
+    private static final class Entry {
+       final String operation;
+       final String template;
+       final LatencyRecorder recorder = new LatencyRecorder();
+
+       Entry(String operation, String template) {
+          this.operation = operation;
+          this.template = template;
+       }
+    }
+ }//end LatencyMetrics
@@ -0,0 +1,33 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ /**
+  * JMX view of LatencyMetrics, registered as PizzaStore:type=LatencyMetrics.
+  *
+  */
+ public interface LatencyMetricsMBean {
+
+    /**
+     * Returns the latency table, slowest operations by total time first.
+     */
+    String dump();
+
+    /**
+     * Returns the number of distinct (operation, SQL template) pairs recorded.
+     */
+    int getOperationCount();
+
+    /**
+     * Discards every recorded sample.
+     */
+    void reset();
+ }//end LatencyMetricsMBean
@@ -0,0 +1,121 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.util.concurrent.atomic.AtomicLong;
+ import java.util.concurrent.atomic.AtomicLongArray;
+
+ /**
+  * A lock-free latency histogram with log-linear buckets, in the style of
+  * HdrHistogram.
+  *
+  * Values below 2^SUB_BUCKET_BITS nanoseconds get one bucket each; above
+  * that every power of two is split into 2^(SUB_BUCKET_BITS - 1) equal
+  * buckets, so a reported percentile is within 1% of the recorded value.
+  * Memory is fixed at about 36 KB per recorder whatever the number of
+  * samples, and recording is a few atomic increments.
+  *
+  */
+ public final class LatencyRecorder {
+
+    static final int SUB_BUCKET_BITS = 8;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+
+    // values are clamped to 2^MAX_BITS ns (about 18 minutes).
+    static final int MAX_BITS = 40;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_BITS - SUB_BUCKET_BITS + 1) * HALF_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _count = new AtomicLong();
+    private final AtomicLong _errors = new AtomicLong();
+    private final AtomicLong _rows = new AtomicLong();
+    private final AtomicLong _totalNanos = new AtomicLong();
+    private final AtomicLong _maxNanos = new AtomicLong();
+
+    /**
+     * Records one call.
+     *
+     * @param nanos how long the call took
+     * @param rows rows read or written by the call; negative if it failed
+     */
+    public void record(long nanos, long rows) {
+       long value = Math.max(0, Math.min(nanos, (1L << MAX_BITS) - 1));
+       _counts.incrementAndGet(index(value));
+       _count.incrementAndGet();
+       _totalNanos.addAndGet(value);
+       _maxNanos.accumulateAndGet(value, Math::max);
+       if (rows < 0) {
+          _errors.incrementAndGet();
+       } else {
+          _rows.addAndGet(rows);
+       }
+    }
+
+    public long getCount() {
+       return _count.get();
+    }
+
+    public long getErrors() {
+       return _errors.get();
+    }
+
+    public long getRows() {
+       return _rows.get();
+    }
+
+    public long getTotalNanos() {
+       return _totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+       return _maxNanos.get();
+    }
+
+    /**
+     * Returns the latency at or below which a fraction p of the calls
+     * completed, in nanoseconds; 0 if nothing was recorded.
+     */
+    public long percentile(double p) {
+       long count = _count.get();
+       if (count == 0) {
+          return 0;
+       }
+       long target = Math.max(1, (long) Math.ceil(p * count));
+       long seen = 0;
+       for (int i = 0; i < BUCKETS; ++i) {
+          seen += _counts.get(i);
+          if (seen >= target) {
+             return Math.min(highestValue(i), _maxNanos.get());
+          }
+       }
+       return _maxNanos.get();
+    }//end percentile
+
+    static int index(long value) {
+       if (value < SUB_BUCKETS) {
+          return (int) value;
+       }
+       int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+       int sub = (int) (value >>> shift);
+       return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (sub - HALF_BUCKETS);
+    }
+
+    static long highestValue(int index) {
+       if (index < SUB_BUCKETS) {
+          return index;
+       }
+       int k = index - SUB_BUCKETS;
+       int shift = k / HALF_BUCKETS + 1;
+       long sub = k % HALF_BUCKETS + HALF_BUCKETS;
+       return ((sub + 1) << shift) - 1;
+    }
+ }//end LatencyRecorder
@@ -0,0 +1,229 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.math.BigDecimal;
+ import java.sql.SQLException;
+ import java.util.ArrayList;
+ import java.util.Collections;
+ import java.util.HashMap;
+ import java.util.List;
+ import java.util.Map;
+ import java.util.concurrent.atomic.AtomicLong;
+
+ /**
+  * A read-mostly, in-memory copy of the Items table that answers menu
+  * browsing without a database round-trip.
+  *
+  * Items are kept sorted by price, with a per-type index, in an immutable
+  * snapshot. Menu writes call invalidate, which bumps the catalog version;
+  * the next lookup reloads the snapshot. Snapshots are also reloaded once
+  * they are older than maxAgeMillis, so changes made by other processes
+  * are picked up.
+  *
+  * Free-text search and "did you mean" suggestions use a MenuSearchIndex,
+  * built on the first search against each snapshot.
+  *
+  */
+ public class MenuCatalog {
+
+    private final PizzaStore _esql;
+    private final long _maxAgeMillis;
+
+    // bumped on every menu write; a snapshot is current while its version matches.
+    private final AtomicLong _version = new AtomicLong();
+    private volatile Snapshot _snapshot = null;
+
+    /**
+     * @param esql the store whose Items table is cached
+     * @param maxAgeMillis reload snapshots older than this; 0 disables expiry
+     */
+    public MenuCatalog(PizzaStore esql, long maxAgeMillis) {
+       _esql = esql;
+       _maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Returns the items of a type up to a price, sorted by price.
+     *
+     * @param typeOfItem the type to match, ignoring surrounding spaces;
+     *        null for every type
+     * @param maxPrice the highest price to include; 0 or less for no limit
+     * @param ascending true for cheapest first, false for most expensive first
+     * @return the matching items, a new list owned by the caller
+     * @throws java.sql.SQLException when the catalog had to be reloaded and
+     *         the query failed
+     */
+    public List<Item> find(String typeOfItem, double maxPrice, boolean ascending) throws SQLException {
+       Snapshot snapshot = current();
+
+       List<Item> candidates;
+       if (typeOfItem == null) {
+          candidates = snapshot.byPrice;
+       } else {
+          candidates = snapshot.byType.get(typeOfItem.trim());
+          if (candidates == null) {
+             return new ArrayList<Item>();
+          }
+       }
+
+       int end = maxPrice > 0 ? upperBound(candidates, maxPrice) : candidates.size();
+       List<Item> result = new ArrayList<Item>(candidates.subList(0, end));
+       if (!ascending) {
+          Collections.reverse(result);
+       }
+       return result;
+    }//end find
+
+    /**
+     * Returns the item with the given name, or null if it is not on the menu.
+     *
+     * @throws java.sql.SQLException when the catalog had to be reloaded and
+     *         the query failed
+     */
+    public Item get(String itemName) throws SQLException {
+       return current().byName.get(itemName);
+    }
+
+    /**
+     * Returns the items matching every word of a free-text query in their
+     * name, ingredients, description or type, best match first.
+     *
+     * @param query words to look for; prefixes, substrings and misspellings match
+     * @param limit the most items to return
+     * @throws java.sql.SQLException when the catalog had to be reloaded and
+     *         the query failed
+     */
+    public List<Item> search(String query, int limit) throws SQLException {
+       return current().searchIndex().search(query, limit);
+    }
+
+    /**
+     * Returns the names of the items most similar to the given text, for
+     * "did you mean" hints; empty when nothing is close.
+     *
+     * @throws java.sql.SQLException when the catalog had to be reloaded and
+     *         the query failed
+     */
+    public List<String> suggest(String text, int limit) throws SQLException {
+       return current().searchIndex().suggest(text, limit);
+    }
+
+    /**
+     * Marks the cached menu as stale; call after any write to Items.
+     */
+    public void invalidate() {
+       _version.incrementAndGet();
+    }
+
+    /**
+     * Returns a number that changes whenever invalidate is called, for
+     * caches of data derived from the menu.
+     */
+    public long version() {
+       return _version.get();
+    }
+
+    private Snapshot current() throws SQLException {
+       Snapshot snapshot = _snapshot;
+       if (isCurrent(snapshot)) {
+          return snapshot;
+       }
+
+       synchronized (this) {
+          snapshot = _snapshot;
+          if (!isCurrent(snapshot)) {
+             snapshot = load(_version.get());
+             _snapshot = snapshot;
+          }
+          return snapshot;
+       }
+    }//end current
+
+    private boolean isCurrent(Snapshot snapshot) {
+       return snapshot != null
+          && snapshot.version == _version.get()
+          && (_maxAgeMillis <= 0 || System.currentTimeMillis() - snapshot.loadedAtMillis < _maxAgeMillis);
+    }
+
+    private Snapshot load(long version) throws SQLException {
+       String query = "SELECT I.itemName, I.ingredients, I.typeOfItem, I.price, I.description FROM Items I ORDER BY I.price ASC, I.itemName ASC;";
+       List<Item> byPrice = _esql.executeQueryAndMap(query, Item.MAPPER);
+
+       Map<String, List<Item>> byType = new HashMap<String, List<Item>>();
+       Map<String, Item> byName = new HashMap<String, Item>();
+       for (Item item : byPrice) {
+          byName.put(item.getItemName(), item);
+
+          // rows arrive sorted by price, so each per-type list is sorted too.
+          String type = item.getTypeOfItem().trim();
+          List<Item> items = byType.get(type);
+          if (items == null) {
+             items = new ArrayList<Item>();
+             byType.put(type, items);
+          }
+          items.add(item);
+       }
+       return new Snapshot(version, byPrice, byType, byName);
+    }//end load
+
+    /*
+     * Returns the number of leading items priced at or below maxPrice.
+     */
+    private static int upperBound(List<Item> byPrice, double maxPrice) {
+       BigDecimal limit = BigDecimal.valueOf(maxPrice);
+       int lo = 0;
+       int hi = byPrice.size();
+       while (lo < hi) {
+          int mid = (lo + hi) >>> 1;
+          if (byPrice.get(mid).getPrice().compareTo(limit) <= 0) {
+             lo = mid + 1;
+          } else {
+             hi = mid;
+          }
+       }
+       return lo;
+    }
+
+    /*
+     * An immutable view of the menu at one catalog version.
+     */
+    private static final class Snapshot {
+       final long version;
+       final long loadedAtMillis;
+       final List<Item> byPrice;
+       final Map<String, List<Item>> byType;
+       final Map<String, Item> byName;
+       private volatile MenuSearchIndex searchIndex = null;
+
+       Snapshot(long version, List<Item> byPrice, Map<String, List<Item>> byType, Map<String, Item> byName) {
+          this.version = version;
+          this.loadedAtMillis = System.currentTimeMillis();
+          this.byPrice = byPrice;
+          this.byType = byType;
+          this.byName = byName;
+       }
+
+       MenuSearchIndex searchIndex() {
+          MenuSearchIndex index = searchIndex;
+          if (index == null) {
+             synchronized (this) {
+                index = searchIndex;
+                if (index == null) {
+                   index = new MenuSearchIndex(byPrice);
+                   searchIndex = index;
+                }
+             }
+          }
+          return index;
+       }
+    }
+ }//end MenuCatalog
@@ -0,0 +1,547 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.HashMap;
+ import java.util.LinkedHashSet;
+ import java.util.List;
+ import java.util.Locale;
+ import java.util.Map;
+ import java.util.Set;
+ import java.util.concurrent.ConcurrentLinkedQueue;
+
+ /**
+  * An inverted index over the words of every menu item's name,
+  * ingredients, description and type, for free-text menu search.
+  *
+  * Each query word matches an item's words exactly, by prefix, as a
+  * substring (so "mozz" finds "buffalo-mozzarella"), or, when it matches
+  * nothing that way, by trigram similarity as pg_trgm computes it, so
+  * "peperoni" still finds "pepperoni". An item must match every query
+  * word; items are ranked by how well and where they match, a name match
+  * counting more than an ingredient and an ingredient more than the
+  * description.
+  *
+  * Item names also get a trigram index of their own, for "did you mean"
+  * suggestions when an exact name is not on the menu.
+  *
+  * The index is immutable and built from one catalog snapshot.
+  *
+  */
+ public final class MenuSearchIndex {
+
+    // pg_trgm's default similarity threshold.
+    static final double SIMILARITY_THRESHOLD = 0.3;
+
+    // score of a query word per kind of match, before the field weight.
+    static final float EXACT = 1.0f;
+    static final float PREFIX = 0.7f;
+    static final float INFIX = 0.5f;
+    static final float FUZZY = 0.5f;
+
+    static final int NAME = 0;
+    static final int INGREDIENTS = 1;
+    static final int DESCRIPTION = 2;
+    private static final float[] FIELD_WEIGHTS = { 3.0f, 2.0f, 1.0f };
+
+    private final List<Item> _items;
+
+    // each item's position in name order, to break ties in score.
+    private final int[] _nameRank;
+
+    // distinct words, sorted, and the (item << 2 | field) codes each occurs in.
+    private final String[] _words;
+    private final int[][] _postings;
+
+    // trigram -> ids of the words containing it, and each word's trigram count.
+    private final Map<Long, int[]> _wordTrigrams;
+    private final int[] _wordTrigramCounts;
+
+    // trigram -> items whose name contains it, and each name's trigram count.
+    private final Map<Long, int[]> _nameTrigrams;
+    private final int[] _nameTrigramCounts;
+
+    // per-item and per-word work arrays, reused across lookups.
+    private final ConcurrentLinkedQueue<Scratch> _scratch = new ConcurrentLinkedQueue<Scratch>();
+
+    /**
+     * Builds the index over the given items.
+     */
+    public MenuSearchIndex(List<Item> items) {
+       _items = items;
+
+       Integer[] byName = new Integer[items.size()];
+       for (int i = 0; i < byName.length; ++i) {
+          byName[i] = i;
+       }
+       Arrays.sort(byName, (a, b) -> items.get(a).getItemName().compareTo(items.get(b).getItemName()));
+       _nameRank = new int[items.size()];
+       for (int rank = 0; rank < byName.length; ++rank) {
+          _nameRank[byName[rank]] = rank;
+       }
+
+       Map<String, IntList> postings = new HashMap<String, IntList>();
+       Map<Long, IntList> nameTrigrams = new HashMap<Long, IntList>();
+       _nameTrigramCounts = new int[items.size()];
+       for (int i = 0; i < items.size(); ++i) {
+          Item item = items.get(i);
+          addWords(postings, i, NAME, item.getItemName());
+          addWords(postings, i, INGREDIENTS, item.getIngredients());
+          addWords(postings, i, DESCRIPTION, item.getDescription());
+          addWords(postings, i, DESCRIPTION, item.getTypeOfItem());
+
+          long[] trigrams = trigrams(item.getItemName());
+          _nameTrigramCounts[i] = trigrams.length;
+          for (long trigram : trigrams) {
+             add(nameTrigrams, trigram, i);
+          }
+       }
+
+       _words = postings.keySet().toArray(new String[0]);
+       Arrays.sort(_words);
+       _postings = new int[_words.length][];
+       _wordTrigramCounts = new int[_words.length];
+       Map<Long, IntList> wordTrigrams = new HashMap<Long, IntList>();
+       for (int w = 0; w < _words.length; ++w) {
+          _postings[w] = postings.get(_words[w]).toArray();
+          long[] trigrams = wordTrigrams(_words[w]);
+          _wordTrigramCounts[w] = trigrams.length;
+          for (long trigram : trigrams) {
+             add(wordTrigrams, trigram, w);
+          }
+       }
+       _wordTrigrams = freeze(wordTrigrams);
+       _nameTrigrams = freeze(nameTrigrams);
+    }//end MenuSearchIndex
+
+    /**
+     * Returns the items matching every word of the query, best first.
+     *
+     * @param query free text, e.g. "spicy pepperoni" or "mozz"
+     * @param limit the most items to return
+     * @return the matching items, a new list owned by the caller
+     */
+    public List<Item> search(String query, int limit) {
+       List<String> terms = new ArrayList<String>(new LinkedHashSet<String>(words(query)));
+       if (terms.isEmpty() || limit <= 0) {
+          return new ArrayList<Item>();
+       }
+
+       Scratch scratch = borrow();
+       IntList survivors = new IntList();
+       try {
+          // matched counts the terms an item has matched so far, in order;
+          // only items that matched the first term are ever set.
+          for (int t = 0; t < terms.size(); ++t) {
+             IntList touched = scratch.touched;
+             touched.clear();
+             scoreTerm(terms.get(t), scratch);
+
+             IntList next = new IntList();
+             for (int k = 0; k < touched.size; ++k) {
+                int item = touched.values[k];
+                if (scratch.matched[item] == t) {
+                   scratch.matched[item] = t + 1;
+                   scratch.totals[item] += scratch.best[item];
+                   next.add(item);
+                }
+                scratch.best[item] = 0;
+             }
+             if (t == 0) {
+                survivors = next;
+             } else if (next.size == 0) {
+                break;
+             }
+          }
+
+          int[] top = new int[Math.min(limit, survivors.size)];
+          int size = 0;
+          for (int k = 0; k < survivors.size; ++k) {
+             int item = survivors.values[k];
+             if (scratch.matched[item] == terms.size()) {
+                size = offer(top, size, item, scratch.totals);
+             }
+          }
+          return drain(top, size, scratch.totals, new ArrayList<Item>(size));
+       } finally {
+          for (int k = 0; k < survivors.size; ++k) {
+             scratch.matched[survivors.values[k]] = 0;
+             scratch.totals[survivors.values[k]] = 0;
+          }
+          _scratch.add(scratch);
+       }
+    }//end search
+
+    /**
+     * Returns the names of the items whose name is most similar to the
+     * given text, for "did you mean" hints.
+     *
+     * @param text an item name that was not found, or a search query
+     * @param limit the most names to return
+     */
+    public List<String> suggest(String text, int limit) {
+       long[] trigrams = trigrams(text);
+       List<String> names = new ArrayList<String>();
+       if (trigrams.length == 0 || limit <= 0) {
+          return names;
+       }
+
+       Scratch scratch = borrow();
+       IntList touched = scratch.touched;
+       touched.clear();
+       try {
+          for (long trigram : trigrams) {
+             int[] items = _nameTrigrams.get(trigram);
+             if (items == null) {
+                continue;
+             }
+             for (int item : items) {
+                if (scratch.matched[item]++ == 0) {
+                   touched.add(item);
+                }
+             }
+          }
+
+          int[] top = new int[Math.min(limit, touched.size)];
+          int size = 0;
+          for (int k = 0; k < touched.size; ++k) {
+             int item = touched.values[k];
+             int shared = scratch.matched[item];
+             float similarity = (float) shared / (trigrams.length + _nameTrigramCounts[item] - shared);
+             if (similarity >= SIMILARITY_THRESHOLD) {
+                scratch.totals[item] = similarity;
+                size = offer(top, size, item, scratch.totals);
+             }
+          }
+          List<Item> items = drain(top, size, scratch.totals, new ArrayList<Item>(size));
+          for (Item item : items) {
+             names.add(item.getItemName());
+          }
+          return names;
+       } finally {
+          for (int k = 0; k < touched.size; ++k) {
+             scratch.matched[touched.values[k]] = 0;
+             scratch.totals[touched.values[k]] = 0;
+          }
+          _scratch.add(scratch);
+       }
+    }//end suggest
+
+    /*
+     * Sets scratch.best to the score of every item one query word matches,
+     * listing the items in scratch.touched.
+     */
+    private void scoreTerm(String term, Scratch scratch) {
+       // words sharing the prefix are contiguous in the sorted dictionary.
+       int lo = lowerBound(term);
+       int hi = lo;
+       while (hi < _words.length && _words[hi].startsWith(term)) {
+          ++hi;
+       }
+       boolean found = hi > lo;
+       for (int w = lo; w < hi; ++w) {
+          credit(w, _words[w].length() == term.length() ? EXACT : PREFIX, scratch);
+       }
+
+       if (term.length() < 3) {
+          return;
+       }
+
+       // substrings: words holding every inner trigram of the term, checked.
+       int[] candidates = null;
+       for (int i = 0; i + 3 <= term.length() && (candidates == null || candidates.length > 0); ++i) {
+          int[] words = _wordTrigrams.get(key(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2)));
+          candidates = words == null ? new int[0] : candidates == null ? words : intersect(candidates, words);
+       }
+       for (int w : candidates) {
+          if ((w < lo || w >= hi) && _words[w].contains(term)) {
+             credit(w, INFIX, scratch);
+             found = true;
+          }
+       }
+
+       if (found) {
+          return;
+       }
+
+       // misspellings: words with a similar trigram set.
+       long[] trigrams = wordTrigrams(term);
+       int[] shared = scratch.wordShared;
+       IntList words = new IntList();
+       for (long trigram : trigrams) {
+          int[] containing = _wordTrigrams.get(trigram);
+          if (containing != null) {
+             for (int w : containing) {
+                if (shared[w]++ == 0) {
+                   words.add(w);
+                }
+             }
+          }
+       }
+       for (int k = 0; k < words.size; ++k) {
+          int w = words.values[k];
+          double similarity = (double) shared[w] / (trigrams.length + _wordTrigramCounts[w] - shared[w]);
+          if (similarity >= SIMILARITY_THRESHOLD) {
+             credit(w, (float) (FUZZY * similarity), scratch);
+          }
+          shared[w] = 0;
+       }
+    }//end scoreTerm
+
+    private void credit(int word, float match, Scratch scratch) {
+       float[] best = scratch.best;
+       for (int code : _postings[word]) {
+          int item = code >>> 2;
+          float score = match * FIELD_WEIGHTS[code & 3];
+          if (best[item] == 0) {
+             scratch.touched.add(item);
+          }
+          if (score > best[item]) {
+             best[item] = score;
+          }
+       }
+    }
+
+    /*
+     * True if item a ranks before item b: higher score, then name order.
+     */
+    private boolean before(int a, int b, float[] scores) {
+       return scores[a] != scores[b] ? scores[a] > scores[b] : _nameRank[a] < _nameRank[b];
+    }
+
+    /*
+     * Adds an item to a bounded min-heap holding the best items so far,
+     * the worst at the root, and returns the new heap size.
+     */
+    private int offer(int[] heap, int size, int item, float[] scores) {
+       if (size < heap.length) {
+          int i = size++;
+          while (i > 0 && before(heap[(i - 1) / 2], item, scores)) {
+             heap[i] = heap[(i - 1) / 2];
+             i = (i - 1) / 2;
+          }
+          heap[i] = item;
+       } else if (size > 0 && before(item, heap[0], scores)) {
+          siftDown(heap, size, item, scores);
+       }
+       return size;
+    }
+
+    private void siftDown(int[] heap, int size, int item, float[] scores) {
+       int i = 0;
+       while (2 * i + 1 < size) {
+          int child = 2 * i + 1;
+          if (child + 1 < size && before(heap[child], heap[child + 1], scores)) {
+             ++child;
+          }
+          if (!before(item, heap[child], scores)) {
+             break;
+          }
+          heap[i] = heap[child];
+          i = child;
+       }
+       heap[i] = item;
+    }
+
+    /*
+     * Empties the heap into the list, best item first.
+     */
+    private List<Item> drain(int[] heap, int size, float[] scores, List<Item> out) {
+       Item[] sorted = new Item[size];
+       for (int n = size; n > 0; --n) {
+          sorted[n - 1] = _items.get(heap[0]);
+          siftDown(heap, n - 1, heap[n - 1], scores);
+       }
+       out.addAll(Arrays.asList(sorted));
+       return out;
+    }
+
+    private Scratch borrow() {
+       Scratch scratch = _scratch.poll();
+       return scratch != null ? scratch : new Scratch(_items.size(), _words.length);
+    }
+
+    private int lowerBound(String term) {
+       int lo = 0;
+       int hi = _words.length;
+       while (lo < hi) {
+          int mid = (lo + hi) >>> 1;
+          if (_words[mid].compareTo(term) < 0) {
+             lo = mid + 1;
+          } else {
+             hi = mid;
+          }
+       }
+       return lo;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+       int[] out = new int[Math.min(a.length, b.length)];
+       int n = 0;
+       for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+          if (a[i] < b[j]) {
+             ++i;
+          } else if (a[i] > b[j]) {
+             ++j;
+          } else {
+             out[n++] = a[i];
+             ++i;
+             ++j;
+          }
+       }
+       return Arrays.copyOf(out, n);
+    }
+
+    private static void addWords(Map<String, IntList> postings, int item, int field, String text) {
+       int code = item << 2 | field;
+       for (String word : words(text)) {
+          IntList list = postings.get(word);
+          if (list == null) {
+             list = new IntList();
+             postings.put(word, list);
+          }
+          list.addIfNotLast(code);
+       }
+    }
+
+    private static void add(Map<Long, IntList> index, long key, int value) {
+       IntList list = index.get(key);
+       if (list == null) {
+          list = new IntList();
+          index.put(key, list);
+       }
+       list.addIfNotLast(value);
+    }
+
+    private static Map<Long, int[]> freeze(Map<Long, IntList> index) {
+       Map<Long, int[]> frozen = new HashMap<Long, int[]>(index.size() * 2);
+       for (Map.Entry<Long, IntList> entry : index.entrySet()) {
+          frozen.put(entry.getKey(), entry.getValue().toArray());
+       }
+       return frozen;
+    }
+
+    /*
+     * Lower-cased letter and digit runs, in order.
+     */
+    static List<String> words(String text) {
+       List<String> words = new ArrayList<String>();
+       if (text == null) {
+          return words;
+       }
+       String lower = text.toLowerCase(Locale.ROOT);
+       int start = -1;
+       for (int i = 0; i <= lower.length(); ++i) {
+          boolean inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+          if (inWord && start < 0) {
+             start = i;
+          } else if (!inWord && start >= 0) {
+             words.add(lower.substring(start, i));
+             start = -1;
+          }
+       }
+       return words;
+    }
+
+    /*
+     * The distinct trigrams of a text as pg_trgm forms them: each word
+     * padded with two spaces in front and one behind.
+     */
+    static long[] trigrams(String text) {
+       Set<Long> trigrams = new LinkedHashSet<Long>();
+       for (String word : words(text)) {
+          for (long trigram : wordTrigrams(word)) {
+             trigrams.add(trigram);
+          }
+       }
+       long[] keys = new long[trigrams.size()];
+       int n = 0;
+       for (long trigram : trigrams) {
+          keys[n++] = trigram;
+       }
+       return keys;
+    }
+
+    static long[] wordTrigrams(String word) {
+       String padded = "  " + word + " ";
+       long[] keys = new long[padded.length() - 2];
+       int n = 0;
+       for (int i = 0; i + 3 <= padded.length(); ++i) {
+          long trigram = key(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2));
+          boolean repeat = false;
+          for (int j = 0; j < n && !repeat; ++j) {
+             repeat = keys[j] == trigram;
+          }
+          if (!repeat) {
+             keys[n++] = trigram;
+          }
+       }
+       return Arrays.copyOf(keys, n);
+    }
+
+    /*
+     * Packs a trigram into a long, scrambled by an odd multiplier (which
+     * keeps keys distinct) so that HashMap spreads them evenly.
+     */
+    private static long key(char a, char b, char c) {
+       return ((long) a << 32 | (long) b << 16 | c) * 0x9E3779B97F4A7C15L;
+    }
+
+    /*
+     * Work arrays for one lookup; every entry is zero between lookups.
+     */
+    private static final class Scratch {
+       final float[] best;
+       final float[] totals;
+       final int[] matched;
+       final int[] wordShared;
+       final IntList touched = new IntList();
+
+       Scratch(int items, int words) {
+          best = new float[items];
+          totals = new float[items];
+          matched = new int[items];
+          wordShared = new int[words];
+       }
+    }
+
+    /*
+     * A growable int array.
+     */
+    static final class IntList {
+       int[] values = new int[4];
+       int size = 0;
+
+       void add(int value) {
+          if (size == values.length) {
+             values = Arrays.copyOf(values, size * 2);
+          }
+          values[size++] = value;
+       }
+
+       // values are added in order, so a repeat can only be the last entry.
+       void addIfNotLast(int value) {
+          if (size == 0 || values[size - 1] != value) {
+             add(value);
+          }
+       }
+
+       void clear() {
+          size = 0;
+       }
+
+       int[] toArray() {
+          return Arrays.copyOf(values, size);
+       }
+    }
+ }//end MenuSearchIndex
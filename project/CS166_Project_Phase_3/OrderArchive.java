@@ -0,0 +1,811 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.io.ByteArrayOutputStream;
+ import java.io.DataOutputStream;
+ import java.io.File;
+ import java.io.IOException;
+ import java.math.BigDecimal;
+ import java.nio.ByteBuffer;
+ import java.nio.MappedByteBuffer;
+ import java.nio.channels.FileChannel;
+ import java.nio.charset.StandardCharsets;
+ import java.nio.file.Files;
+ import java.nio.file.StandardCopyOption;
+ import java.nio.file.StandardOpenOption;
+ import java.nio.file.attribute.BasicFileAttributes;
+ import java.sql.Timestamp;
+ import java.time.LocalDateTime;
+ import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.Collections;
+ import java.util.HashMap;
+ import java.util.LinkedHashMap;
+ import java.util.List;
+ import java.util.Map;
+ import java.util.concurrent.atomic.AtomicLong;
+ import java.util.regex.Pattern;
+ import java.util.zip.DataFormatException;
+ import java.util.zip.Deflater;
+ import java.util.zip.Inflater;
+
+ /**
+  * Read access to the completed orders that OrderArchiver moved out of
+  * FoodOrder and ItemsInOrder: one file per month, orders-YYYYMM.pza, in
+  * the archive directory. Files are memory-mapped and re-opened when the
+  * archiver replaces them.
+  *
+  * A file is a run of row groups followed by a footer:
+  *
+  *   row group  one deflated block per column, in column order
+  *   footer     MAGIC, VERSION, month (YYYYMM), row group count, then per
+  *              group its offset, row count, min/max orderID, min/max
+  *              timestamp and the deflated and raw length of each column;
+  *              then the min/max orderID and timestamp of the whole file
+  *   trailer    footer length, MAGIC
+  *
+  * Rows within a group are in (orderTimestamp, orderID) order. Numbers are
+  * varints (zigzag where they may be negative), orderIDs and timestamps
+  * (microseconds since the epoch) are stored as deltas from the previous
+  * row, prices as cents, and strings through a per-group dictionary. The
+  * line items of all the group's orders follow in three columns: the line
+  * count of each order, then every line's item name and quantity.
+  *
+  * A lookup by orderID only inflates the orderID column of the groups
+  * whose footer range contains it; the other columns are inflated when
+  * it is found.
+  *
+  */
+ public class OrderArchive {
+
+    static final int MAGIC = 0x505A4131; // "PZA1"
+    static final int VERSION = 1;
+
+    // columns of a row group, in file order.
+    static final int ORDER_ID = 0;
+    static final int TIMESTAMP = 1;
+    static final int STORE_ID = 2;
+    static final int LOGIN = 3;
+    static final int TOTAL_PRICE = 4;
+    static final int STATUS = 5;
+    static final int LINE_COUNT = 6;
+    static final int ITEM_NAME = 7;
+    static final int QUANTITY = 8;
+    static final int COLUMNS = 9;
+
+    static final Pattern FILE_NAME = Pattern.compile("orders-(\\d{6})\\.pza");
+
+    // the directory is listed again at least this often, in case its mtime is too coarse to show a change.
+    static final long RESCAN_MILLIS = 1000L;
+
+    /**
+     * An archived order with its line items.
+     */
+    public static final class Entry {
+       private final FoodOrder _order;
+       private final List<ItemInOrder> _items;
+
+       Entry(FoodOrder order, List<ItemInOrder> items) {
+          _order = order;
+          _items = items;
+       }
+
+       public FoodOrder getOrder() {
+          return _order;
+       }
+
+       public List<ItemInOrder> getItems() {
+          return _items;
+       }
+    }//end Entry
+
+    private final File _dir;
+    private final AtomicLong _lookups = new AtomicLong();
+    private final AtomicLong _found = new AtomicLong();
+
+    // guarded by this; the open files, newest month first.
+    private long _dirModified = Long.MIN_VALUE;
+    private long _scannedAt = 0;
+    private List<MonthFile> _files = Collections.emptyList();
+
+    /**
+     * @param dir the archive directory; it need not exist yet
+     */
+    public OrderArchive(File dir) {
+       _dir = dir;
+    }
+
+    public File getDirectory() {
+       return _dir;
+    }
+
+    /**
+     * Returns the file that holds a month's orders, which may not exist.
+     *
+     * @param month the month as YYYYMM
+     */
+    public File monthFile(int month) {
+       return new File(_dir, "orders-" + month + ".pza");
+    }
+
+    /**
+     * Returns an archived order, or null if it is not in the archive.
+     */
+    public Entry find(int orderID) throws IOException {
+       _lookups.incrementAndGet();
+       List<MonthFile> files = files(false);
+       Entry entry = find(files, orderID);
+       if (entry == null) {
+          // the archiver may have just moved the order here and deleted it from the tables.
+          List<MonthFile> current = files(true);
+          if (current != files) {
+             entry = find(current, orderID);
+          }
+       }
+       if (entry != null) {
+          _found.incrementAndGet();
+       }
+       return entry;
+    }
+
+    private static Entry find(List<MonthFile> files, int orderID) throws IOException {
+       for (MonthFile file : files) {
+          Entry entry = file.find(orderID);
+          if (entry != null) {
+             return entry;
+          }
+       }
+       return null;
+    }
+
+    /**
+     * Returns the open file of a month, or null if that month has none.
+     */
+    public MonthFile month(int month) throws IOException {
+       for (MonthFile file : files(true)) {
+          if (file.getMonth() == month) {
+             return file;
+          }
+       }
+       return null;
+    }
+
+    /**
+     * Returns the open files, newest month first, re-reading the directory
+     * if a file may have been added or replaced since the last call.
+     *
+     * @param force re-read it and check every file regardless; returns
+     *        the same list if nothing changed
+     */
+    public synchronized List<MonthFile> files(boolean force) throws IOException {
+       long modified = _dir.lastModified();
+       long now = System.currentTimeMillis();
+       if (!force && modified == _dirModified && now - _scannedAt < RESCAN_MILLIS) {
+          return _files;
+       }
+
+       Map<String, MonthFile> open = new HashMap<String, MonthFile>();
+       for (MonthFile file : _files) {
+          open.put(file.getFile().getName(), file);
+       }
+       List<MonthFile> files = new ArrayList<MonthFile>();
+       boolean changed = false;
+       String[] names = _dir.list();
+       if (names != null) {
+          Arrays.sort(names, Collections.reverseOrder());
+          for (String name : names) {
+             if (FILE_NAME.matcher(name).matches()) {
+                File f = new File(_dir, name);
+                MonthFile file = open.get(name);
+                if (file == null || !file.isCurrent()) {
+                   file = MonthFile.open(f);
+                   changed = true;
+                }
+                files.add(file);
+             }
+          }
+       }
+       if (changed || files.size() != _files.size()) {
+          _files = Collections.unmodifiableList(files);
+       }
+       _dirModified = modified;
+       _scannedAt = now;
+       return _files;
+    }//end files
+
+    /**
+     * Returns a one-line summary of the archive and its lookups.
+     */
+    public String stats() {
+       List<MonthFile> files;
+       try {
+          files = files(false);
+       } catch (IOException e) {
+          return "Order archive: unreadable (" + e.getMessage() + ")";
+       }
+       long orders = 0;
+       long bytes = 0;
+       for (MonthFile file : files) {
+          orders += file.getOrderCount();
+          bytes += file.getLength();
+       }
+       return String.format("Order archive: %d orders in %d month file(s), %.1f MB; %d lookups, %d found",
+          orders, files.size(), bytes / 1048576.0, _lookups.get(), _found.get());
+    }//end stats
+
+    /**
+     * One group of rows; its columns are stored back to back from offset.
+     */
+    static final class RowGroup {
+       final long offset;
+       final int rows;
+       final int minOrderID;
+       final int maxOrderID;
+       final long minMicros;
+       final long maxMicros;
+       final int[] compressed;
+       final int[] raw;
+
+       RowGroup(long offset, int rows, int minOrderID, int maxOrderID, long minMicros, long maxMicros,
+                int[] compressed, int[] raw) {
+          this.offset = offset;
+          this.rows = rows;
+          this.minOrderID = minOrderID;
+          this.maxOrderID = maxOrderID;
+          this.minMicros = minMicros;
+          this.maxMicros = maxMicros;
+          this.compressed = compressed;
+          this.raw = raw;
+       }
+
+       long columnOffset(int column) {
+          long position = offset;
+          for (int c = 0; c < column; ++c) {
+             position += compressed[c];
+          }
+          return position;
+       }
+
+       long length() {
+          return columnOffset(COLUMNS) - offset;
+       }
+
+       RowGroup movedTo(long newOffset) {
+          return new RowGroup(newOffset, rows, minOrderID, maxOrderID, minMicros, maxMicros, compressed, raw);
+       }
+    }//end RowGroup
+
+    /**
+     * A memory-mapped month file.
+     */
+    public static final class MonthFile {
+       private final File _file;
+       private final long _length;
+       private final Object _key;
+       private final ByteBuffer _map;
+       private final int _month;
+       private final RowGroup[] _groups;
+       private final int _minOrderID;
+       private final int _maxOrderID;
+       private final long _minMicros;
+       private final long _maxMicros;
+
+       private MonthFile(File file, long length, Object key, ByteBuffer map, int month, RowGroup[] groups,
+                         int minOrderID, int maxOrderID, long minMicros, long maxMicros) {
+          _file = file;
+          _length = length;
+          _key = key;
+          _map = map;
+          _month = month;
+          _groups = groups;
+          _minOrderID = minOrderID;
+          _maxOrderID = maxOrderID;
+          _minMicros = minMicros;
+          _maxMicros = maxMicros;
+       }
+
+       static MonthFile open(File file) throws IOException {
+          Object key = key(file);
+          MappedByteBuffer map;
+          try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+             map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+          }
+          int length = map.capacity();
+          if (length < 8 || map.getInt(length - 4) != MAGIC) {
+             throw new IOException(file + " is not an order archive file");
+          }
+          ByteBuffer footer = map.duplicate();
+          footer.position(length - 8 - map.getInt(length - 8));
+          if (footer.getInt() != MAGIC || footer.getInt() != VERSION) {
+             throw new IOException(file + " has an unsupported archive version");
+          }
+          int month = footer.getInt();
+          RowGroup[] groups = new RowGroup[footer.getInt()];
+          for (int g = 0; g < groups.length; ++g) {
+             long offset = footer.getLong();
+             int rows = footer.getInt();
+             int minOrderID = footer.getInt();
+             int maxOrderID = footer.getInt();
+             long minMicros = footer.getLong();
+             long maxMicros = footer.getLong();
+             int[] compressed = new int[COLUMNS];
+             int[] raw = new int[COLUMNS];
+             for (int c = 0; c < COLUMNS; ++c) {
+                compressed[c] = footer.getInt();
+                raw[c] = footer.getInt();
+             }
+             groups[g] = new RowGroup(offset, rows, minOrderID, maxOrderID, minMicros, maxMicros, compressed, raw);
+          }
+          return new MonthFile(file, length, key, map, month, groups,
+             footer.getInt(), footer.getInt(), footer.getLong(), footer.getLong());
+       }//end open
+
+       public File getFile() {
+          return _file;
+       }
+
+       public int getMonth() {
+          return _month;
+       }
+
+       long getLength() {
+          return _length;
+       }
+
+       /*
+        * Returns false once the archiver has replaced the file.
+        */
+       boolean isCurrent() throws IOException {
+          return _file.length() == _length && _key.equals(key(_file));
+       }
+
+       // the inode where the file system has one, so a replaced file is noticed even with an equal mtime.
+       private static Object key(File file) throws IOException {
+          BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+          Object key = attributes.fileKey();
+          return key != null ? key : attributes.lastModifiedTime();
+       }
+
+       public long getOrderCount() {
+          long orders = 0;
+          for (RowGroup group : _groups) {
+             orders += group.rows;
+          }
+          return orders;
+       }
+
+       public Timestamp getMinTimestamp() {
+          return timestamp(_minMicros);
+       }
+
+       public Timestamp getMaxTimestamp() {
+          return timestamp(_maxMicros);
+       }
+
+       /**
+        * Returns an order of this month, or null.
+        */
+       public Entry find(int orderID) throws IOException {
+          if (_groups.length == 0 || orderID < _minOrderID || orderID > _maxOrderID) {
+             return null;
+          }
+          for (RowGroup group : _groups) {
+             if (orderID >= group.minOrderID && orderID <= group.maxOrderID) {
+                Column ids = column(group, ORDER_ID);
+                int id = 0;
+                for (int row = 0; row < group.rows; ++row) {
+                   id += (int) ids.readSigned();
+                   if (id == orderID) {
+                      return read(group, row, orderID);
+                   }
+                }
+             }
+          }
+          return null;
+       }//end find
+
+       /**
+        * Returns the orderIDs of every archived order of this month.
+        */
+       public int[] orderIDs() throws IOException {
+          int[] ids = new int[(int) getOrderCount()];
+          int n = 0;
+          for (RowGroup group : _groups) {
+             Column column = column(group, ORDER_ID);
+             int id = 0;
+             for (int row = 0; row < group.rows; ++row) {
+                id += (int) column.readSigned();
+                ids[n++] = id;
+             }
+          }
+          return ids;
+       }
+
+       private Entry read(RowGroup group, int row, int orderID) throws IOException {
+          Column timestamps = column(group, TIMESTAMP);
+          long micros = 0;
+          for (int r = 0; r <= row; ++r) {
+             micros += timestamps.readSigned();
+          }
+          int storeID = (int) column(group, STORE_ID).skip(row).readSigned();
+          Column logins = column(group, LOGIN);
+          String login = logins.readDictionary()[(int) logins.skip(row).readUnsigned()];
+          long cents = column(group, TOTAL_PRICE).skip(row).readSigned();
+          Column statuses = column(group, STATUS);
+          String status = statuses.readDictionary()[(int) statuses.skip(row).readUnsigned()];
+
+          Column counts = column(group, LINE_COUNT);
+          int firstLine = 0;
+          for (int r = 0; r < row; ++r) {
+             firstLine += (int) counts.readUnsigned();
+          }
+          int lines = (int) counts.readUnsigned();
+          Column names = column(group, ITEM_NAME);
+          String[] dictionary = names.readDictionary();
+          names.skip(firstLine);
+          Column quantities = column(group, QUANTITY).skip(firstLine);
+          List<ItemInOrder> items = new ArrayList<ItemInOrder>(lines);
+          for (int i = 0; i < lines; ++i) {
+             items.add(new ItemInOrder(orderID, dictionary[(int) names.readUnsigned()], (int) quantities.readUnsigned()));
+          }
+
+          FoodOrder order = new FoodOrder(orderID, login, storeID, BigDecimal.valueOf(cents, 2),
+             timestamp(micros), status);
+          return new Entry(order, items);
+       }//end read
+
+       private Column column(RowGroup group, int column) throws IOException {
+          ByteBuffer input = _map.duplicate();
+          long offset = group.columnOffset(column);
+          input.position((int) offset).limit((int) (offset + group.compressed[column]));
+          byte[] raw = new byte[group.raw[column]];
+          Inflater inflater = new Inflater();
+          try {
+             inflater.setInput(input);
+             int n = 0;
+             while (n < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, n, raw.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                   break;
+                }
+                n += inflated;
+             }
+             if (n != raw.length) {
+                throw new IOException(_file + " has a truncated column");
+             }
+          } catch (DataFormatException e) {
+             throw new IOException(_file + " has a corrupt column", e);
+          } finally {
+             inflater.end();
+          }
+          return new Column(raw);
+       }//end column
+    }//end MonthFile
+
+    /**
+     * Writes a month file next to its final name and moves it into place
+     * on commit, so readers only ever see complete files.
+     */
+    public static final class Writer {
+       private final File _target;
+       private final File _temp;
+       private final int _month;
+       private final FileChannel _out;
+       private final Deflater _deflater = new Deflater();
+       private final List<RowGroup> _groups = new ArrayList<RowGroup>();
+       private long _position = 0;
+
+       /**
+        * @param target the month file to create or replace
+        * @param month the month as YYYYMM
+        */
+       public Writer(File target, int month) throws IOException {
+          _target = target;
+          _temp = new File(target.getPath() + ".tmp");
+          _month = month;
+          File dir = target.getAbsoluteFile().getParentFile();
+          if (!dir.isDirectory() && !dir.mkdirs()) {
+             throw new IOException("Cannot create " + dir);
+          }
+          _out = FileChannel.open(_temp.toPath(), StandardOpenOption.CREATE,
+             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+       }
+
+       /**
+        * Copies every row group of an existing file as is.
+        */
+       public void copy(MonthFile from) throws IOException {
+          for (RowGroup group : from._groups) {
+             ByteBuffer bytes = from._map.duplicate();
+             bytes.position((int) group.offset).limit((int) (group.offset + group.length()));
+             _groups.add(group.movedTo(_position));
+             write(bytes);
+          }
+       }
+
+       /**
+        * Appends one row group.
+        *
+        * @param orders the orders, in (orderTimestamp, orderID) order
+        * @param items the line items of each order, by orderID
+        */
+       public void add(List<FoodOrder> orders, Map<Integer, List<ItemInOrder>> items) throws IOException {
+          if (orders.isEmpty()) {
+             return;
+          }
+          ColumnWriter[] columns = new ColumnWriter[COLUMNS];
+          for (int c = 0; c < COLUMNS; ++c) {
+             columns[c] = new ColumnWriter();
+          }
+          Map<String, Integer> logins = new LinkedHashMap<String, Integer>();
+          Map<String, Integer> statuses = new LinkedHashMap<String, Integer>();
+          Map<String, Integer> names = new LinkedHashMap<String, Integer>();
+          ColumnWriter loginCodes = new ColumnWriter();
+          ColumnWriter statusCodes = new ColumnWriter();
+          ColumnWriter nameCodes = new ColumnWriter();
+
+          int minOrderID = Integer.MAX_VALUE;
+          int maxOrderID = Integer.MIN_VALUE;
+          long minMicros = Long.MAX_VALUE;
+          long maxMicros = Long.MIN_VALUE;
+          int previousID = 0;
+          long previousMicros = 0;
+          for (FoodOrder order : orders) {
+             int id = order.getOrderID();
+             long micros = micros(order.getOrderTimestamp());
+             columns[ORDER_ID].writeSigned((long) id - previousID);
+             columns[TIMESTAMP].writeSigned(micros - previousMicros);
+             columns[STORE_ID].writeSigned(order.getStoreID());
+             loginCodes.writeUnsigned(code(logins, order.getLogin()));
+             columns[TOTAL_PRICE].writeSigned(order.getTotalPrice().setScale(2).unscaledValue().longValueExact());
+             statusCodes.writeUnsigned(code(statuses, order.getOrderStatus()));
+
+             List<ItemInOrder> lines = items.get(id);
+             columns[LINE_COUNT].writeUnsigned(lines == null ? 0 : lines.size());
+             if (lines != null) {
+                for (ItemInOrder line : lines) {
+                   nameCodes.writeUnsigned(code(names, line.getItemName()));
+                   columns[QUANTITY].writeUnsigned(line.getQuantity());
+                }
+             }
+
+             previousID = id;
+             previousMicros = micros;
+             minOrderID = Math.min(minOrderID, id);
+             maxOrderID = Math.max(maxOrderID, id);
+             minMicros = Math.min(minMicros, micros);
+             maxMicros = Math.max(maxMicros, micros);
+          }
+          columns[LOGIN].writeDictionary(logins.keySet()).append(loginCodes);
+          columns[STATUS].writeDictionary(statuses.keySet()).append(statusCodes);
+          columns[ITEM_NAME].writeDictionary(names.keySet()).append(nameCodes);
+
+          int[] compressed = new int[COLUMNS];
+          int[] raw = new int[COLUMNS];
+          long offset = _position;
+          for (int c = 0; c < COLUMNS; ++c) {
+             byte[] deflated = deflate(columns[c].toByteArray());
+             compressed[c] = deflated.length;
+             raw[c] = columns[c].size();
+             write(ByteBuffer.wrap(deflated));
+          }
+          _groups.add(new RowGroup(offset, orders.size(), minOrderID, maxOrderID, minMicros, maxMicros,
+             compressed, raw));
+       }//end add
+
+       /**
+        * Writes the footer, syncs the file to disk and moves it over the
+        * target.
+        */
+       public void commit() throws IOException {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          DataOutputStream footer = new DataOutputStream(bytes);
+          footer.writeInt(MAGIC);
+          footer.writeInt(VERSION);
+          footer.writeInt(_month);
+          footer.writeInt(_groups.size());
+          int minOrderID = Integer.MAX_VALUE;
+          int maxOrderID = Integer.MIN_VALUE;
+          long minMicros = Long.MAX_VALUE;
+          long maxMicros = Long.MIN_VALUE;
+          for (RowGroup group : _groups) {
+             footer.writeLong(group.offset);
+             footer.writeInt(group.rows);
+             footer.writeInt(group.minOrderID);
+             footer.writeInt(group.maxOrderID);
+             footer.writeLong(group.minMicros);
+             footer.writeLong(group.maxMicros);
+             for (int c = 0; c < COLUMNS; ++c) {
+                footer.writeInt(group.compressed[c]);
+                footer.writeInt(group.raw[c]);
+             }
+             minOrderID = Math.min(minOrderID, group.minOrderID);
+             maxOrderID = Math.max(maxOrderID, group.maxOrderID);
+             minMicros = Math.min(minMicros, group.minMicros);
+             maxMicros = Math.max(maxMicros, group.maxMicros);
+          }
+          footer.writeInt(minOrderID);
+          footer.writeInt(maxOrderID);
+          footer.writeLong(minMicros);
+          footer.writeLong(maxMicros);
+          int footerLength = bytes.size();
+          footer.writeInt(footerLength);
+          footer.writeInt(MAGIC);
+          footer.flush();
+
+          write(ByteBuffer.wrap(bytes.toByteArray()));
+          _out.force(true);
+          _out.close();
+          _deflater.end();
+          Files.move(_temp.toPath(), _target.toPath(),
+             StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+       }//end commit
+
+       /**
+        * Discards the file being written; the target is left as it was.
+        */
+       public void abort() {
+          try {
+             _out.close();
+          } catch (IOException ignored) {
+             // the file is deleted anyway.
+          }
+          _deflater.end();
+          _temp.delete();
+       }
+
+       /**
+        * Returns the number of rows written so far.
+        */
+       public long getOrderCount() {
+          long orders = 0;
+          for (RowGroup group : _groups) {
+             orders += group.rows;
+          }
+          return orders;
+       }
+
+       private void write(ByteBuffer bytes) throws IOException {
+          while (bytes.hasRemaining()) {
+             _position += _out.write(bytes);
+          }
+       }
+
+       private byte[] deflate(byte[] raw) {
+          _deflater.reset();
+          _deflater.setInput(raw);
+          _deflater.finish();
+          ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+          byte[] buffer = new byte[8192];
+          while (!_deflater.finished()) {
+             out.write(buffer, 0, _deflater.deflate(buffer));
+          }
+          return out.toByteArray();
+       }
+
+       private static int code(Map<String, Integer> dictionary, String value) {
+          Integer code = dictionary.get(value);
+          if (code == null) {
+             code = dictionary.size();
+             dictionary.put(value, code);
+          }
+          return code;
+       }
+    }//end Writer
+
+    /*
+     * A growable buffer of varints and strings.
+     */
+    static final class ColumnWriter extends ByteArrayOutputStream {
+
+       void writeUnsigned(long value) {
+          while ((value & ~0x7FL) != 0) {
+             write((int) ((value & 0x7F) | 0x80));
+             value >>>= 7;
+          }
+          write((int) value);
+       }
+
+       void writeSigned(long value) {
+          writeUnsigned((value << 1) ^ (value >> 63));
+       }
+
+       ColumnWriter writeDictionary(Iterable<String> values) {
+          int n = 0;
+          for (String ignored : values) {
+             ++n;
+          }
+          writeUnsigned(n);
+          for (String value : values) {
+             byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+             // 0 is null; otherwise the length plus one
+             writeUnsigned(bytes == null ? 0 : bytes.length + 1L);
+             if (bytes != null) {
+                write(bytes, 0, bytes.length);
+             }
+          }
+          return this;
+       }
+
+       void append(ColumnWriter other) {
+          write(other.buf, 0, other.count);
+       }
+    }//end ColumnWriter
+
+    /*
+     * Reads an inflated column front to back.
+     */
+    static final class Column {
+       private final byte[] _bytes;
+       private int _position = 0;
+
+       Column(byte[] bytes) {
+          _bytes = bytes;
+       }
+
+       long readUnsigned() {
+          long value = 0;
+          for (int shift = 0; ; shift += 7) {
+             byte b = _bytes[_position++];
+             value |= (long) (b & 0x7F) << shift;
+             if (b >= 0) {
+                return value;
+             }
+          }
+       }
+
+       long readSigned() {
+          long value = readUnsigned();
+          return (value >>> 1) ^ -(value & 1);
+       }
+
+       Column skip(int values) {
+          for (int i = 0; i < values; ++i) {
+             while (_bytes[_position++] < 0) {
+                // continuation byte
+             }
+          }
+          return this;
+       }
+
+       String[] readDictionary() {
+          String[] values = new String[(int) readUnsigned()];
+          for (int i = 0; i < values.length; ++i) {
+             int length = (int) readUnsigned();
+             if (length > 0) {
+                values[i] = new String(_bytes, _position, length - 1, StandardCharsets.UTF_8);
+                _position += length - 1;
+             }
+          }
+          return values;
+       }
+    }//end Column
+
+    static long micros(Timestamp timestamp) {
+       return Math.floorDiv(timestamp.getTime(), 1000L) * 1000000L + timestamp.getNanos() / 1000;
+    }
+
+    static Timestamp timestamp(long micros) {
+       Timestamp timestamp = new Timestamp(Math.floorDiv(micros, 1000000L) * 1000L);
+       timestamp.setNanos((int) Math.floorMod(micros, 1000000L) * 1000);
+       return timestamp;
+    }
+
+    /**
+     * Returns the YYYYMM month of a timestamp.
+     */
+    static int month(Timestamp timestamp) {
+       LocalDateTime t = timestamp.toLocalDateTime();
+       return t.getYear() * 100 + t.getMonthValue();
+    }
+ }//end OrderArchive
@@ -0,0 +1,435 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.io.File;
+ import java.io.IOException;
+ import java.sql.Array;
+ import java.sql.Connection;
+ import java.sql.DriverManager;
+ import java.sql.PreparedStatement;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Statement;
+ import java.sql.Timestamp;
+ import java.time.LocalDateTime;
+ import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.HashMap;
+ import java.util.List;
+ import java.util.Map;
+
+ /**
+  * Moves completed orders older than archive.afterDays out of FoodOrder
+  * and ItemsInOrder into the month files of an OrderArchive, where
+  * viewOrderInfo and the order endpoints still find them.
+  *
+  * Only orders before the sales rollup watermark (finalizedBefore) are
+  * moved, so the reports, which read the rollups, keep counting them.
+  * CustomerOrderSummary does too: its trigger is suspended for the
+  * deletes (pizzastore.archiving), and each delete adds the orders to
+  * ArchivedCustomerTotals, which the summary rebuilds add back in.
+  *
+  * Monthly partitions detached by PartitionMaintainer are archived
+  * first, every order in them whatever its status, since they no longer
+  * show in FoodOrder. Each is then marked with the ARCHIVED_COMMENT table
+  * comment and left in place; PartitionMaintainer only drops marked
+  * tables. Each month is read in batches of batchSize
+  * orders, one row group per batch, written to a new month file that
+  * also carries the month's earlier archived orders, and moved into
+  * place. Only then are the batches deleted, one transaction each. If a
+  * run stops in between, the next one finds those orders already in the
+  * file and just deletes them.
+  *
+  * Options (-D on the java command line):
+  *   pizzastore.archive.dir=DIR    the archive directory (default archive)
+  *   archive.afterDays=N           archive completed orders older than N days (default 90)
+  *   archive.batchSize=N           orders per row group and per delete (default 5000)
+  *   archive.intervalMinutes=N     repeat every N minutes; 0 runs once (default 0)
+  *
+  */
+ public class OrderArchiver {
+
+    static final int AFTER_DAYS = Integer.getInteger("archive.afterDays", 90);
+    static final int BATCH_SIZE = Integer.getInteger("archive.batchSize", 5000);
+    static final long INTERVAL_MINUTES = Long.getLong("archive.intervalMinutes", 0L);
+
+    // the oldest month with orders to archive, and the cutoff; no row if there are none.
+    static final String START_QUERY =
+       "SELECT date_trunc('month', MIN(F.orderTimestamp)), C.cutoff FROM FoodOrder F, "
+       + "(SELECT LEAST(date_trunc('day', LOCALTIMESTAMP) - make_interval(days => ?), W.finalizedBefore) AS cutoff "
+       + "FROM SalesRollupWatermark W) C "
+       + "WHERE F.orderStatus = 'completed' AND F.orderTimestamp < C.cutoff GROUP BY C.cutoff;";
+
+    // the repeated lower bound lets the planner prune partitions, as in PizzaStore.orderPageQuery.
+    static final String BATCH_QUERY =
+       "SELECT F.orderID, F.login, F.storeID, F.totalPrice, F.orderTimestamp, F.orderStatus FROM FoodOrder F "
+       + "WHERE F.orderStatus = 'completed' AND F.orderTimestamp < ? "
+       + "AND F.orderTimestamp >= ? AND (F.orderTimestamp, F.orderID) > (?, ?) "
+       + "ORDER BY F.orderTimestamp, F.orderID LIMIT ?;";
+
+    static final String ITEMS_QUERY =
+       "SELECT IO.orderID, IO.itemName, IO.quantity FROM ItemsInOrder IO "
+       + "WHERE IO.orderID = ANY(?) ORDER BY IO.orderID, IO.itemName;";
+
+    // line items go with ON DELETE CASCADE; returns the number of orders deleted.
+    static final String DELETE_QUERY =
+       "WITH gone AS (DELETE FROM FoodOrder F WHERE F.orderID = ANY(?) AND F.orderStatus = 'completed' "
+       + "AND F.orderTimestamp >= ? AND F.orderTimestamp < ? RETURNING F.login, F.totalPrice, F.orderTimestamp), "
+       + "counted AS (INSERT INTO ArchivedCustomerTotals AS A (login, orderCount, lifetimeSpend, lastOrderTimestamp) "
+       + "SELECT G.login, COUNT(*), SUM(G.totalPrice), MAX(G.orderTimestamp) FROM gone G GROUP BY G.login "
+       + "ON CONFLICT (login) DO UPDATE SET orderCount = A.orderCount + EXCLUDED.orderCount, "
+       + "lifetimeSpend = A.lifetimeSpend + EXCLUDED.lifetimeSpend, "
+       + "lastOrderTimestamp = GREATEST(A.lastOrderTimestamp, EXCLUDED.lastOrderTimestamp)) "
+       + "SELECT COUNT(*) FROM gone;";
+
+    // marks a detached partition (see detach_order_partitions) whose orders are all archived.
+    static final String ARCHIVED_COMMENT = "archived";
+
+    // detached FoodOrder partitions, by whether they are archived yet.
+    static final String DETACHED_QUERY =
+       "SELECT C.relname FROM pg_class C "
+       + "WHERE C.relname ~ '^foodorder_p[0-9]{6}$' AND C.relkind = 'r' AND NOT C.relispartition "
+       + "AND pg_table_is_visible(C.oid) AND (COALESCE(obj_description(C.oid, 'pg_class'), '') = ?) = ? "
+       + "ORDER BY C.relname;";
+
+    // the same parameters as BATCH_QUERY; %1$s is a detached partition.
+    static final String DETACHED_BATCH_QUERY =
+       "SELECT F.orderID, F.login, F.storeID, F.totalPrice, F.orderTimestamp, F.orderStatus FROM %1$s F "
+       + "WHERE F.orderTimestamp < ? "
+       + "AND F.orderTimestamp >= ? AND (F.orderTimestamp, F.orderID) > (?, ?) "
+       + "ORDER BY F.orderTimestamp, F.orderID LIMIT ?;";
+
+    // %1$s is the detached partition's lines.
+    static final String DETACHED_ITEMS_QUERY =
+       "SELECT IO.orderID, IO.itemName, IO.quantity FROM %1$s IO "
+       + "WHERE IO.orderID = ANY(?) ORDER BY IO.orderID, IO.itemName;";
+
+    private final Connection _conn;
+    private final OrderArchive _archive;
+    private final int _afterDays;
+    private final int _batchSize;
+
+    /**
+     * @param conn the connection to archive through; left in autocommit
+     * @param archive the archive to add the orders to
+     * @param afterDays how old a completed order must be to be archived
+     * @param batchSize orders per row group and per delete
+     */
+    public OrderArchiver(Connection conn, OrderArchive archive, int afterDays, int batchSize) {
+       _conn = conn;
+       _archive = archive;
+       _afterDays = Math.max(0, afterDays);
+       _batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <dbname> <port> <user>
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length != 3) {
+          System.err.println (
+             "Usage: " +
+             "java [-classpath <classpath>] " +
+             OrderArchiver.class.getName () +
+             " <dbname> <port> <user>");
+          return;
+       }//end if
+
+       Class.forName ("org.postgresql.Driver");
+       String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+       OrderArchive archive = new OrderArchive(PizzaStore.ARCHIVE_DIR);
+       while (true) {
+          Connection conn = DriverManager.getConnection(url, args[2], "");
+          try {
+             System.out.println(new OrderArchiver(conn, archive, AFTER_DAYS, BATCH_SIZE).run());
+          } catch (SQLException | IOException e) {
+             System.err.println("Archiving failed: " + e.getMessage());
+             if (INTERVAL_MINUTES <= 0) {
+                System.exit(1);
+             }
+          } finally {
+             conn.close();
+          }
+          if (INTERVAL_MINUTES <= 0) {
+             return;
+          }
+          Thread.sleep(INTERVAL_MINUTES * 60000L);
+       }
+    }//end main
+
+    /**
+     * Archives the detached partitions, then every eligible order, oldest
+     * month first.
+     *
+     * @return a one-line summary of what was moved
+     */
+    public String run() throws SQLException, IOException {
+       if (!tryLock()) {
+          return "Another archiver is running; nothing done.";
+       }
+       try {
+          String detached = archivePartitions();
+          PreparedStatement stmt = _conn.prepareStatement(START_QUERY);
+          stmt.setInt(1, _afterDays);
+          ResultSet rs = stmt.executeQuery();
+          if (!rs.next()) {
+             stmt.close();
+             return detached + " No completed orders to archive (older than " + _afterDays
+                + " days and before the sales rollup watermark).";
+          }
+          LocalDateTime start = rs.getTimestamp(1).toLocalDateTime();
+          LocalDateTime cutoff = rs.getTimestamp(2).toLocalDateTime();
+          stmt.close();
+
+          long archived = 0;
+          long deleted = 0;
+          int months = 0;
+          for (LocalDateTime month = start; month.isBefore(cutoff); month = month.plusMonths(1)) {
+             LocalDateTime end = month.plusMonths(1).isBefore(cutoff) ? month.plusMonths(1) : cutoff;
+             long[] moved = archiveMonth(Timestamp.valueOf(month), Timestamp.valueOf(end),
+                BATCH_QUERY, ITEMS_QUERY, true);
+             if (moved[1] > 0) {
+                System.out.println(String.format("%d-%02d: %d orders archived, %d deleted",
+                   month.getYear(), month.getMonthValue(), moved[0], moved[1]));
+                ++months;
+             }
+             archived += moved[0];
+             deleted += moved[1];
+          }
+          return String.format("%s Archived %d orders (%d deleted from the tables) in %d month(s) before %s. %s",
+             detached, archived, deleted, months, Timestamp.valueOf(cutoff), _archive.stats());
+       } finally {
+          unlock();
+       }
+    }//end run
+
+    /**
+     * Archives the detached partitions that are not archived yet, as run()
+     * does first. PartitionMaintainer calls this right after detaching.
+     *
+     * @return a one-line summary, or null if another archiver is running
+     */
+    public String archiveDetached() throws SQLException, IOException {
+       if (!tryLock()) {
+          return null;
+       }
+       try {
+          return archivePartitions();
+       } finally {
+          unlock();
+       }
+    }
+
+    /*
+     * Copies every order of each unarchived detached partition, with its
+     * lines, into the partition's month file and marks the partition as
+     * archived. The rows stay in the partition; its totals were moved to
+     * ArchivedCustomerTotals when it was detached.
+     */
+    private String archivePartitions() throws SQLException, IOException {
+       List<String> partitions = detachedPartitions(_conn, false);
+       long archived = 0;
+       for (String orders : partitions) {
+          String suffix = orders.substring("foodorder_p".length());
+          LocalDateTime month = LocalDateTime.of(Integer.parseInt(suffix.substring(0, 4)),
+             Integer.parseInt(suffix.substring(4)), 1, 0, 0);
+          long[] moved = archiveMonth(Timestamp.valueOf(month), Timestamp.valueOf(month.plusMonths(1)),
+             String.format(DETACHED_BATCH_QUERY, orders), String.format(DETACHED_ITEMS_QUERY, "itemsinorder_p" + suffix), false);
+          Statement mark = _conn.createStatement();
+          mark.execute("COMMENT ON TABLE " + orders + " IS '" + ARCHIVED_COMMENT + "'");
+          mark.close();
+          System.out.println(String.format("%d-%02d: %d orders archived from detached partition %s",
+             month.getYear(), month.getMonthValue(), moved[0], orders));
+          archived += moved[0];
+       }
+       return String.format("Archived %d orders from %d detached partition(s).", archived, partitions.size());
+    }//end archivePartitions
+
+    /**
+     * Returns the names of the detached FoodOrder partitions, oldest first.
+     *
+     * @param archived true for those already archived, false for the rest
+     */
+    static List<String> detachedPartitions(Connection conn, boolean archived) throws SQLException {
+       List<String> partitions = new ArrayList<String>();
+       PreparedStatement stmt = conn.prepareStatement(DETACHED_QUERY);
+       try {
+          stmt.setString(1, ARCHIVED_COMMENT);
+          stmt.setBoolean(2, archived);
+          ResultSet rs = stmt.executeQuery();
+          while (rs.next()) {
+             partitions.add(rs.getString(1));
+          }
+       } finally {
+          stmt.close();
+       }
+       return partitions;
+    }
+
+    /*
+     * Archives the orders batchQuery reads from [from, to), which lie
+     * within one month, and deletes them from FoodOrder if asked to.
+     *
+     * @return the orders added to the month file and the orders deleted
+     */
+    private long[] archiveMonth(Timestamp from, Timestamp to, String batchQuery, String itemsQuery,
+                                boolean delete) throws SQLException, IOException {
+       int month = OrderArchive.month(from);
+       OrderArchive.MonthFile existing = _archive.month(month);
+       int[] alreadyArchived = existing == null ? new int[0] : existing.orderIDs();
+       Arrays.sort(alreadyArchived);
+
+       List<Array> batches = new ArrayList<Array>();
+       OrderArchive.Writer writer = new OrderArchive.Writer(_archive.monthFile(month), month);
+       long added = 0;
+       try {
+          if (existing != null) {
+             writer.copy(existing);
+          }
+          PreparedStatement stmt = _conn.prepareStatement(batchQuery);
+          Timestamp afterTimestamp = from;
+          int afterID = Integer.MIN_VALUE;
+          while (true) {
+             stmt.setTimestamp(1, to);
+             stmt.setTimestamp(2, afterTimestamp);
+             stmt.setTimestamp(3, afterTimestamp);
+             stmt.setInt(4, afterID);
+             stmt.setInt(5, _batchSize);
+             List<FoodOrder> batch = new ArrayList<FoodOrder>(_batchSize);
+             ResultSet rs = stmt.executeQuery();
+             while (rs.next()) {
+                batch.add(FoodOrder.MAPPER.mapRow(batchQuery, rs));
+             }
+             if (batch.isEmpty()) {
+                break;
+             }
+
+             Integer[] ids = new Integer[batch.size()];
+             List<FoodOrder> fresh = new ArrayList<FoodOrder>(batch.size());
+             for (int i = 0; i < ids.length; ++i) {
+                FoodOrder order = batch.get(i);
+                ids[i] = order.getOrderID();
+                if (Arrays.binarySearch(alreadyArchived, order.getOrderID()) < 0) {
+                   fresh.add(order);
+                }
+             }
+             batches.add(_conn.createArrayOf("integer", ids));
+             writer.add(fresh, items(fresh, itemsQuery));
+             added += fresh.size();
+
+             FoodOrder last = batch.get(batch.size() - 1);
+             afterTimestamp = last.getOrderTimestamp();
+             afterID = last.getOrderID();
+             if (batch.size() < _batchSize) {
+                break;
+             }
+          }
+          stmt.close();
+
+          if (added > 0) {
+             writer.commit();
+          } else {
+             writer.abort();
+          }
+       } catch (SQLException | IOException | RuntimeException e) {
+          writer.abort();
+          throw e;
+       }
+
+       long deleted = 0;
+       for (int i = 0; delete && i < batches.size(); ++i) {
+          deleted += delete(batches.get(i), from, to);
+       }
+       return new long[] { added, deleted };
+    }//end archiveMonth
+
+    /*
+     * Reads the line items of a batch of orders, by orderID.
+     */
+    private Map<Integer, List<ItemInOrder>> items(List<FoodOrder> orders, String itemsQuery) throws SQLException {
+       Map<Integer, List<ItemInOrder>> items = new HashMap<Integer, List<ItemInOrder>>(orders.size() * 2);
+       if (orders.isEmpty()) {
+          return items;
+       }
+       Integer[] ids = new Integer[orders.size()];
+       for (int i = 0; i < ids.length; ++i) {
+          ids[i] = orders.get(i).getOrderID();
+       }
+       PreparedStatement stmt = _conn.prepareStatement(itemsQuery);
+       try {
+          stmt.setArray(1, _conn.createArrayOf("integer", ids));
+          ResultSet rs = stmt.executeQuery();
+          while (rs.next()) {
+             ItemInOrder item = ItemInOrder.MAPPER.mapRow(itemsQuery, rs);
+             List<ItemInOrder> lines = items.get(item.getOrderID());
+             if (lines == null) {
+                lines = new ArrayList<ItemInOrder>(4);
+                items.put(item.getOrderID(), lines);
+             }
+             lines.add(item);
+          }
+       } finally {
+          stmt.close();
+       }
+       return items;
+    }//end items
+
+    /*
+     * Deletes one batch of archived orders in its own transaction, adding
+     * them to ArchivedCustomerTotals. Orders whose status changed back
+     * since they were read stay in the tables, which take precedence over
+     * the archive.
+     */
+    private int delete(Array ids, Timestamp from, Timestamp to) throws SQLException {
+       _conn.setAutoCommit(false);
+       try {
+          Statement suspend = _conn.createStatement();
+          suspend.execute("SET LOCAL pizzastore.archiving = on");
+          suspend.close();
+          PreparedStatement stmt = _conn.prepareStatement(DELETE_QUERY);
+          stmt.setArray(1, ids);
+          stmt.setTimestamp(2, from);
+          stmt.setTimestamp(3, to);
+          ResultSet rs = stmt.executeQuery();
+          rs.next();
+          int deleted = rs.getInt(1);
+          stmt.close();
+          _conn.commit();
+          return deleted;
+       } catch (SQLException e) {
+          _conn.rollback();
+          throw e;
+       } finally {
+          _conn.setAutoCommit(true);
+       }
+    }//end delete
+
+    private boolean tryLock() throws SQLException {
+       Statement stmt = _conn.createStatement();
+       try {
+          ResultSet rs = stmt.executeQuery("SELECT pg_try_advisory_lock(hashtext('OrderArchiver'));");
+          rs.next();
+          return rs.getBoolean(1);
+       } finally {
+          stmt.close();
+       }
+    }
+
+    private void unlock() throws SQLException {
+       Statement stmt = _conn.createStatement();
+       stmt.execute("SELECT pg_advisory_unlock(hashtext('OrderArchiver'));");
+       stmt.close();
+    }
+ }//end OrderArchiver
@@ -0,0 +1,113 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.math.BigDecimal;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.util.List;
+
+ /**
+  * An order with its store and line items, as shown by viewOrderInfo.
+  *
+  */
+ public final class OrderDetail {
+
+    /**
+     * One line item with the item's menu price.
+     */
+    public static final class Line {
+
+       public static final RowMapper<Line> MAPPER =
+          new RowMapper<Line>("itemName", "quantity", "price") {
+             @Override
+             protected Line map(ResultSet rs, int[] columns) throws SQLException {
+                return new Line(rs.getString(columns[0]), rs.getInt(columns[1]), rs.getBigDecimal(columns[2]));
+             }
+          };
+
+       private final String _itemName;
+       private final int _quantity;
+       private final BigDecimal _price;
+
+       public Line(String itemName, int quantity, BigDecimal price) {
+          _itemName = itemName;
+          _quantity = quantity;
+          _price = price;
+       }
+
+       public String getItemName() {
+          return _itemName;
+       }
+
+       public int getQuantity() {
+          return _quantity;
+       }
+
+       /**
+        * Returns the item's current menu price, or null if it is no longer
+        * on the menu (archived orders only).
+        */
+       public BigDecimal getPrice() {
+          return _price;
+       }
+
+       /**
+        * Returns price times quantity, or null without a price.
+        */
+       public BigDecimal getLineTotal() {
+          return _price == null ? null : _price.multiply(BigDecimal.valueOf(_quantity));
+       }
+    }//end Line
+
+    private final FoodOrder _order;
+    private final Store _store;
+    private final List<Line> _lines;
+    private final boolean _archived;
+
+    public OrderDetail(FoodOrder order, Store store, List<Line> lines, boolean archived) {
+       _order = order;
+       _store = store;
+       _lines = lines;
+       _archived = archived;
+    }
+
+    public FoodOrder getOrder() {
+       return _order;
+    }
+
+    /**
+     * Returns the store the order was placed at, or null if it no longer
+     * exists (archived orders only).
+     */
+    public Store getStore() {
+       return _store;
+    }
+
+    public List<Line> getLines() {
+       return _lines;
+    }
+
+    /**
+     * Returns true if the order was read from the OrderArchive.
+     */
+    public boolean isArchived() {
+       return _archived;
+    }
+
+    /**
+     * Returns true once the order is completed; its details no longer change.
+     */
+    public boolean isCompleted() {
+       return "completed".equals(_order.getOrderStatus());
+    }
+ }//end OrderDetail
@@ -0,0 +1,196 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.io.IOException;
+ import java.sql.SQLException;
+ import java.util.ArrayList;
+ import java.util.Collections;
+ import java.util.LinkedHashMap;
+ import java.util.List;
+ import java.util.Map;
+ import java.util.concurrent.atomic.AtomicLong;
+
+ /**
+  * Reads an order with its store and priced line items in one joined
+  * query, and keeps the most recently read completed orders in an LRU
+  * cache, so drivers looking at the same deliveries again cost no
+  * round-trip.
+  *
+  * Completed orders only change when their status is set back, which goes
+  * through OrderStatusPipeline; it calls invalidate once the write has
+  * committed. A lookup that overlaps an invalidation does not cache what
+  * it read. Entries are also dropped after maxAgeMillis, to pick up other
+  * sessions' status changes, and when the menu changes, since lines carry
+  * the menu price. Orders not in the tables are looked up in the
+  * OrderArchive.
+  *
+  */
+ public class OrderDetails {
+
+    // one row per line item; an order with no lines still has one row, with null line columns.
+    static final String DETAIL_QUERY =
+       "SELECT F.orderID, F.login, F.storeID, F.totalPrice, F.orderTimestamp, F.orderStatus, "
+       + "S.address, S.city, S.state, S.isOpen, S.reviewScore, IO.itemName, IO.quantity, I.price "
+       + "FROM FoodOrder F JOIN Store S ON S.storeID = F.storeID "
+       + "LEFT JOIN ItemsInOrder IO ON IO.orderID = F.orderID "
+       + "LEFT JOIN Items I ON I.itemName = IO.itemName "
+       + "WHERE F.orderID = ? ORDER BY IO.itemName;";
+
+    static final String STORE_QUERY =
+       "SELECT S.storeID, S.address, S.city, S.state, S.isOpen, S.reviewScore FROM Store S WHERE S.storeID = ?;";
+
+    private final PizzaStore _esql;
+    private final int _capacity;
+    private final long _maxAgeMillis;
+
+    // completed orders, least recently used first; guarded by this.
+    private final LinkedHashMap<Integer, Cached> _cache;
+
+    // bumped by every invalidate, so a lookup can tell it raced with one.
+    private final AtomicLong _generation = new AtomicLong();
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _archived = new AtomicLong();
+
+    /**
+     * @param esql the store whose pool runs the query
+     * @param capacity completed orders kept; 0 turns the cache off
+     * @param maxAgeMillis how long an order is served from the cache
+     */
+    public OrderDetails(PizzaStore esql, int capacity, long maxAgeMillis) {
+       _esql = esql;
+       _capacity = Math.max(0, capacity);
+       _maxAgeMillis = maxAgeMillis;
+       _cache = new LinkedHashMap<Integer, Cached>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, Cached> eldest) {
+             return size() > _capacity;
+          }
+       };
+    }
+
+    /**
+     * Returns an order with its store and line items, or null if there is
+     * no order with that ID in the tables or the archive.
+     */
+    public OrderDetail find(int orderID) throws SQLException {
+       long menuVersion = _esql.getMenu().version();
+       synchronized (this) {
+          Cached cached = _cache.get(orderID);
+          if (cached != null) {
+             if (cached.menuVersion == menuVersion
+                 && System.currentTimeMillis() - cached.loadedAt < _maxAgeMillis) {
+                _hits.incrementAndGet();
+                return cached.detail;
+             }
+             _cache.remove(orderID);
+          }
+       }
+       _misses.incrementAndGet();
+
+       long generation = _generation.get();
+       OrderDetail detail = load(orderID);
+       if (detail == null) {
+          detail = loadArchived(orderID);
+       }
+       if (detail != null && detail.isCompleted() && _capacity > 0) {
+          synchronized (this) {
+             if (_generation.get() == generation) {
+                _cache.put(orderID, new Cached(detail, menuVersion));
+             }
+          }
+       }
+       return detail;
+    }//end find
+
+    /**
+     * Drops an order from the cache; call after its row changed.
+     */
+    public void invalidate(int orderID) {
+       _generation.incrementAndGet();
+       synchronized (this) {
+          _cache.remove(orderID);
+       }
+    }
+
+    /**
+     * Returns a one-line summary of the cache.
+     */
+    public String stats() {
+       int size;
+       synchronized (this) {
+          size = _cache.size();
+       }
+       long hits = _hits.get();
+       long lookups = hits + _misses.get();
+       return String.format("orderDetails[cached=%d/%d, lookups=%d, hitRate=%.1f%%, archived=%d]",
+          size, _capacity, lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups, _archived.get());
+    }//end stats
+
+    private OrderDetail load(int orderID) throws SQLException {
+       final FoodOrder[] order = new FoodOrder[1];
+       final Store[] store = new Store[1];
+       final List<OrderDetail.Line> lines = new ArrayList<OrderDetail.Line>();
+       _esql.executeQueryAndStream(DETAIL_QUERY, rs -> {
+          if (order[0] == null) {
+             order[0] = FoodOrder.MAPPER.mapRow(DETAIL_QUERY, rs);
+             store[0] = Store.MAPPER.mapRow(DETAIL_QUERY, rs);
+          }
+          OrderDetail.Line line = OrderDetail.Line.MAPPER.mapRow(DETAIL_QUERY, rs);
+          if (line.getItemName() != null) {
+             lines.add(line);
+          }
+       }, orderID);
+       return order[0] == null ? null
+          : new OrderDetail(order[0], store[0], Collections.unmodifiableList(lines), false);
+    }//end load
+
+    /*
+     * Builds the detail of an archived order, pricing its lines from the
+     * current menu.
+     */
+    private OrderDetail loadArchived(int orderID) throws SQLException {
+       OrderArchive.Entry entry;
+       try {
+          entry = _esql.getArchive().find(orderID);
+       } catch (IOException e) {
+          throw new SQLException("Cannot read the order archive: " + e.getMessage(), e);
+       }
+       if (entry == null) {
+          return null;
+       }
+       _archived.incrementAndGet();
+
+       List<Store> stores = _esql.executeQueryAndMap(STORE_QUERY, Store.MAPPER, entry.getOrder().getStoreID());
+       List<OrderDetail.Line> lines = new ArrayList<OrderDetail.Line>(entry.getItems().size());
+       for (ItemInOrder item : entry.getItems()) {
+          Item menuItem = _esql.getMenu().get(item.getItemName());
+          lines.add(new OrderDetail.Line(item.getItemName(), item.getQuantity(),
+             menuItem == null ? null : menuItem.getPrice()));
+       }
+       return new OrderDetail(entry.getOrder(), stores.isEmpty() ? null : stores.get(0),
+          Collections.unmodifiableList(lines), true);
+    }//end loadArchived
+
+    private static final class Cached {
+       final OrderDetail detail;
+       final long menuVersion;
+       final long loadedAt = System.currentTimeMillis();
+
+       Cached(OrderDetail detail, long menuVersion) {
+          this.detail = detail;
+          this.menuVersion = menuVersion;
+       }
+    }
+ }//end OrderDetails
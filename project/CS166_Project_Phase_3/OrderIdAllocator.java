@@ -0,0 +1,108 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.SQLException;
+ import java.util.List;
+
+ /**
+  * Hands out order IDs in-process from blocks reserved on a sequence.
+  *
+  * The sequence is created with INCREMENT BY n (see create_triggers.sql),
+  * so each nextval reserves the n IDs [value, value + n). IDs are then
+  * issued from the block without touching the database, and a new block
+  * is reserved only when the current one runs out. Because every process
+  * reserves blocks from the same sequence, IDs never collide; IDs left in
+  * a block when a process exits are simply skipped.
+  *
+  * With an ID known before the INSERT, callers write orderID explicitly,
+  * which skips the orderID_trigger and the RETURNING clause, and lets
+  * several orders go out in one JDBC batch. The trigger reserves blocks
+  * from the same sequence the same way, one per database session.
+  *
+  */
+ public class OrderIdAllocator {
+
+    private final PizzaStore _esql;
+    private final String _sequence;
+
+    // the next ID to issue and the first ID past the reserved block; guarded by this.
+    private long _next = 0;
+    private long _limit = 0;
+
+    private long _blocksReserved = 0;
+    private long _idsIssued = 0;
+
+    /**
+     * @param esql the store whose connection pool reserves blocks
+     * @param sequence the sequence to reserve blocks from
+     */
+    public OrderIdAllocator(PizzaStore esql, String sequence) {
+       _esql = esql;
+       _sequence = sequence;
+    }
+
+    /**
+     * Returns an order ID no other caller or process will receive.
+     *
+     * @throws java.sql.SQLException when a new block had to be reserved
+     *         and the query failed
+     */
+    public synchronized int next() throws SQLException {
+       if (_next >= _limit) {
+          reserve();
+       }
+       ++_idsIssued;
+       return Math.toIntExact(_next++);
+    }
+
+    /**
+     * Returns n order IDs, in ascending order.
+     */
+    public synchronized int[] next(int n) throws SQLException {
+       int[] ids = new int[n];
+       for (int i = 0; i < n; ++i) {
+          ids[i] = next();
+       }
+       return ids;
+    }
+
+    /**
+     * Returns a one-line summary of allocator activity.
+     */
+    public synchronized String stats() {
+       return String.format("orderIds[sequence=%s, blocks=%d, issued=%d, remainingInBlock=%d]",
+          _sequence, _blocksReserved, _idsIssued, _limit - _next);
+    }
+
+    /*
+     * Draws the next block. The block size is read with it, so changing
+     * the sequence's INCREMENT BY takes effect at the next block.
+     */
+    private void reserve() throws SQLException {
+       List<List<String>> result = _esql.executeQueryAndReturnResult(
+          "SELECT nextval(?::regclass), S.increment_by FROM pg_sequences S "
+          + "WHERE S.schemaname = current_schema() AND S.sequencename = lower(?);",
+          _sequence, _sequence);
+       if (result.isEmpty()) {
+          throw new SQLException("Sequence not found: " + _sequence);
+       }
+
+       long start = Long.parseLong(result.get(0).get(0).trim());
+       long blockSize = Long.parseLong(result.get(0).get(1).trim());
+       if (blockSize < 1) {
+          throw new SQLException("Sequence " + _sequence + " must count upwards to reserve blocks");
+       }
+       _next = start;
+       _limit = start + blockSize;
+       ++_blocksReserved;
+    }//end reserve
+ }//end OrderIdAllocator
@@ -0,0 +1,55 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.math.BigDecimal;
+
+ /**
+  * The outcome of PizzaStore.submitOrder: the new order's ID and total,
+  * and how long the transaction and its commit took.
+  *
+  */
+ public final class OrderReceipt {
+
+    private final int _orderID;
+    private final BigDecimal _totalPrice;
+    private final long _transactionNanos;
+    private final long _commitNanos;
+
+    public OrderReceipt(int orderID, BigDecimal totalPrice, long transactionNanos, long commitNanos) {
+       _orderID = orderID;
+       _totalPrice = totalPrice;
+       _transactionNanos = transactionNanos;
+       _commitNanos = commitNanos;
+    }
+
+    public int getOrderID() {
+       return _orderID;
+    }
+
+    public BigDecimal getTotalPrice() {
+       return _totalPrice;
+    }
+
+    /**
+     * Returns the time from borrowing the connection to a completed commit.
+     */
+    public long getTransactionNanos() {
+       return _transactionNanos;
+    }
+
+    /**
+     * Returns the time spent in the COMMIT alone.
+     */
+    public long getCommitNanos() {
+       return _commitNanos;
+    }
+ }//end OrderReceipt
@@ -0,0 +1,398 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.SQLException;
+ import java.sql.SQLTimeoutException;
+ import java.util.ArrayList;
+ import java.util.Collections;
+ import java.util.HashSet;
+ import java.util.LinkedHashMap;
+ import java.util.List;
+ import java.util.Map;
+ import java.util.Set;
+ import java.util.concurrent.CompletableFuture;
+ import java.util.concurrent.ExecutionException;
+ import java.util.concurrent.TimeUnit;
+ import java.util.concurrent.TimeoutException;
+ import java.util.concurrent.atomic.AtomicLong;
+
+ /**
+  * Queues order status changes and writes them to FoodOrder in batches.
+  *
+  * Updates to the same order that are still queued are coalesced: only the
+  * latest status is written, and every caller waiting on that order gets
+  * the result of the one write. A background thread flushes the queue as a
+  * single JDBC batch in one transaction once it holds maxBatchSize orders
+  * or its oldest update has waited maxDelayMillis, whichever comes first.
+  * Rows are updated in orderID order, so concurrent flushes from another
+  * pipeline or process take their row locks in the same order.
+  * When the queue holds maxPending orders, submitters block until the next
+  * flush makes room.
+  *
+  * Durability is chosen per pipeline:
+  *   SYNC  - submit returns once the batch holding the update has
+  *           committed, and reports whether the order exists. A caller
+  *           gives up after submitTimeoutMillis; the update may still be
+  *           written after that.
+  *   ASYNC - submit returns as soon as the update is queued. Updates still
+  *           queued are lost if the process dies; close() flushes them on
+  *           a normal shutdown. The updates of a failed flush are queued
+  *           again, up to asyncRetries times, unless a newer status for
+  *           the order is queued by then; after that they are dropped.
+  *           Failures are reported on stderr and counted in stats(), and
+  *           the last one is kept for getLastFailure().
+  *
+  * A flush that fails with any exception fails only its own batch; the
+  * background thread carries on with the next one. Committed changes are
+  * reported to the ReplicaRouter as writes by the users who submitted
+  * them, so their next reads see them.
+  *
+  */
+ public class OrderStatusPipeline {
+
+    public enum Durability { SYNC, ASYNC }
+
+    static final String UPDATE_QUERY = "UPDATE FoodOrder SET orderStatus = ? WHERE orderID = ?;";
+
+    private final PizzaStore _esql;
+    private final Durability _durability;
+    private final int _maxBatchSize;
+    private final int _maxPending;
+    private final long _maxDelayNanos;
+    private final long _submitTimeoutMillis;
+    private final int _asyncRetries;
+    private final Thread _flusher;
+
+    // queued updates by orderID, in arrival order; guarded by this.
+    private LinkedHashMap<Integer, Pending> _queue = new LinkedHashMap<Integer, Pending>();
+    private long _oldestQueuedNanos = 0;
+    private boolean _closed = false;
+
+    private final AtomicLong _submitted = new AtomicLong();
+    private final AtomicLong _coalesced = new AtomicLong();
+    private final AtomicLong _flushes = new AtomicLong();
+    private final AtomicLong _flushedRows = new AtomicLong();
+    private final AtomicLong _failedFlushes = new AtomicLong();
+    private final AtomicLong _retriedUpdates = new AtomicLong();
+    private final AtomicLong _droppedUpdates = new AtomicLong();
+    private volatile Exception _lastFailure = null;
+    private final AtomicLong _flushNanosTotal = new AtomicLong();
+    private final AtomicLong _flushNanosMax = new AtomicLong();
+
+    /**
+     * @param esql the store whose connection pool runs the batches
+     * @param durability when submit returns, see the class comment
+     * @param maxBatchSize flush once this many orders are queued
+     * @param maxDelayMillis flush once the oldest queued update is this old
+     * @param maxPending block submitters while this many orders are queued
+     * @param submitTimeoutMillis under SYNC, the longest submit waits for its batch
+     * @param asyncRetries under ASYNC, how often a failed update is queued again
+     */
+    public OrderStatusPipeline(PizzaStore esql, Durability durability, int maxBatchSize,
+                               long maxDelayMillis, int maxPending, long submitTimeoutMillis,
+                               int asyncRetries) {
+       _esql = esql;
+       _durability = durability;
+       _maxBatchSize = maxBatchSize;
+       _maxDelayNanos = maxDelayMillis * 1000000L;
+       _maxPending = Math.max(maxBatchSize, maxPending);
+       _submitTimeoutMillis = submitTimeoutMillis;
+       _asyncRetries = Math.max(0, asyncRetries);
+
+       _flusher = new Thread(this::run, "order-status-flusher");
+       _flusher.setDaemon(true);
+       _flusher.start();
+    }
+
+    public Durability getDurability() {
+       return _durability;
+    }
+
+    /**
+     * Queues a status change.
+     *
+     * @param orderID the order to update
+     * @param orderStatus the new status
+     * @return under SYNC, false if there is no order with that ID; under
+     *         ASYNC, always true once queued
+     * @throws java.sql.SQLException under SYNC, when the batch failed; also
+     *         when the pipeline is closed or the wait is interrupted
+     * @throws java.sql.SQLTimeoutException under SYNC, when the batch has not
+     *         committed within submitTimeoutMillis
+     */
+    public boolean submit(int orderID, String orderStatus) throws SQLException {
+       CompletableFuture<Boolean> result = enqueue(orderID, orderStatus, ReplicaRouter.actingUser());
+       if (_durability == Durability.ASYNC) {
+          return true;
+       }
+
+       try {
+          return result.get(_submitTimeoutMillis, TimeUnit.MILLISECONDS);
+       } catch (TimeoutException e) {
+          throw new SQLTimeoutException("Order status update of order " + orderID
+             + " was not written within " + _submitTimeoutMillis + " ms");
+       } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted while waiting for order status update", e);
+       } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof SQLException) {
+             throw (SQLException) cause;
+          }
+          throw new SQLException("Order status update failed", cause);
+       }
+    }//end submit
+
+    /*
+     * @param login the acting user, credited with the write once it commits; null for none
+     */
+    private synchronized CompletableFuture<Boolean> enqueue(int orderID, String orderStatus, String login)
+          throws SQLException {
+       while (!_closed && _queue.size() >= _maxPending && !_queue.containsKey(orderID)) {
+          try {
+             wait();
+          } catch (InterruptedException e) {
+             Thread.currentThread().interrupt();
+             throw new SQLException("Interrupted while queueing order status update", e);
+          }
+       }
+       if (_closed) {
+          throw new SQLException("Order status pipeline is closed");
+       }
+
+       _submitted.incrementAndGet();
+       Pending pending = _queue.get(orderID);
+       if (pending != null) {
+          // a newer status supersedes the queued one; both callers share its write.
+          pending.orderStatus = orderStatus;
+          pending.logins.add(login);
+          _coalesced.incrementAndGet();
+          return pending.result;
+       }
+
+       if (_queue.isEmpty()) {
+          _oldestQueuedNanos = System.nanoTime();
+       }
+       pending = new Pending(orderStatus, login);
+       _queue.put(orderID, pending);
+       notifyAll();
+       return pending.result;
+    }//end enqueue
+
+    /**
+     * Returns the number of orders waiting to be flushed.
+     */
+    public synchronized int queueDepth() {
+       return _queue.size();
+    }
+
+    /**
+     * Flushes what is queued, stops the background thread and rejects
+     * further submissions.
+     */
+    public void close() {
+       synchronized (this) {
+          _closed = true;
+          notifyAll();
+       }
+       try {
+          _flusher.join();
+       } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+       }
+    }
+
+    /**
+     * Returns the number of ASYNC updates given up on after asyncRetries
+     * failed attempts.
+     */
+    public long getDroppedUpdates() {
+       return _droppedUpdates.get();
+    }
+
+    /**
+     * Returns the exception of the last failed flush, or null if none failed.
+     */
+    public Exception getLastFailure() {
+       return _lastFailure;
+    }
+
+    /**
+     * Returns a one-line summary of pipeline activity.
+     */
+    public String stats() {
+       long flushes = _flushes.get();
+       double avgMillis = flushes == 0 ? 0.0 : _flushNanosTotal.get() / 1e6 / flushes;
+       Exception lastFailure = _lastFailure;
+       return String.format(
+          "statusPipeline[durability=%s, queued=%d, submitted=%d, coalesced=%d, flushes=%d, "
+          + "rows=%d, failedFlushes=%d, retried=%d, dropped=%d, avgFlush=%.2fms, maxFlush=%.2fms%s]",
+          _durability, queueDepth(), _submitted.get(), _coalesced.get(), flushes,
+          _flushedRows.get(), _failedFlushes.get(), _retriedUpdates.get(), _droppedUpdates.get(),
+          avgMillis, _flushNanosMax.get() / 1e6,
+          lastFailure == null ? "" : ", lastFailure=" + lastFailure);
+    }//end stats
+
+    private void run() {
+       while (true) {
+          Map<Integer, Pending> batch = take();
+          if (batch == null) {
+             return;
+          }
+          try {
+             flush(batch);
+          } catch (RuntimeException e) {
+             // e.g. from the OrderDetails cache after the commit; no waiter may hang on it.
+             _lastFailure = e;
+             for (Pending pending : batch.values()) {
+                pending.result.completeExceptionally(e);
+             }
+             System.err.println("Order status flush failed: " + e);
+          }
+       }
+    }
+
+    /*
+     * Waits until a flush is due and swaps out the queue, or returns null
+     * once the pipeline is closed and drained.
+     */
+    private synchronized Map<Integer, Pending> take() {
+       while (true) {
+          if (_queue.isEmpty()) {
+             if (_closed) {
+                return null;
+             }
+             waitQuietly(0);
+             continue;
+          }
+
+          long waitNanos = _maxDelayNanos - (System.nanoTime() - _oldestQueuedNanos);
+          if (_closed || _queue.size() >= _maxBatchSize || waitNanos <= 0) {
+             break;
+          }
+          waitQuietly(Math.max(1, waitNanos / 1000000L));
+       }
+
+       Map<Integer, Pending> batch = _queue;
+       _queue = new LinkedHashMap<Integer, Pending>();
+       notifyAll();
+       return batch;
+    }//end take
+
+    private void waitQuietly(long millis) {
+       try {
+          wait(millis);
+       } catch (InterruptedException e) {
+          // re-checked by the caller; close() is the way to stop the flusher.
+       }
+    }
+
+    private void flush(Map<Integer, Pending> batch) {
+       // in orderID order, so flushes from other pipelines or processes lock
+       // overlapping rows in the same order and cannot deadlock with this one
+       List<Integer> orderIDs = new ArrayList<Integer>(batch.keySet());
+       Collections.sort(orderIDs);
+       List<Object[]> rows = new ArrayList<Object[]>(orderIDs.size());
+       for (Integer orderID : orderIDs) {
+          rows.add(new Object[] { batch.get(orderID).orderStatus, orderID });
+       }
+
+       long start = System.nanoTime();
+       try {
+          int[] counts = _esql.executeBatchUpdate(UPDATE_QUERY, rows);
+          for (int i = 0; i < counts.length; i++) {
+             // SUCCESS_NO_INFO (-2) still means the statement ran.
+             batch.get(orderIDs.get(i)).result.complete(counts[i] != 0);
+          }
+          _flushedRows.addAndGet(batch.size());
+
+          Set<String> writers = new HashSet<String>();
+          for (Pending pending : batch.values()) {
+             writers.addAll(pending.logins);
+          }
+          for (String login : writers) {
+             _esql.noteWrite(login);
+          }
+       } catch (SQLException | RuntimeException e) {
+          failed(batch, e);
+       } finally {
+          // after the commit, so a cached completed order cannot outlive its status change.
+          for (Integer orderID : batch.keySet()) {
+             _esql.getOrderDetails().invalidate(orderID);
+          }
+          long elapsed = System.nanoTime() - start;
+          _flushes.incrementAndGet();
+          _flushNanosTotal.addAndGet(elapsed);
+          _flushNanosMax.accumulateAndGet(elapsed, Math::max);
+       }
+    }//end flush
+
+    /*
+     * Fails the callers of a batch that did not commit, or under ASYNC
+     * queues its updates again while they have retries left.
+     */
+    private void failed(Map<Integer, Pending> batch, Exception e) {
+       _failedFlushes.incrementAndGet();
+       _lastFailure = e;
+       if (_durability == Durability.SYNC) {
+          for (Pending pending : batch.values()) {
+             pending.result.completeExceptionally(e);
+          }
+          return;
+       }
+
+       int retried = 0;
+       int dropped = 0;
+       synchronized (this) {
+          for (Map.Entry<Integer, Pending> entry : batch.entrySet()) {
+             Pending pending = entry.getValue();
+             if (_queue.containsKey(entry.getKey())) {
+                // superseded by a newer status queued since; that one is written instead.
+                pending.result.completeExceptionally(e);
+             } else if (pending.attempts < _asyncRetries) {
+                ++pending.attempts;
+                if (_queue.isEmpty()) {
+                   _oldestQueuedNanos = System.nanoTime();
+                }
+                _queue.put(entry.getKey(), pending);
+                ++retried;
+             } else {
+                pending.result.completeExceptionally(e);
+                ++dropped;
+             }
+          }
+          notifyAll();
+       }
+       _retriedUpdates.addAndGet(retried);
+       _droppedUpdates.addAndGet(dropped);
+       System.err.println("Order status update of " + batch.size() + " order(s) failed: " + e.getMessage()
+          + " (" + retried + " queued again, " + dropped + " dropped)");
+    }//end failed
+
+    /*
+     * The latest status queued for one order, the callers waiting on it
+     * and the users they act for.
+     */
+    private static final class Pending {
+       volatile String orderStatus;
+       final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+       // added to while queued and read by the flusher once taken; guarded by the pipeline.
+       final Set<String> logins = new HashSet<String>(2);
+       // failed flushes so far; guarded by the pipeline.
+       int attempts = 0;
+
+       Pending(String orderStatus, String login) {
+          this.orderStatus = orderStatus;
+          this.logins.add(login);
+       }
+    }
+ }//end OrderStatusPipeline
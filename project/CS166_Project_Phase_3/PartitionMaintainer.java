@@ -0,0 +1,178 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.io.IOException;
+ import java.sql.Connection;
+ import java.sql.DriverManager;
+ import java.sql.PreparedStatement;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Statement;
+ import java.util.ArrayList;
+ import java.util.List;
+
+ /**
+  * Keeps the monthly partitions of FoodOrder and ItemsInOrder in shape
+  * for the partitioned schema (create_tables_partitioned.sql):
+  *   1. creates the partitions of this month and the next monthsAhead;
+  *   2. gives any orders in the default partitions a partition of their
+  *      own month;
+  *   3. with retainMonths set, detaches the months older than that, once
+  *      the sales rollups are final for them, copies them into the order
+  *      archive with OrderArchiver, so lookups still find their orders,
+  *      and optionally drops them. A month is only dropped once it is
+  *      archived; if the archiver is busy, the next round drops it.
+  * Run it once a day or so from cron, or leave it running with
+  * partitions.intervalMinutes.
+  *
+  * Options (-D on the java command line):
+  *   partitions.monthsAhead=N       future months to create (default 3)
+  *   partitions.retainMonths=N      months to keep attached besides this one; 0 keeps all (default 0)
+  *   partitions.dropDetached=true   drop archived detached months instead of keeping them as tables
+  *   pizzastore.archive.dir=DIR     the archive directory (default archive)
+  *   partitions.intervalMinutes=N   repeat every N minutes; 0 runs once (default 0)
+  *   partitions.lockTimeout=X       give up waiting for table locks after X (default 5s)
+  *
+  */
+ public class PartitionMaintainer {
+
+    static final int MONTHS_AHEAD = Integer.getInteger("partitions.monthsAhead", 3);
+    static final int RETAIN_MONTHS = Integer.getInteger("partitions.retainMonths", 0);
+    static final boolean DROP_DETACHED = Boolean.getBoolean("partitions.dropDetached");
+    static final long INTERVAL_MINUTES = Long.getLong("partitions.intervalMinutes", 0L);
+    static final String LOCK_TIMEOUT = System.getProperty("partitions.lockTimeout", "5s");
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <dbname> <port> <user>
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length != 3) {
+          System.err.println (
+             "Usage: " +
+             "java [-classpath <classpath>] " +
+             PartitionMaintainer.class.getName () +
+             " <dbname> <port> <user>");
+          return;
+       }//end if
+
+       Class.forName ("org.postgresql.Driver");
+       String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+       while (true) {
+          Connection conn = DriverManager.getConnection(url, args[2], "");
+          try {
+             maintain(conn);
+          } catch (SQLException | IOException e) {
+             System.err.println("Partition maintenance failed: " + e.getMessage());
+             if (INTERVAL_MINUTES <= 0) {
+                System.exit(1);
+             }
+          } finally {
+             conn.close();
+          }
+          if (INTERVAL_MINUTES <= 0) {
+             return;
+          }
+          Thread.sleep(INTERVAL_MINUTES * 60000L);
+       }
+    }//end main
+
+    /**
+     * Runs one round of maintenance, printing what it did.
+     */
+    static void maintain(Connection conn) throws SQLException, IOException {
+       if (!isPartitioned(conn)) {
+          throw new SQLException("FoodOrder is not partitioned; create the tables with create_tables_partitioned.sql");
+       }
+       Statement setup = conn.createStatement();
+       setup.execute("SET lock_timeout = '" + LOCK_TIMEOUT.replace("'", "") + "'");
+       setup.close();
+
+       int created = queryInt(conn, "SELECT create_order_partitions(date_trunc('month', LOCALTIMESTAMP), "
+          + "date_trunc('month', LOCALTIMESTAMP) + make_interval(months => ?))", MONTHS_AHEAD + 1);
+       System.out.println("Created " + created + " future monthly partition(s).");
+
+       int stray = queryInt(conn, "SELECT COUNT(*)::integer FROM FoodOrder_default");
+       if (stray > 0) {
+          int partitions = queryInt(conn, "SELECT create_order_partitions(MIN(F.orderTimestamp), "
+             + "MAX(F.orderTimestamp) + interval '1 second') FROM FoodOrder_default F");
+          int stuck = queryInt(conn, "SELECT COUNT(*)::integer FROM FoodOrder_default");
+          if (stray > stuck) {
+             System.out.println("Moved " + (stray - stuck) + " order(s) out of the default partition into "
+                + partitions + " new monthly partition(s).");
+          }
+          // create_order_partition skips a month while its detached table exists
+          if (stuck > 0) {
+             System.out.println(stuck + " order(s) are stuck in the default partition: their month was detached "
+                + "and its table still exists.");
+          }
+       }
+
+       if (RETAIN_MONTHS > 0) {
+          List<String> detached = new ArrayList<String>();
+          PreparedStatement stmt = conn.prepareStatement("SELECT D FROM detach_order_partitions("
+             + "date_trunc('month', LOCALTIMESTAMP) - make_interval(months => ?)) D");
+          stmt.setInt(1, RETAIN_MONTHS);
+          ResultSet rs = stmt.executeQuery();
+          while (rs.next()) {
+             detached.add(rs.getString(1));
+          }
+          stmt.close();
+
+          System.out.println("Detached " + detached.size() + " month(s)" + (detached.isEmpty() ? "" : ": " + detached)
+             + " (months are kept until the sales rollups are final for them).");
+
+          // archived here and not only by the next OrderArchiver run, so
+          // lookups miss the detached orders for as short a time as possible
+          String archived = new OrderArchiver(conn, new OrderArchive(PizzaStore.ARCHIVE_DIR),
+             OrderArchiver.AFTER_DAYS, OrderArchiver.BATCH_SIZE).archiveDetached();
+          System.out.println(archived == null ? "OrderArchiver is running; it archives the detached months." : archived);
+
+          if (DROP_DETACHED) {
+             List<String> droppable = OrderArchiver.detachedPartitions(conn, true);
+             Statement drop = conn.createStatement();
+             for (String orders : droppable) {
+                drop.execute("DROP TABLE IF EXISTS itemsinorder_p" + orders.substring("foodorder_p".length()));
+                drop.execute("DROP TABLE IF EXISTS " + orders);
+             }
+             drop.close();
+             int kept = OrderArchiver.detachedPartitions(conn, false).size();
+             System.out.println("Dropped " + droppable.size() + " archived detached month(s)"
+                + (kept == 0 ? "." : "; kept " + kept + " not archived yet."));
+          }
+       }
+
+       System.out.println(queryInt(conn, "SELECT COUNT(*)::integer FROM pg_inherits I "
+          + "WHERE I.inhparent = 'foodorder'::regclass") + " FoodOrder partition(s) attached.");
+    }//end maintain
+
+    static boolean isPartitioned(Connection conn) throws SQLException {
+       return queryInt(conn, "SELECT COUNT(*)::integer FROM pg_partitioned_table P "
+          + "WHERE P.partrelid = to_regclass('foodorder')") > 0;
+    }
+
+    private static int queryInt(Connection conn, String query, Object... params) throws SQLException {
+       PreparedStatement stmt = conn.prepareStatement(query);
+       try {
+          for (int i = 0; i < params.length; ++i) {
+             stmt.setObject(i + 1, params[i]);
+          }
+          ResultSet rs = stmt.executeQuery();
+          rs.next();
+          return rs.getInt(1);
+       } finally {
+          stmt.close();
+       }
+    }
+ }//end PartitionMaintainer
@@ -10,18 +10,26 @@
  *
  */
 
- import java.sql.DriverManager;
  import java.sql.Connection;
- import java.sql.Statement;
+ import java.sql.PreparedStatement;
  import java.sql.ResultSet;
  import java.sql.ResultSetMetaData;
  import java.sql.SQLException;
+ import java.sql.SQLDataException;
  import java.io.File;
  import java.io.FileReader;
  import java.io.BufferedReader;
  import java.io.InputStreamReader;
  import java.util.List;
  import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.HashMap;
+ import java.util.LinkedHashMap;
+ import java.util.Map;
+ import java.math.BigDecimal;
+ import java.util.Properties;
+ import java.util.concurrent.CopyOnWriteArrayList;
+ import java.util.function.BiConsumer;
  import java.lang.Math;
 
  /**
@@ -31,17 +39,133 @@
   */
  public class PizzaStore {
 
-    // reference to physical database connection.
-    private Connection _connection = null;
+    // pool of physical database connections shared by every helper.
+    private ConnectionPool _pool = null;
+
+    // sends plain reads to a replica pool when one is configured; null otherwise.
+    private ReplicaRouter _router = null;
+
+    static final String REPLICA_URL = System.getProperty("pizzastore.replica.url", "");
+    static final String REPLICA_PORT = System.getProperty("pizzastore.replica.port", "");
+    static final long REPLICA_MAX_LAG_MILLIS = Long.getLong("pizzastore.replica.maxLagMillis", 5000L);
+    static final long REPLICA_PROBE_MILLIS = Long.getLong("pizzastore.replica.probeMillis", 1000L);
+    static final long REPLICA_MAX_SILENCE_MILLIS = Long.getLong("pizzastore.replica.maxSilenceMillis", 60000L);
+
+    // pool tuning, overridable with -D<name>=<value> on the java command line.
+    static final int POOL_MAX_SIZE = Integer.getInteger(
+       "pizzastore.pool.maxSize", Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    static final long POOL_BORROW_TIMEOUT_MILLIS = Long.getLong("pizzastore.pool.borrowTimeoutMillis", 30000L);
+    static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("pizzastore.pool.idleTimeoutMillis", 600000L);
+    static final long POOL_LEAK_THRESHOLD_MILLIS = Long.getLong("pizzastore.pool.leakThresholdMillis", 60000L);
+    static final boolean POOL_LEAK_STACK_TRACES = Boolean.getBoolean("pizzastore.pool.leakStackTraces");
+    static final int STATEMENT_CACHE_SIZE = Integer.getInteger("pizzastore.statementCacheSize", 64);
+
+    // executions of a statement before the driver switches to a named server-side prepare.
+    static final int PREPARE_THRESHOLD = Integer.getInteger("pizzastore.prepareThreshold", 2);
+
+    // rows fetched per round-trip by executeQueryAndStream.
+    static final int STREAM_FETCH_SIZE = Integer.getInteger("pizzastore.streamFetchSize", 500);
+
+    // the scan recent_order_ids() in create_triggers.sql runs to keep
+    // CustomerOrderSummary.recentOrderIDs; its one parameter is the customer login.
+    static final String RECENT_ORDER_IDS_QUERY =
+       "SELECT F.orderID FROM FoodOrder F WHERE F.login = ? ORDER BY F.orderTimestamp DESC, F.orderID DESC LIMIT 5;";
+
+    // the "past 5 orders" screens: a customer's order count, spend and last
+    // 5 order IDs; its one parameter is the login.
+    static final String CUSTOMER_SUMMARY_QUERY =
+       "SELECT S.login, S.orderCount, S.lifetimeSpend, S.recentOrderIDs, S.lastOrderTimestamp "
+       + "FROM CustomerOrderSummary S WHERE S.login = ?;";
+
+    // the order information screen; its one parameter is the orderID.
+    static final String ORDER_INFO_QUERY = "SELECT * FROM FoodOrder F WHERE F.orderID = ?;";
+
+    // orders shown per page by the order history screens.
+    static final int ORDER_PAGE_SIZE = Integer.getInteger("pizzastore.orderPageSize", 20);
 
     // handling the keyboard inputs through a BufferedReader
     // This variable can be global for convenience.
-    static BufferedReader in = new BufferedReader(
+    static BufferedReader in = new TimedReader(
                                  new InputStreamReader(System.in));
 
+    // user menu actions by choice, as recorded in the latency metrics.
+    static final String[] MENU_ACTIONS = { null, "viewProfile", "updateProfile", "viewMenu",
+       "placeOrder", "viewAllOrders", "viewRecentOrders", "viewOrderInfo", "viewStores",
+       "updateOrderStatus", "updateMenu", "updateUser", "viewMetrics", "searchMenu", "viewSalesReports" };
+
     // Login for current session
     private String _login = null;
 
+    // User logged in to current session, so role checks need no query.
+    private SessionUser _session = null;
+
+    // told about every userChanged call, e.g. to log out HTTP sessions of that user.
+    private final List<BiConsumer<String, String>> _userListeners =
+       new CopyOnWriteArrayList<BiConsumer<String, String>>();
+
+    // In-memory copy of the Items table used for menu browsing.
+    private MenuCatalog _menu = null;
+
+    // Console-free entry points to the store operations.
+    private PizzaStoreService _service = null;
+
+    // Batches driver status changes; see OrderStatusPipeline for the durability modes.
+    private OrderStatusPipeline _statusPipeline = null;
+
+    static final OrderStatusPipeline.Durability STATUS_DURABILITY = OrderStatusPipeline.Durability.valueOf(
+       System.getProperty("pizzastore.status.durability", "SYNC").toUpperCase());
+    static final int STATUS_BATCH_SIZE = Integer.getInteger("pizzastore.status.batchSize", 100);
+    static final long STATUS_MAX_DELAY_MILLIS = Long.getLong("pizzastore.status.maxDelayMillis", 5L);
+    static final int STATUS_MAX_PENDING = Integer.getInteger("pizzastore.status.maxPending", 10000);
+    static final long STATUS_SUBMIT_TIMEOUT_MILLIS = Long.getLong("pizzastore.status.submitTimeoutMillis", 30000L);
+    static final int STATUS_ASYNC_RETRIES = Integer.getInteger("pizzastore.status.asyncRetries", 3);
+
+    // Store sales reports over the rollup tables; refreshed in parallel store groups.
+    private SalesReports _reports = null;
+
+    // store groups rolled up at once, and hours before the previous refresh re-aggregated.
+    static final int REPORT_THREADS = Integer.getInteger("pizzastore.reports.threads", Math.max(1, POOL_MAX_SIZE / 2));
+    static final int REPORT_RESTATE_HOURS = Integer.getInteger("pizzastore.reports.restateHours", 24);
+    static final int REPORT_TOP_ITEMS = 10;
+
+    // Completed orders moved out of the tables by OrderArchiver; looked up when an order is not found.
+    private OrderArchive _archive = null;
+
+    static final File ARCHIVE_DIR = new File(System.getProperty("pizzastore.archive.dir", "archive"));
+
+    // Orders with their store and priced lines; completed ones are cached.
+    private OrderDetails _orderDetails = null;
+
+    static final int ORDER_DETAIL_CACHE_SIZE = Integer.getInteger("pizzastore.orderDetail.cacheSize", 1000);
+    static final long ORDER_DETAIL_MAX_AGE_MILLIS = Long.getLong("pizzastore.orderDetail.maxAgeMillis", 60000L);
+
+    // Issues order IDs from blocks reserved on ORDER_ID_SEQUENCE.
+    private OrderIdAllocator _orderIds = null;
+
+    static final String ORDER_ID_SEQUENCE = "orderID_seq";
+
+    // Latency histograms of every helper call and menu action.
+    private final LatencyMetrics _metrics = new LatencyMetrics();
+
+    // Logs helper statements slower than SLOW_QUERY_MILLIS; null when disabled.
+    private SlowQueryLog _slowLog = null;
+
+    // a negative threshold turns the slow-query log off.
+    static final long SLOW_QUERY_MILLIS = Long.getLong("pizzastore.slowQuery.thresholdMillis", 500L);
+    static final boolean SLOW_QUERY_EXPLAIN = Boolean.getBoolean("pizzastore.slowQuery.explain");
+    static final String SLOW_QUERY_LOG = System.getProperty("pizzastore.slowQuery.log", "slow_queries.log");
+
+    // Menu snapshots older than this are reloaded to pick up other sessions' writes.
+    static final long MENU_MAX_AGE_MILLIS = Long.getLong("pizzastore.menu.maxAgeMillis", 60000L);
+
+    // Items columns a manager may change through updateMenuItem.
+    static final List<String> MENU_ITEM_FIELDS =
+       Arrays.asList("ingredients", "typeOfItem", "price", "description");
+
+    // Most items a menu search lists, and "did you mean" names offered.
+    static final int MENU_SEARCH_LIMIT = 20;
+    static final int MENU_SUGGESTIONS = 3;
+
     /**
      * Creates a new instance of PizzaStore
      *
@@ -59,8 +183,40 @@
           String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
           System.out.println ("Connection URL: " + url + "\n");
 
-          // obtain a physical connection
-          this._connection = DriverManager.getConnection(url, user, passwd);
+          Properties props = new Properties();
+          props.setProperty("user", user);
+          props.setProperty("password", passwd);
+          props.setProperty("prepareThreshold", String.valueOf(PREPARE_THRESHOLD));
+
+          // obtain a pool of physical connections
+          this._metrics.registerMBean();
+          if (SLOW_QUERY_MILLIS >= 0) {
+             this._slowLog = new SlowQueryLog(SLOW_QUERY_MILLIS, SLOW_QUERY_EXPLAIN, SLOW_QUERY_LOG,
+                url, props, this._metrics);
+          }
+          this._pool = new ConnectionPool(url, props, POOL_MAX_SIZE,
+             POOL_BORROW_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS,
+             POOL_LEAK_STACK_TRACES, STATEMENT_CACHE_SIZE);
+
+          // reads may go to a replica with the same database name and user
+          String replicaUrl = !REPLICA_URL.isEmpty() ? REPLICA_URL
+             : !REPLICA_PORT.isEmpty() ? "jdbc:postgresql://localhost:" + REPLICA_PORT + "/" + dbname : null;
+          if (replicaUrl != null) {
+             System.out.println ("Replica URL: " + replicaUrl + "\n");
+             this._router = new ReplicaRouter(new ConnectionPool(replicaUrl, props, POOL_MAX_SIZE,
+                POOL_BORROW_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS,
+                POOL_LEAK_STACK_TRACES, STATEMENT_CACHE_SIZE), REPLICA_MAX_LAG_MILLIS, REPLICA_PROBE_MILLIS,
+                REPLICA_MAX_SILENCE_MILLIS);
+          }
+          this._menu = new MenuCatalog(this, MENU_MAX_AGE_MILLIS);
+          this._orderDetails = new OrderDetails(this, ORDER_DETAIL_CACHE_SIZE, ORDER_DETAIL_MAX_AGE_MILLIS);
+          this._orderIds = new OrderIdAllocator(this, ORDER_ID_SEQUENCE);
+          this._statusPipeline = new OrderStatusPipeline(this, STATUS_DURABILITY,
+             STATUS_BATCH_SIZE, STATUS_MAX_DELAY_MILLIS, STATUS_MAX_PENDING,
+             STATUS_SUBMIT_TIMEOUT_MILLIS, STATUS_ASYNC_RETRIES);
+          this._reports = new SalesReports(this, REPORT_THREADS, REPORT_RESTATE_HOURS);
+          this._archive = new OrderArchive(ARCHIVE_DIR);
+          this._service = new PizzaStoreService(this);
           System.out.println("Done");
        }catch (Exception e){
           System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -73,61 +229,133 @@
      * Method to execute an update SQL statement.  Update SQL instructions
      * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
      *
-     * @param sql the input SQL string
+     * The statement is prepared once per pooled connection and reused, so
+     * pass values as '?' parameters rather than concatenating them into sql.
+     *
+     * @param sql the input SQL string, with '?' placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the number of rows changed
      * @throws java.sql.SQLException when update failed
      */
-    public void executeUpdate (String sql) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
-
-       // issues the update instruction
-       stmt.executeUpdate (sql);
-
-       // close the instruction
-       stmt.close ();
+    public int executeUpdate (String sql, Object... params) throws SQLException {
+       long start = System.nanoTime ();
+       int rowCount = -1;
+       PooledConnection pooled = this._pool.borrow ();
+       try {
+          // fetches the cached statement object and binds the parameters
+          PreparedStatement stmt = bind (pooled.prepare (sql), params);
+
+          // issues the update instruction
+          rowCount = stmt.executeUpdate ();
+          noteWrite ();
+          return rowCount;
+       } finally {
+          this._pool.release (pooled);
+          observe ("executeUpdate", sql, params, start, rowCount);
+       }
     }//end executeUpdate
 
+    /**
+     * Method to execute one update SQL statement for many parameter rows,
+     * sent as a single JDBC batch and committed as one transaction.
+     *
+     * @param sql the input SQL string, with '?' placeholders
+     * @param rows the values bound to the placeholders, one array per execution
+     * @return the number of rows changed by each execution, in order
+     * @throws java.sql.SQLException when the batch failed; nothing is
+     *         written in that case
+     */
+    public int[] executeBatchUpdate (String sql, List<Object[]> rows) throws SQLException {
+       long start = System.nanoTime ();
+       int rowCount = -1;
+       PooledConnection pooled = this._pool.borrow ();
+       Connection conn = pooled.getConnection ();
+       try {
+          conn.setAutoCommit (false);
+          PreparedStatement stmt = pooled.prepare (sql);
+          int[] counts;
+          try {
+             for (Object[] row : rows) {
+                bind (stmt, row);
+                stmt.addBatch ();
+             }
+             counts = stmt.executeBatch ();
+          } finally {
+             stmt.clearBatch ();
+          }
+          conn.commit ();
+          noteWrite ();
+          rowCount = rows.size ();
+          return counts;
+       } catch (SQLException e) {
+          try {
+             conn.rollback ();
+          } catch (SQLException ignored) {
+             // the connection is discarded below if it is broken.
+          }
+          throw e;
+       } finally {
+          try {
+             conn.setAutoCommit (true);
+          } catch (SQLException ignored) {
+             // the pool discards connections left outside autocommit.
+          }
+          this._pool.release (pooled);
+          observe ("executeBatchUpdate", sql, null, start, rowCount);
+       }
+    }//end executeBatchUpdate
+
     /**
      * Method to execute an input query SQL instruction (i.e. SELECT).  This
      * method issues the query to the DBMS and outputs the results to
      * standard out.
      *
-     * @param query the input query string
+     * @param query the input query string, with '?' placeholders
+     * @param params the values bound to the placeholders, in order
      * @return the number of rows returned
      * @throws java.sql.SQLException when failed to execute the query
      */
-    public int executeQueryAndPrintResult (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
-
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
-
-       /*
-        ** obtains the metadata object for the returned result set.  The metadata
-        ** contains row and column info.
-        */
-       ResultSetMetaData rsmd = rs.getMetaData ();
-       int numCol = rsmd.getColumnCount ();
-       int rowCount = 0;
-
-       // iterates through the result set and output them to standard out.
-       boolean outputHeader = true;
-       while (rs.next()){
-        if(outputHeader){
-          for(int i = 1; i <= numCol; i++){
-             System.out.print(rsmd.getColumnName(i) + "\t");
-          }
-          System.out.println();
-          outputHeader = false;
-        }
-          for (int i=1; i<=numCol; ++i)
-             System.out.print (rs.getString (i) + "\t");
-          System.out.println();
-          ++rowCount;
-       }//end while
-       stmt.close();
-       return rowCount;
+    public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+       long start = System.nanoTime ();
+       int rowCount = -1;
+       ConnectionPool pool = readPool (query);
+       PooledConnection pooled = pool.borrow ();
+       try {
+          // fetches the cached statement object and binds the parameters
+          PreparedStatement stmt = bind (pooled.prepare (query), params);
+
+          // issues the query instruction
+          ResultSet rs = stmt.executeQuery ();
+
+          /*
+           ** obtains the metadata object for the returned result set.  The metadata
+           ** contains row and column info.
+           */
+          ResultSetMetaData rsmd = rs.getMetaData ();
+          int numCol = rsmd.getColumnCount ();
+          rowCount = 0;
+
+          // iterates through the result set and output them to standard out.
+          boolean outputHeader = true;
+          while (rs.next()){
+           if(outputHeader){
+             for(int i = 1; i <= numCol; i++){
+                System.out.print(rsmd.getColumnName(i) + "\t");
+             }
+             System.out.println();
+             outputHeader = false;
+           }
+             for (int i=1; i<=numCol; ++i)
+                System.out.print (rs.getString (i) + "\t");
+             System.out.println();
+             ++rowCount;
+          }//end while
+          rs.close();
+          return rowCount;
+       } finally {
+          pool.release (pooled);
+          observe ("executeQueryAndPrintResult", query, params, start, rowCount);
+       }
     }//end executeQuery
 
     /**
@@ -135,94 +363,490 @@
      * method issues the query to the DBMS and returns the results as
      * a list of records. Each record in turn is a list of attribute values
      *
-     * @param query the input query string
+     * @param query the input query string, with '?' placeholders
+     * @param params the values bound to the placeholders, in order
      * @return the query result as a list of records
      * @throws java.sql.SQLException when failed to execute the query
      */
-    public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
-
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
-
-       /*
-        ** obtains the metadata object for the returned result set.  The metadata
-        ** contains row and column info.
-        */
-       ResultSetMetaData rsmd = rs.getMetaData ();
-       int numCol = rsmd.getColumnCount ();
-       int rowCount = 0;
-
-       // iterates through the result set and saves the data returned by the query.
-       boolean outputHeader = false;
-       List<List<String>> result  = new ArrayList<List<String>>();
-       while (rs.next()){
-         List<String> record = new ArrayList<String>();
-       for (int i=1; i<=numCol; ++i)
-          record.add(rs.getString (i));
-         result.add(record);
-       }//end while
-       stmt.close ();
-       return result;
+    public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+       long start = System.nanoTime ();
+       int rowCount = -1;
+       ConnectionPool pool = readPool (query);
+       PooledConnection pooled = pool.borrow ();
+       try {
+          // fetches the cached statement object and binds the parameters
+          PreparedStatement stmt = bind (pooled.prepare (query), params);
+
+          // issues the query instruction
+          ResultSet rs = stmt.executeQuery ();
+
+          /*
+           ** obtains the metadata object for the returned result set.  The metadata
+           ** contains row and column info.
+           */
+          ResultSetMetaData rsmd = rs.getMetaData ();
+          int numCol = rsmd.getColumnCount ();
+
+          // iterates through the result set and saves the data returned by the query.
+          List<List<String>> result  = new ArrayList<List<String>>();
+          while (rs.next()){
+            List<String> record = new ArrayList<String>();
+          for (int i=1; i<=numCol; ++i)
+             record.add(rs.getString (i));
+            result.add(record);
+          }//end while
+          rs.close ();
+          rowCount = result.size ();
+          return result;
+       } finally {
+          pool.release (pooled);
+          observe ("executeQueryAndReturnResult", query, params, start, rowCount);
+       }
     }//end executeQueryAndReturnResult
 
     /**
      * Method to execute an input query SQL instruction (i.e. SELECT).  This
-     * method issues the query to the DBMS and returns the number of results
+     * method issues the query to the DBMS and returns the results as
+     * a list of typed records built by the mapper.
      *
-     * @param query the input query string
-     * @return the number of rows returned
+     * @param query the input query string, with '?' placeholders
+     * @param mapper builds one record per row
+     * @param params the values bound to the placeholders, in order
+     * @return the query result as a list of records
      * @throws java.sql.SQLException when failed to execute the query
      */
-    public int executeQuery (String query) throws SQLException {
-        // creates a statement object
-        Statement stmt = this._connection.createStatement ();
+    public <T> List<T> executeQueryAndMap (String query, RowMapper<T> mapper, Object... params) throws SQLException {
+       long start = System.nanoTime ();
+       int rowCount = -1;
+       ConnectionPool pool = readPool (query);
+       PooledConnection pooled = pool.borrow ();
+       try {
+          // fetches the cached statement object and binds the parameters
+          PreparedStatement stmt = bind (pooled.prepare (query), params);
 
-        // issues the query instruction
-        ResultSet rs = stmt.executeQuery (query);
+          // issues the query instruction
+          ResultSet rs = stmt.executeQuery ();
 
-        int rowCount = 0;
+          // iterates through the result set and maps each row.
+          List<T> result = new ArrayList<T>();
+          while (rs.next()){
+             result.add(mapper.mapRow(query, rs));
+          }//end while
+          rs.close ();
+          rowCount = result.size ();
+          return result;
+       } finally {
+          pool.release (pooled);
+          observe ("executeQueryAndMap", query, params, start, rowCount);
+       }
+    }//end executeQueryAndMap
 
-        // iterates through the result set and count nuber of results.
-        while (rs.next()){
-           rowCount++;
-        }//end while
-        stmt.close ();
-        return rowCount;
+    /**
+     * Method to execute an input query SQL instruction (i.e. SELECT).  This
+     * method issues the query to the DBMS and returns the number of results
+     *
+     * @param query the input query string, with '?' placeholders
+     * @param params the values bound to the placeholders, in order
+     * @return the number of rows returned
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public int executeQuery (String query, Object... params) throws SQLException {
+        long start = System.nanoTime ();
+        int rowCount = -1;
+        ConnectionPool pool = readPool (query);
+        PooledConnection pooled = pool.borrow ();
+        try {
+           // fetches the cached statement object and binds the parameters
+           PreparedStatement stmt = bind (pooled.prepare (query), params);
+
+           // issues the query instruction
+           ResultSet rs = stmt.executeQuery ();
+
+           rowCount = 0;
+
+           // iterates through the result set and count nuber of results.
+           while (rs.next()){
+              rowCount++;
+           }//end while
+           rs.close ();
+           return rowCount;
+        } finally {
+           pool.release (pooled);
+           observe ("executeQuery", query, params, start, rowCount);
+        }
     }
 
+    /**
+     * Method to execute an input query SQL instruction (i.e. SELECT) and
+     * hand each row to a handler as it arrives. Rows are read through a
+     * forward-only server-side cursor, STREAM_FETCH_SIZE at a time, so the
+     * result is never held in memory as a whole.
+     *
+     * The connection stays borrowed until the last row has been handled,
+     * so keep handlers short and do not run other queries from them.
+     *
+     * @param query the input query string, with '?' placeholders
+     * @param handler called once per row
+     * @param params the values bound to the placeholders, in order
+     * @return the number of rows handled
+     * @throws java.sql.SQLException when failed to execute the query or the
+     *         handler failed
+     */
+    public int executeQueryAndStream (String query, RowHandler handler, Object... params) throws SQLException {
+       long start = System.nanoTime ();
+       int rowCount = -1;
+       ConnectionPool pool = readPool (query);
+       PooledConnection pooled = pool.borrow ();
+       Connection conn = pooled.getConnection ();
+       PreparedStatement stmt = null;
+       try {
+          // PostgreSQL only uses a cursor for fetchSize outside autocommit.
+          conn.setAutoCommit (false);
+
+          stmt = bind (pooled.prepare (query), params);
+          stmt.setFetchSize (STREAM_FETCH_SIZE);
+
+          ResultSet rs = stmt.executeQuery ();
+          int handled = 0;
+          try {
+             while (rs.next ()) {
+                handler.handleRow (rs);
+                ++handled;
+             }//end while
+          } finally {
+             rs.close ();
+          }
+          conn.commit ();
+          rowCount = handled;
+          return rowCount;
+       } catch (SQLException | RuntimeException e) {
+          try {
+             conn.rollback ();
+          } catch (SQLException ignored) {
+             // the connection is discarded below if it is broken.
+          }
+          throw e;
+       } finally {
+          try {
+             if (stmt != null)
+                stmt.setFetchSize (0);
+             conn.setAutoCommit (true);
+          } catch (SQLException ignored) {
+             // the pool discards connections left outside autocommit.
+          }
+          pool.release (pooled);
+          observe ("executeQueryAndStream", query, params, start, rowCount);
+       }
+    }//end executeQueryAndStream
+
     /**
      * Method to fetch the last value from sequence. This
      * method issues the query to the DBMS and returns the current
      * value of sequence used for autogenerated keys
      *
+     * Note that currval is local to a database session, so with pooled
+     * connections it reports the last value drawn on whichever connection
+     * serves this call. New orders take their ID from getOrderIds instead.
+     *
      * @param sequence name of the DB sequence
      * @return current value of a sequence
      * @throws java.sql.SQLException when failed to execute the query
      */
     public int getCurrSeqVal(String sequence) throws SQLException {
-    Statement stmt = this._connection.createStatement ();
-
-    ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-    if (rs.next())
-       return rs.getInt(1);
-    return -1;
+    long start = System.nanoTime ();
+    int rowCount = -1;
+    PooledConnection pooled = this._pool.borrow ();
+    try {
+       PreparedStatement stmt = bind (pooled.prepare ("Select currval(?::regclass)"), new Object[] { sequence });
+
+       ResultSet rs = stmt.executeQuery ();
+       int value = -1;
+       if (rs.next())
+          value = rs.getInt(1);
+       rs.close ();
+       rowCount = 1;
+       return value;
+    } finally {
+       this._pool.release (pooled);
+       observe ("getCurrSeqVal", "Select currval(?::regclass)", null, start, rowCount);
+    }
     }
 
     /**
-     * Method to close the physical connection if it is open.
+     * Returns one page of orders, newest first. Pages are keyed on
+     * (orderTimestamp, orderID) rather than OFFSET, so every page is an
+     * index range scan on FOOD_ORDER_TIMESTAMP_INDEX or
+     * FOOD_ORDER_LOGIN_TIMESTAMP_INDEX no matter how deep it is.
+     *
+     * @param login the customer whose orders to list; null for all orders
+     * @param after the last order of the previous page; null for the first page
+     * @param pageSize the maximum number of orders to return
+     * @return the orders on the page; fewer than pageSize on the last page
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public List<FoodOrder> findOrderPage(String login, FoodOrder after, int pageSize) throws SQLException {
+       List<Object> params = new ArrayList<Object>();
+
+       if (login != null) {
+          params.add(login);
+       }
+
+       if (after != null) {
+          params.add(after.getOrderTimestamp());
+          params.add(after.getOrderTimestamp());
+          params.add(after.getOrderID());
+       }
+
+       params.add(pageSize);
+
+       return executeQueryAndMap(orderPageQuery(login != null, after != null), FoodOrder.MAPPER, params.toArray());
+    }//end findOrderPage
+
+    /**
+     * Returns the SQL used by findOrderPage. Its parameters are the login
+     * (if byLogin), the previous page's orderTimestamp, orderTimestamp
+     * again and orderID (if afterKey), and the page size.
+     *
+     * The plain orderTimestamp bound repeats part of the row comparison so
+     * that a partitioned FoodOrder (create_tables_partitioned.sql) skips
+     * the partitions newer than the previous page; the planner cannot
+     * prune on a row comparison.
+     */
+    static String orderPageQuery(boolean byLogin, boolean afterKey) {
+       String query = "SELECT F.orderID, F.login, F.storeID, F.totalPrice, F.orderTimestamp, F.orderStatus FROM FoodOrder F WHERE ";
+
+       if (byLogin) {
+          query += "F.login = ? AND ";
+       }
+
+       if (afterKey) {
+          query += "F.orderTimestamp <= ? AND (F.orderTimestamp, F.orderID) < (?, ?)";
+       } else {
+          query += "1=1";
+       }
+
+       return query + " ORDER BY F.orderTimestamp DESC, F.orderID DESC LIMIT ?;";
+    }//end orderPageQuery
+
+    /**
+     * Places an order in a single transaction. The items are priced with one
+     * set-based query, then the FoodOrder row is inserted and all
+     * ItemsInOrder rows are written with one batch. All of it runs in one
+     * transaction, so either the whole order is stored or none of it is.
+     *
+     * @param login the customer placing the order
+     * @param storeID the store the order is placed at
+     * @param lines quantity ordered per item name
+     * @return the new order's ID, total price and commit latency
+     * @throws java.sql.SQLDataException when an item is not on the menu
+     * @throws java.sql.SQLException when the transaction fails; nothing is
+     *         written in either case
+     */
+    public OrderReceipt submitOrder(String login, int storeID, Map<String, Integer> lines) throws SQLException {
+       long start = System.nanoTime();
+
+       // taken before borrowing, since reserving a new block needs a connection of its own
+       int orderID = this._orderIds.next ();
+       int rowCount = -1;
+
+       PooledConnection pooled = this._pool.borrow ();
+       Connection conn = pooled.getConnection ();
+       try {
+          conn.setAutoCommit (false);
+
+          // prices every item in one round-trip
+          String[] itemNames = lines.keySet ().toArray (new String[0]);
+          PreparedStatement stmt = bind (pooled.prepare (
+             "SELECT I.itemName, I.price FROM Items I WHERE I.itemName = ANY(?);"), new Object[] { itemNames });
+          ResultSet rs = stmt.executeQuery ();
+          Map<String, BigDecimal> prices = new HashMap<String, BigDecimal>();
+          while (rs.next ())
+             prices.put (rs.getString (1), rs.getBigDecimal (2));
+          rs.close ();
+
+          BigDecimal totalPrice = BigDecimal.ZERO;
+          List<String> missing = new ArrayList<String>();
+          for (Map.Entry<String, Integer> line : lines.entrySet ()) {
+             BigDecimal price = prices.get (line.getKey ());
+             if (price == null)
+                missing.add (line.getKey ());
+             else
+                totalPrice = totalPrice.add (price.multiply (BigDecimal.valueOf (line.getValue ())));
+          }
+          if (!missing.isEmpty ()) {
+             conn.rollback ();
+             throw new SQLDataException ("Item not found: " + String.join (", ", missing) + ". Order not placed.");
+          }
+
+          // writes the order header under the in-process ID
+          bind (pooled.prepare (
+             "INSERT INTO FoodOrder (orderID, login, storeID, totalPrice, orderTimestamp, orderStatus) VALUES (?, ?, ?, ?, NOW(), 'incomplete');"),
+             new Object[] { orderID, login, storeID, totalPrice }).executeUpdate ();
+
+          // writes every line item in one batch
+          stmt = pooled.prepare ("INSERT INTO ItemsInOrder (orderID, itemName, quantity) VALUES (?, ?, ?);");
+          try {
+             for (Map.Entry<String, Integer> line : lines.entrySet ()) {
+                stmt.setInt (1, orderID);
+                stmt.setString (2, line.getKey ());
+                stmt.setInt (3, line.getValue ());
+                stmt.addBatch ();
+             }
+             stmt.executeBatch ();
+          } finally {
+             stmt.clearBatch ();
+          }
+
+          long commitStart = System.nanoTime ();
+          conn.commit ();
+          noteWrite ();
+          long end = System.nanoTime ();
+          rowCount = 1 + lines.size ();
+          return new OrderReceipt (orderID, totalPrice, end - start, end - commitStart);
+       } catch (SQLException e) {
+          try {
+             conn.rollback ();
+          } catch (SQLException ignored) {
+             // the connection is discarded below if it is broken.
+          }
+          throw e;
+       } finally {
+          try {
+             conn.setAutoCommit (true);
+          } catch (SQLException ignored) {
+             // the pool discards connections left outside autocommit.
+          }
+          this._pool.release (pooled);
+          observe ("submitOrder", "submitOrder", null, start, rowCount);
+       }
+    }//end submitOrder
+
+    /*
+     * Binds the parameters to a prepared statement, in order.
+     */
+    private static PreparedStatement bind (PreparedStatement stmt, Object[] params) throws SQLException {
+       for (int i = 0; i < params.length; ++i)
+          stmt.setObject (i + 1, params[i]);
+       return stmt;
+    }//end bind
+
+    /*
+     * Returns the pool a statement should run on: the replica for plain
+     * reads when the router allows it, the primary otherwise.
+     */
+    private ConnectionPool readPool (String sql) {
+       if (this._router == null)
+          return this._pool;
+       ConnectionPool replica = this._router.route (sql);
+       return replica != null ? replica : this._pool;
+    }//end readPool
+
+    /*
+     * Tells the router the acting user has just written, for read-your-writes.
+     */
+    private void noteWrite () {
+       if (this._router != null)
+          this._router.noteWrite ();
+    }//end noteWrite
+
+    /*
+     * Tells the router login has just written, from a thread not acting for them.
+     */
+    void noteWrite (String login) {
+       if (this._router != null)
+          this._router.noteWrite (login);
+    }//end noteWrite
+
+    /*
+     * Called by every helper once its statement has finished.
+     *
+     * @param rowCount rows read or written; -1 if the call failed
+     */
+    private void observe (String operation, String sql, Object[] params, long startNanos, long rowCount) {
+       this._metrics.record (operation, sql, startNanos, rowCount);
+       if (this._slowLog != null)
+          this._slowLog.check (operation, sql, params, startNanos, rowCount);
+    }//end observe
+
+    /**
+     * Method to close the pooled physical connections if they are open.
      */
     public void cleanup(){
-       try{
-          if (this._connection != null){
-             this._connection.close ();
-          }//end if
-       }catch (SQLException e){
-          // ignored.
-       }//end try
+       // flushes queued status changes while the pool is still open.
+       if (this._statusPipeline != null){
+          this._statusPipeline.close ();
+       }//end if
+       if (this._router != null){
+          this._router.close ();
+       }//end if
+       if (this._pool != null){
+          this._pool.close ();
+       }//end if
+       if (this._slowLog != null){
+          this._slowLog.close ();
+       }//end if
+       this._metrics.unregisterMBean ();
     }//end cleanup
 
+    /**
+     * Returns the cached menu; call invalidate on it after writing Items.
+     */
+    public MenuCatalog getMenu(){
+       return this._menu;
+    }//end getMenu
+
+    /**
+     * Returns the programmatic service over this store, which is safe to
+     * share between threads.
+     */
+    public PizzaStoreService getService(){
+       return this._service;
+    }//end getService
+
+    /**
+     * Returns a one-line summary of connection pool usage, followed by a
+     * line on replica routing when a replica is configured.
+     */
+    public String getPoolStats(){
+       return this._pool.stats () + (this._router == null ? "" : "\n" + this._router.stats ());
+    }//end getPoolStats
+
+    /**
+     * Returns the latency histograms of the helpers and menu actions.
+     */
+    public LatencyMetrics getMetrics(){
+       return this._metrics;
+    }//end getMetrics
+
+    /**
+     * Returns the allocator new order IDs are drawn from.
+     */
+    public OrderIdAllocator getOrderIds(){
+       return this._orderIds;
+    }//end getOrderIds
+
+    /**
+     * Returns the pipeline that batches order status changes.
+     */
+    public OrderStatusPipeline getStatusPipeline(){
+       return this._statusPipeline;
+    }//end getStatusPipeline
+
+    /**
+     * Returns the sales reports over this store's rollups.
+     */
+    public SalesReports getReports(){
+       return this._reports;
+    }//end getReports
+
+    public OrderArchive getArchive(){
+       return this._archive;
+    }//end getArchive
+
+    public OrderDetails getOrderDetails(){
+       return this._orderDetails;
+    }//end getOrderDetails
+
     /**
      * The main execution method
      *
@@ -285,10 +909,16 @@
                  //**the following functionalities should ony be able to be used by managers**
                  System.out.println("10. Update Menu");
                  System.out.println("11. Update User");
+                 System.out.println("12. View Metrics");
+                 System.out.println("13. Search Menu");
+                 System.out.println("14. View Sales Reports");
 
                  System.out.println(".........................");
                  System.out.println("20. Log out\n");
-                 switch (readChoice()){
+                 int choice = readChoice();
+                 long actionStart = System.nanoTime();
+                 long waitedBefore = inputWaitNanos();
+                 switch (choice){
                     case 1: viewProfile(esql); break;
                     case 2: updateProfile(esql); break;
                     case 3: viewMenu(esql); break;
@@ -300,12 +930,20 @@
                     case 9: updateOrderStatus(esql); break;
                     case 10: updateMenu(esql); break;
                     case 11: updateUser(esql); break;
+                    case 12: viewMetrics(esql); break;
+                    case 13: searchMenu(esql); break;
+                    case 14: viewSalesReports(esql); break;
 
 
 
-                    case 20: usermenu = false; break;
+                    case 20: usermenu = false; esql.setSession(null); break;
                     default : System.out.println("Unrecognized choice!"); break;
                  }
+                 if (choice > 0 && choice < MENU_ACTIONS.length) {
+                    // time spent waiting for the keyboard is not the action's latency
+                    esql.getMetrics().record("menu", MENU_ACTIONS[choice],
+                       actionStart + (inputWaitNanos() - waitedBefore), 0);
+                 }
                }
              }
           }//end while
@@ -332,6 +970,34 @@
           "*******************************************************\n");
     }//end Greeting
 
+    /*
+     * A keyboard reader that keeps track of how long readLine blocked.
+     */
+    static final class TimedReader extends BufferedReader {
+       private long _waitedNanos = 0;
+
+       TimedReader(java.io.Reader in) {
+          super(in);
+       }
+
+       @Override
+       public String readLine() throws java.io.IOException {
+          long start = System.nanoTime();
+          try {
+             return super.readLine();
+          } finally {
+             _waitedNanos += System.nanoTime() - start;
+          }
+       }
+    }
+
+    /*
+     * Returns the total time spent waiting for keyboard input so far.
+     */
+    static long inputWaitNanos() {
+       return in instanceof TimedReader ? ((TimedReader) in)._waitedNanos : 0;
+    }
+
     /*
      * Reads the users choice given from the keyboard
      * @int
@@ -408,8 +1074,8 @@
              login = in.readLine();
           }
 
-         String query = "SELECT U.login FROM Users U WHERE U.login = '" + login + "';";
-         int rowCount = esql.executeQuery(query);
+         String query = "SELECT U.login FROM Users U WHERE U.login = ?;";
+         int rowCount = esql.executeQuery(query, login);
 
          if (rowCount > 0) {
             System.out.println("Login is already taken. Please try again.");
@@ -430,9 +1096,9 @@
              phoneNum = in.readLine();
           }
 
-          query = "INSERT INTO Users (login, password, role, favoriteItems, phoneNum) VALUES ('" + login + "', '" + password + "', 'customer', NULL, '" + phoneNum + "');";
+          query = "INSERT INTO Users (login, password, role, favoriteItems, phoneNum) VALUES (?, ?, 'customer', NULL, ?);";
 
-          esql.executeUpdate(query);
+          esql.executeUpdate(query, login, password, phoneNum);
           System.out.println("\nUser successfully created!\n");
        }
        catch (Exception e) {
@@ -460,11 +1126,11 @@
              password = in.readLine();
           }
 
-          String query = "SELECT U.login FROM Users U WHERE U.login = '" + login + "' AND U.password = '" + password + "';";
-          List<List<String>> result = esql.executeQueryAndReturnResult(query);
+          String query = "SELECT U.login, U.role, U.phoneNum, U.favoriteItems FROM Users U WHERE U.login = ? AND U.password = ?;";
+          List<User> result = esql.executeQueryAndMap(query, User.MAPPER, login, password);
 
           if (result.size() > 0) {
-             esql.setLogin(login);
+             esql.setSession(new SessionUser(result.get(0)));
              System.out.println("\nLogin successful!\n");
              return login;
           }
@@ -484,17 +1150,19 @@
 
     public static void viewProfile(PizzaStore esql) {
        try {
-          String currentUser = esql.getLogin();
-          String query = "SELECT U.favoriteItems, U.phoneNum FROM Users U WHERE U.login = '" + currentUser + "';";
-
-          List<List<String>> result = esql.executeQueryAndReturnResult(query);
+          SessionUser user = esql.getSession();
 
           System.out.println("\nProfile details:");
-          for (List<String> row : result) {
-             System.out.println("\tFavorite Items: " + row.get(0));
-             System.out.println("\tPhone Number: " + row.get(1));
-             System.out.print("\n");
+          System.out.println("\tFavorite Items: " + user.getFavoriteItems());
+          System.out.println("\tPhone Number: " + user.getPhoneNum());
+
+          CustomerOrderSummary summary = esql.getService().customerSummary(user.getLogin());
+          System.out.println("\tOrders Placed: " + summary.getOrderCount());
+          System.out.println("\tLifetime Spend: $" + summary.getLifetimeSpend());
+          if (summary.getLastOrderTimestamp() != null) {
+             System.out.println("\tLast Order: " + summary.getLastOrderTimestamp());
           }
+          System.out.print("\n");
        }
        catch (Exception e) {
           System.err.println(e.getMessage());
@@ -542,51 +1210,17 @@
 
           int priceOrder = readChoiceWithin(1, 2);
 
-          String query = "SELECT * FROM Items I WHERE ";
-
-            if (!itemType.equals("all")) {
-               // We use a LIKE to deal with potential leading spaces.
-               query += "I.typeOfItem LIKE '%" + itemType + "'";
-            } else {
-               query += "1=1";
-            }
-
-            query += " AND ";
-
-            if (priceLimit > 0) {
-               query += "I.price <= " + priceLimit;
-            } else {
-               query += "1=1";
-            }
-
-            query += " ORDER BY I.price ";
-
-            if (priceOrder == 1) {
-               query += "ASC";
-            } else {
-               query += "DESC";
-            }
-
-            query += ";";
-
-
-
-          List<List<String>> result = esql.executeQueryAndReturnResult(query);
+          // Served from the in-memory catalog; types match ignoring leading spaces.
+          List<Item> result = esql.getMenu().find(itemType.equals("all") ? null : itemType, priceLimit, priceOrder == 1);
 
           for (int i = 0; i < result.size(); ++i) {
-            List<String> row = result.get(i);
-
-            String itemName = row.get(0);
-            String ingredients = row.get(1);
-            String typeOfItem = row.get(2);
-            String price = row.get(3);
-            String description = row.get(4);
-
-            print("Item: " + itemName + "\n");
-            print("    Type of item: " + typeOfItem + "\n");
-            print("    Price: " + price + "\n");
-            print("    Description: " + description + "\n");
-            print("    Ingredients: " + ingredients + "\n\n");
+            Item item = result.get(i);
+
+            print("Item: " + item.getItemName() + "\n");
+            print("    Type of item: " + item.getTypeOfItem() + "\n");
+            print("    Price: " + item.getPrice() + "\n");
+            print("    Description: " + item.getDescription() + "\n");
+            print("    Ingredients: " + item.getIngredients() + "\n\n");
           }
 
           if (result.size() == 0) {
@@ -610,6 +1244,44 @@
        }
     }
 
+    /*
+     * Searches item names, ingredients and descriptions for free text,
+     * with "did you mean" hints when nothing matches.
+     */
+    public static void searchMenu(PizzaStore esql) {
+       try {
+          String query = askUserAndTrim("Enter words to search the menu for (e.g., \"pepperoni\", \"mozz\"): ");
+
+          List<Item> result = esql.getMenu().search(query, MENU_SEARCH_LIMIT);
+
+          System.out.println();
+          for (Item item : result) {
+             print("Item: " + item.getItemName() + "\n");
+             print("    Type of item: " + item.getTypeOfItem().trim() + "\n");
+             print("    Price: " + item.getPrice() + "\n");
+             print("    Ingredients: " + item.getIngredients() + "\n\n");
+          }
+
+          if (result.size() == 0) {
+             print("No items match \"" + query + "\"." + didYouMean(esql, query) + "\n");
+          }
+       }
+       catch (Exception e) {
+          System.err.println(e.getMessage());
+       }
+    }
+
+    /*
+     * Returns " Did you mean ...?" naming the closest menu items, or "".
+     */
+    static String didYouMean(PizzaStore esql, String text) throws SQLException {
+       List<String> names = esql.getMenu().suggest(text, MENU_SUGGESTIONS);
+       if (names.isEmpty()) {
+          return "";
+       }
+       return " Did you mean \"" + String.join("\", \"", names) + "\"?";
+    }
+
     public static void print(String s) {
       System.out.print(s);
     }
@@ -619,17 +1291,17 @@
          print("Enter the ID of the store you want to order from.\n");
          int storeID = readChoice();
 
-         String query = "SELECT S.storeID FROM Store S WHERE S.storeID = " + storeID + ";";
-         List<List<String>> storeResult = esql.executeQueryAndReturnResult(query);
+         String query = "SELECT S.storeID FROM Store S WHERE S.storeID = ?;";
+         List<List<String>> storeResult = esql.executeQueryAndReturnResult(query, storeID);
 
          if (storeResult.size() == 0) {
             print("Store not found.\n");
             return;
          }
 
-         List<String> itemNames = new ArrayList<String>();
-         List<Integer> quantities = new ArrayList<Integer>();
-         double totalPrice = 0.0;
+         // Names are checked against the cached menu as they are entered, and
+         // again in one query when the order is submitted.
+         Map<String, Integer> lines = new LinkedHashMap<String, Integer>();
 
          while (true) {
             String itemName = askUserAndTrim("Enter the name of the item you want to order.\nType \"done\" if you are finished adding items: ");
@@ -638,52 +1310,36 @@
                break;
             }
 
-            query = "SELECT I.price FROM Items I WHERE I.itemName = '" + itemName + "';";
-            List<List<String>> itemResult = esql.executeQueryAndReturnResult(query);
-            if (itemResult.size() == 0) {
-               print("Item not found.\n");
+            if (esql.getMenu().get(itemName) == null) {
+               print("Item not found." + didYouMean(esql, itemName) + "\n\n");
                continue;
             }
 
-            double price = parseDoubleOr(itemResult.get(0).get(0), 0.0);
-
-
             print("\nEnter desired quantity: ");
 
             int quantity = readChoice();
 
-            itemNames.add(itemName);
-
-            quantities.add(quantity);
+            if (quantity <= 0) {
+               print("Quantity must be at least 1.\n\n");
+               continue;
+            }
 
-            totalPrice += quantity * price;
+            // Ordering the same item twice adds to its quantity.
+            Integer previous = lines.get(itemName);
+            lines.put(itemName, previous == null ? quantity : previous + quantity);
 
             print("\n");
          }
 
-         String login = esql.getLogin();
-
-         query = "INSERT INTO FoodOrder (login, storeID, totalPrice, orderTimestamp, orderStatus) VALUES ('" + login + "', " + storeID + ", " + totalPrice + ", NOW(), 'incomplete') RETURNING orderID;";
-
-         List<List<String>> orderIDResult = esql.executeQueryAndReturnResult(query);
-
-         if (orderIDResult.isEmpty() || orderIDResult.get(0).isEmpty()) {
-            print("Error: Could not retrieve order ID.\n");
+         if (lines.isEmpty()) {
+            print("No items were added. Order not placed.\n");
             return;
          }
 
-         int orderID = Integer.parseInt(orderIDResult.get(0).get(0)); // Extract orderID
-
-         for (int i = 0; i < itemNames.size(); ++i) {
-            String itemName = itemNames.get(i);
-            int quantity = quantities.get(i);
+         OrderReceipt receipt = esql.submitOrder(esql.getLogin(), storeID, lines);
 
-            query = "INSERT INTO ItemsInOrder (orderID, itemName, quantity) VALUES (" + orderID + ", '" + itemName + "', " + quantity + ");";
-
-            esql.executeUpdate(query);
-         }
-
-         print("\n\nOrder successfully placed!\n\n");
+         print("\n\nOrder " + receipt.getOrderID() + " successfully placed! Total price: " + receipt.getTotalPrice() + "\n");
+         print(String.format("(committed in %.2f ms)%n%n", receipt.getTransactionNanos() / 1e6));
       }
       catch (Exception e) {
          System.err.println(e.getMessage());
@@ -710,14 +1366,7 @@
 
     public static void viewAllOrders(PizzaStore esql) {
       try {
-         String login = esql.getLogin();
-
-         // Get role
-         String query = "SELECT U.role FROM Users U WHERE U.login = '" + login + "';";
-         List<List<String>> roleResult = esql.executeQueryAndReturnResult(query);
-         String role = roleResult.get(0).get(0).trim();
-
-         if (role.trim().equals("manager") || role.trim().equals("driver")) {
+         if (esql.getSession().isManagerOrDriver()) {
             viewAllOrdersAssumingUserIsManagerOrDriver(esql);
          } else {
             viewAllOrdersAssumingUserIsCustomer(esql);
@@ -732,30 +1381,7 @@
       try {
          String customerLogin = askUserAndTrim("Enter the login name of the customer whose orders you want to see. Type \"all\" to see the orders of all customers.\nLogin name: ");
 
-         String query = "SELECT * FROM FoodOrder F";
-
-         if (!customerLogin.equals("all")) {
-            query += " WHERE F.login = '" + customerLogin + "'";
-         }
-
-         query += ";";
-
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-         print("\n\nORDER IDS:\n\n");
-
-         for (int i = 0; i < result.size(); ++i) {
-            List<String> row = result.get(i);
-
-            String orderID = row.get(0);
-            String login = row.get(1);
-            String storeID = row.get(2);
-            String totalPrice = row.get(3);
-            String orderTimestamp = row.get(4);
-            String orderStatus = row.get(5);
-
-            print(orderID + "\n");
-         }
+         printOrderPages(esql, customerLogin.equals("all") ? null : customerLogin);
       }
       catch (Exception e) {
          System.err.println(e.getMessage());
@@ -764,42 +1390,50 @@
 
     public static void viewAllOrdersAssumingUserIsCustomer(PizzaStore esql) {
       try {
-         String login = esql.getLogin();
-
-         String query = "SELECT * FROM FoodOrder F WHERE F.login = '" + login + "';";
-
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
+         printOrderPages(esql, esql.getLogin());
+      }
+      catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+    }
 
+    /*
+     * Prints order IDs newest first, ORDER_PAGE_SIZE at a time, asking
+     * before each further page.
+     */
+    public static void printOrderPages(PizzaStore esql, String customerLogin) throws Exception {
+      if (customerLogin == null) {
          print("\n\nORDER IDS:\n\n");
+      } else {
+         int orderCount = esql.getService().customerSummary(customerLogin).getOrderCount();
+         print("\n\nORDER IDS (" + orderCount + " orders):\n\n");
+      }
 
-         for (int i = 0; i < result.size(); ++i) {
-            List<String> row = result.get(i);
+      FoodOrder last = null;
+      while (true) {
+         List<FoodOrder> page = esql.findOrderPage(customerLogin, last, ORDER_PAGE_SIZE);
 
-            String orderID = row.get(0);
-            // String login = row.get(1);
-            String storeID = row.get(2);
-            String totalPrice = row.get(3);
-            String orderTimestamp = row.get(4);
-            String orderStatus = row.get(5);
+         for (FoodOrder order : page) {
+            print(order.getOrderID() + "\n");
+         }
 
-            print(orderID + "\n");
+         if (page.size() < ORDER_PAGE_SIZE) {
+            break;
          }
-      }
-      catch (Exception e) {
-         System.err.println(e.getMessage());
+         last = page.get(page.size() - 1);
+
+         print("\nPress Enter for more orders, or type \"q\" to stop: ");
+         String answer = in.readLine();
+         if (answer == null || answer.trim().equalsIgnoreCase("q")) {
+            break;
+         }
+         print("\n");
       }
     }
 
     public static void viewRecentOrders(PizzaStore esql) {
       try {
-         String login = esql.getLogin();
-
-         // Get role
-         String query = "SELECT U.role FROM Users U WHERE U.login = '" + login + "';";
-         List<List<String>> roleResult = esql.executeQueryAndReturnResult(query);
-         String role = roleResult.get(0).get(0).trim();
-
-         if (role.equals("manager") || role.equals("driver")) {
+         if (esql.getSession().isManagerOrDriver()) {
             viewRecentOrdersAssumingUserIsManagerOrDriver(esql);
          } else {
             viewRecentOrdersAssumingUserIsCustomer(esql);
@@ -814,26 +1448,7 @@
       try {
          String customerLogin = askUserAndTrim("Enter the login name of the customer whose orders you want to see: ");
 
-         String query = "SELECT * FROM FoodOrder F";
-
-         query += " WHERE F.login = '" + customerLogin + "' ORDER BY F.orderTimestamp DESC LIMIT 5;";
-
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-         print("\n\nORDER IDS:\n\n");
-
-         for (int i = 0; i < result.size(); ++i) {
-            List<String> row = result.get(i);
-
-            String orderID = row.get(0);
-            String login = row.get(1);
-            String storeID = row.get(2);
-            String totalPrice = row.get(3);
-            String orderTimestamp = row.get(4);
-            String orderStatus = row.get(5);
-
-            print(orderID + "\n");
-         }
+         printRecentOrderIDs(esql, customerLogin);
       }
       catch (Exception e) {
          System.err.println(e.getMessage());
@@ -842,78 +1457,65 @@
 
     public static void viewRecentOrdersAssumingUserIsCustomer(PizzaStore esql) {
       try {
-         String login = esql.getLogin();
-
-         String query = "SELECT * FROM FoodOrder F WHERE F.login = '" + login + "' ORDER BY F.orderTimestamp DESC LIMIT 5;";
-
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-         print("\n\nORDER IDS:\n\n");
-
-         for (int i = 0; i < result.size(); ++i) {
-            List<String> row = result.get(i);
-
-            String orderID = row.get(0);
-            // String login = row.get(1);
-            String storeID = row.get(2);
-            String totalPrice = row.get(3);
-            String orderTimestamp = row.get(4);
-            String orderStatus = row.get(5);
-
-            print(orderID + "\n");
-         }
+         printRecentOrderIDs(esql, esql.getLogin());
       }
       catch (Exception e) {
          System.err.println(e.getMessage());
       }
     }
 
+    /*
+     * Prints a customer's last 5 order IDs from their CustomerOrderSummary row.
+     */
+    public static void printRecentOrderIDs(PizzaStore esql, String login) throws SQLException {
+       print("\n\nORDER IDS:\n\n");
+       for (int orderID : esql.getService().customerSummary(login).getRecentOrderIDs()) {
+          print(orderID + "\n");
+       }
+    }
+
     public static void viewOrderInfo(PizzaStore esql) {
       try {
          String login = esql.getLogin();
 
-         // Get role
-         String query = "SELECT U.role FROM Users U WHERE U.login = '" + login + "';";
-         List<List<String>> roleResult = esql.executeQueryAndReturnResult(query);
-         String role = roleResult.get(0).get(0).trim();
-         boolean canSeeOtherUsersOrders = role.equals("manager") || role.equals("driver");
+         boolean canSeeOtherUsersOrders = esql.getSession().isManagerOrDriver();
 
          print("Enter the order ID you want to see.");
          int targetOrderID = readChoice();
 
-         query = "SELECT * FROM FoodOrder F WHERE F.orderID = '" + targetOrderID + "';";
+         // header, store and priced lines in one round-trip; archived orders included.
+         OrderDetail detail = esql.getService().orderDetail(targetOrderID);
 
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-         if (result.size() == 0) {
+         if (detail == null) {
             print("Order not found.\n");
             return;
          }
 
-         // This should iterate at most once.
-         for (int i = 0; i < result.size(); ++i) {
-            List<String> row = result.get(i);
-
-            String orderID = row.get(0);
-            String orderLogin = row.get(1);
-            String storeID = row.get(2);
-            String totalPrice = row.get(3);
-            String orderTimestamp = row.get(4);
-            String orderStatus = row.get(5);
-
-            if (!(canSeeOtherUsersOrders || orderLogin.equals(login))) {
-               print("This order does not belong to you.\n");
-               return;
-            }
+         FoodOrder order = detail.getOrder();
+         if (!(canSeeOtherUsersOrders || order.getLogin().equals(login))) {
+            print("This order does not belong to you.\n");
+            return;
+         }
 
-            print("\nORDER INFO\n");
-            print("Order ID: " + orderID + "\n");
-            print("Customer login: " + orderLogin + "\n");
-            print("Store ID: " + storeID + "\n");
-            print("Total price: " + totalPrice + "\n");
-            print("Order timestamp: " + orderTimestamp + "\n");
-            print("Order status: " + orderStatus + "\n\n");
+         print("\nORDER INFO\n");
+         print("Order ID: " + order.getOrderID() + "\n");
+         print("Customer login: " + order.getLogin() + "\n");
+         Store store = detail.getStore();
+         print("Store ID: " + order.getStoreID()
+            + (store == null ? "" : " (" + store.getAddress() + ", " + store.getCity() + ", " + store.getState() + ")")
+            + "\n");
+         print("Total price: " + order.getTotalPrice() + "\n");
+         print("Order timestamp: " + order.getOrderTimestamp() + "\n");
+         print("Order status: " + order.getOrderStatus() + (detail.isArchived() ? " (archived)" : "") + "\n\n");
+
+         print("ITEMS\n");
+         for (OrderDetail.Line line : detail.getLines()) {
+            print("    " + line.getQuantity() + " x " + line.getItemName()
+               + (line.getPrice() == null ? " (no longer on the menu)"
+                  : " @ " + line.getPrice() + " = " + line.getLineTotal())
+               + "\n");
          }
+         print("\n");
       }
       catch (Exception e) {
          System.err.println(e.getMessage());
@@ -922,27 +1524,19 @@
 
     public static void viewStores(PizzaStore esql) {
       try {
-         String query = "SELECT * FROM Store S ORDER BY S.storeID ASC;";
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
+         List<Store> result = esql.getService().stores();
 
          print("\n\nSTORES:\n\n");
 
          for (int i = 0; i < result.size(); ++i) {
-            List<String> row = result.get(i);
-
-            String storeID = row.get(0);
-            String address = row.get(1);
-            String city = row.get(2);
-            String state = row.get(3);
-            String isOpen = row.get(4);
-            String reviewScore = row.get(5);
-
-            print("Store ID: " + storeID + "\n");
-            print("    Address: " + address + "\n");
-            print("    City: " + city + "\n");
-            print("    State: " + state + "\n");
-            print("    Is open: " + isOpen + "\n");
-            print("    Review score: " + reviewScore + "\n\n");
+            Store store = result.get(i);
+
+            print("Store ID: " + store.getStoreID() + "\n");
+            print("    Address: " + store.getAddress() + "\n");
+            print("    City: " + store.getCity() + "\n");
+            print("    State: " + store.getState() + "\n");
+            print("    Is open: " + store.getIsOpen() + "\n");
+            print("    Review score: " + store.getReviewScore() + "\n\n");
          }
 
       }
@@ -953,19 +1547,13 @@
 
     public static void updateOrderStatus(PizzaStore esql) {
       try {
-         String login = esql.getLogin();
-
-         String query = "SELECT U.role FROM Users U WHERE U.login = '" + login + "';";
-
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-         String role = result.get(0).get(0);
-
-         if (!role.trim().equals("manager") && !role.trim().equals("driver")) {
+         if (!esql.getSession().isManagerOrDriver()) {
             System.out.println("Insufficient privileges. Please ask a manager or driver for assistance.");
             return;
          }
 
+         boolean completed;
+
          System.out.print("Enter order ID to update: ");
          Integer orderID = Integer.parseInt(in.readLine());
 
@@ -976,35 +1564,103 @@
 
          switch (readChoice()) {
             case 1:
-               query = "UPDATE FoodOrder SET orderStatus = 'completed' WHERE orderID = " + orderID + ";";
+               completed = true;
                break;
             case 2:
-               query = "UPDATE FoodOrder SET orderStatus = 'incomplete' WHERE orderID = " + orderID + ";";
+               completed = false;
                break;
             default:
                System.out.println("Invalid choice. Order status not updated.");
                return;
          }
 
-         esql.executeUpdate(query);
+         if (!esql.getService().updateOrderStatus(orderID, completed)) {
+            System.out.println("Order '" + orderID + "' was not found.");
+            return;
+         }
 
-         System.out.println("Order '" + orderID + "' was updated!");
+         if (esql.getStatusPipeline().getDurability() == OrderStatusPipeline.Durability.ASYNC) {
+            System.out.println("Order '" + orderID + "' update was queued.");
+         } else {
+            System.out.println("Order '" + orderID + "' was updated!");
+         }
       }
       catch (Exception e) {
          System.err.println(e.getMessage());
       }
    }
 
-    public static void updateMenu(PizzaStore esql) {
+    public static void viewMetrics(PizzaStore esql) {
+       if (!esql.getSession().isManager()) {
+          System.out.println("\nInsufficient privileges.");
+          return;
+       }
+
+       System.out.println();
+       System.out.print(esql.getMetrics().dump());
+       System.out.println(esql.getPoolStats());
+       System.out.println(esql.getStatusPipeline().stats());
+       System.out.println(esql.getOrderIds().stats());
+       System.out.println(esql.getReports().stats());
+       System.out.println(esql.getOrderDetails().stats());
+       System.out.println(esql.getArchive().stats());
+       System.out.println();
+    }
+
+    /*
+     * Refreshes the sales rollups, then shows per-store sales, revenue per
+     * day (per hour for today only) and the top items.
+     */
+    public static void viewSalesReports(PizzaStore esql) {
        try {
-          String login = esql.getLogin();
+          if (!esql.getSession().isManager()) {
+             System.out.println("\nInsufficient privileges.");
+             return;
+          }
+
+          System.out.println("\nRefreshing sales rollups...");
+          System.out.println(esql.getReports().refresh());
 
-          String query = "SELECT U.role FROM Users U WHERE U.login = '" + login + "';";
-          List<List<String>> result = esql.executeQueryAndReturnResult(query);
+          System.out.print("\nEnter how many days to report on, counting today: ");
+          int days = readChoice();
+          if (days < 1) {
+             System.out.println("\nThe number of days must be at least 1.");
+             return;
+          }
+          System.out.print("Enter a store ID to report on, or 0 for all stores: ");
+          int storeID = readChoice();
+
+          System.out.println(String.format("%n%-8s %10s %14s %12s %10s %11s",
+             "Store", "Orders", "Revenue", "Avg basket", "Avg items", "Completed"));
+          for (StoreSales sales : esql.getReports().storeSales(days, Math.max(0, storeID))) {
+             System.out.println(String.format("%-8d %,10d %,14.2f %12.2f %10.1f %10.1f%%",
+                sales.getStoreID(), sales.getOrderCount(), sales.getRevenue(), sales.getAverageBasket(),
+                sales.getAverageItems(), 100 * sales.getCompletionRate()));
+          }
 
-          String role = result.get(0).get(0);
+          boolean hourly = days == 1;
+          System.out.println(String.format("%n%-20s %10s %14s", hourly ? "Hour" : "Day", "Orders", "Revenue"));
+          for (StoreSales sales : esql.getReports().periodSales(days, Math.max(0, storeID), hourly)) {
+             String period = sales.getPeriod().toString();
+             System.out.println(String.format("%-20s %,10d %,14.2f",
+                hourly ? period.substring(0, 16) : period.substring(0, 10), sales.getOrderCount(), sales.getRevenue()));
+          }
 
-          if (!role.trim().equals("manager")) {
+          System.out.println(String.format("%n%-30s %10s %10s", "Top items", "Units", "Orders"));
+          for (ItemSales item : esql.getReports().topItems(days, Math.max(0, storeID), REPORT_TOP_ITEMS)) {
+             System.out.println(String.format("%-30s %,10d %,10d",
+                item.getItemName(), item.getQuantity(), item.getOrderCount()));
+          }
+          System.out.println();
+       }
+       catch (Exception e) {
+          System.err.println(e.getMessage());
+       }
+    }
+
+    public static void updateMenu(PizzaStore esql) {
+       try {
+          if (!esql.getSession().isManager()) {
              System.out.println("\nInsufficient privileges.");
              return;
           }
@@ -1032,14 +1688,7 @@
 
     public static void updateUser(PizzaStore esql) {
        try {
-          String login = esql.getLogin();
-
-          String query = "SELECT U.role FROM Users U WHERE U.login = '" + login + "';";
-          List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-          String role = result.get(0).get(0);
-
-          if (!role.trim().equals("manager")) {
+          if (!esql.getSession().isManager()) {
              System.out.println("\nInsufficient privileges. Please contact a manager to update login/role.");
              return;
           }
@@ -1079,6 +1728,55 @@
        return _login;
     }
 
+    /**
+     * Sets the logged-in user for current session; also sets the login.
+     */
+    public void setSession(SessionUser session) {
+       _session = session;
+       _login = session == null ? null : session.getLogin();
+       ReplicaRouter.setActingUser(_login);
+    }
+
+    /**
+     * Returns the logged-in user for current session, as loaded by LogIn.
+     */
+    public SessionUser getSession() {
+       return _session;
+    }
+
+    /**
+     * Registers a listener called with (oldLogin, newLogin) by userChanged.
+     */
+    public void addUserListener(BiConsumer<String, String> listener) {
+       _userListeners.add(listener);
+    }
+
+    /**
+     * Reloads the session user after a change to the Users row of oldLogin.
+     * Does nothing when oldLogin is not the user logged in to this session.
+     *
+     * @param oldLogin the login of the changed user before the change
+     * @param newLogin the login of the changed user after the change
+     * @throws java.sql.SQLException when failed to execute the query
+     */
+    public void userChanged(String oldLogin, String newLogin) throws SQLException {
+       for (BiConsumer<String, String> listener : _userListeners) {
+          listener.accept(oldLogin, newLogin);
+       }
+       if (_session == null || !_session.getLogin().equals(oldLogin)) {
+          return;
+       }
+
+       String query = "SELECT U.login, U.role, U.phoneNum, U.favoriteItems FROM Users U WHERE U.login = ?;";
+       List<User> result = executeQueryAndMap(query, User.MAPPER, newLogin);
+
+       if (result.isEmpty()) {
+          setSession(null);
+       } else {
+          setSession(new SessionUser(result.get(0)));
+       }
+    }//end userChanged
+
     public static String askUserAndTrim(String question) {
          System.out.print(question);
          String answer;
@@ -1113,8 +1811,8 @@
           }
 
           String login = esql.getLogin();
-          String query = "SELECT U.login FROM Users U WHERE U.login = '" + login + "' AND U.password = '" + password + "';";
-          List<List<String>> result = esql.executeQueryAndReturnResult(query);
+          String query = "SELECT U.login FROM Users U WHERE U.login = ? AND U.password = ?;";
+          List<List<String>> result = esql.executeQueryAndReturnResult(query, login, password);
 
           if (result.size() < 1) {
              System.out.println("\nIncorrect password. Please try again.\n");
@@ -1128,9 +1826,9 @@
              password = in.readLine();
           }
 
-          query = "UPDATE Users SET password = '" + password + "' WHERE login = '" + login + "';";
+          query = "UPDATE Users SET password = ? WHERE login = ?;";
 
-          esql.executeUpdate(query);
+          esql.executeUpdate(query, password, login);
 
           System.out.println("Password successfully updated!");
        }
@@ -1149,8 +1847,8 @@
           }
 
           String login = esql.getLogin();
-          String query = "SELECT U.login FROM Users U WHERE U.login = '" + login + "' AND U.password = '" + password + "';";
-          List<List<String>> result = esql.executeQueryAndReturnResult(query);
+          String query = "SELECT U.login FROM Users U WHERE U.login = ? AND U.password = ?;";
+          List<List<String>> result = esql.executeQueryAndReturnResult(query, login, password);
 
           if (result.size() < 1) {
              System.out.println("\nIncorrect password. Please try again.\n");
@@ -1164,9 +1862,10 @@
              phoneNum = in.readLine();
           }
 
-          query = "UPDATE Users SET phoneNum = '" + phoneNum + "' WHERE login = '" + login + "';";
+          query = "UPDATE Users SET phoneNum = ? WHERE login = ?;";
 
-          esql.executeUpdate(query);
+          esql.executeUpdate(query, phoneNum, login);
+          esql.userChanged(login, login);
 
           System.out.println("Phone number successfully updated!");
        }
@@ -1184,16 +1883,17 @@
              item = in.readLine();
           }
 
-          String query = "SELECT I.itemName FROM Items I WHERE I.itemName = '" + item + "';";
-          int rowCount = esql.executeQuery(query);
+          String query = "SELECT I.itemName FROM Items I WHERE I.itemName = ?;";
+          int rowCount = esql.executeQuery(query, item);
 
           if (rowCount < 1) {
-             System.out.println("\nItem not found. Please enter a valid item from the menu.\n");
+             System.out.println("\nItem not found. Please enter a valid item from the menu." + didYouMean(esql, item) + "\n");
              return;
           }
 
-          query = "UPDATE Users SET favoriteItems = '" + item + "' WHERE login = '" + esql.getLogin() + "';";
-          esql.executeUpdate(query);
+          query = "UPDATE Users SET favoriteItems = ? WHERE login = ?;";
+          esql.executeUpdate(query, item, esql.getLogin());
+          esql.userChanged(esql.getLogin(), esql.getLogin());
 
           System.out.println("Favorite item updated!");
        }
@@ -1216,8 +1916,8 @@
              return;
           }
 
-          String query = "SELECT U.login FROM Users U WHERE U.login = '" + login + "';";
-          int rowCount = esql.executeQuery(query);
+          String query = "SELECT U.login FROM Users U WHERE U.login = ?;";
+          int rowCount = esql.executeQuery(query, login);
 
           if (rowCount < 1) {
              System.out.println("\nUser was not found. Please enter a valid login.\n");
@@ -1231,8 +1931,9 @@
              newLogin = in.readLine();
           }
 
-          query = "UPDATE Users SET login = '" + newLogin + "' WHERE login = '" + login + "';";
-          esql.executeUpdate(query);
+          query = "UPDATE Users SET login = ? WHERE login = ?;";
+          esql.executeUpdate(query, newLogin, login);
+          esql.userChanged(login, newLogin);
 
           System.out.println("User login updated!");
        }
@@ -1255,8 +1956,8 @@
              return;
           }
 
-          String query = "SELECT U.login FROM Users U WHERE U.login = '" + login + "';";
-          int rowCount = esql.executeQuery(query);
+          String query = "SELECT U.login FROM Users U WHERE U.login = ?;";
+          int rowCount = esql.executeQuery(query, login);
 
           if (rowCount < 1) {
              System.out.println("\nLogin was not found. Please enter a valid login.\n");
@@ -1270,8 +1971,9 @@
              login = in.readLine();
           }
 
-          query = "UPDATE Users SET role = '" + role + "' WHERE login = '" + login + "';";
-          esql.executeUpdate(query);
+          query = "UPDATE Users SET role = ? WHERE login = ?;";
+          esql.executeUpdate(query, role, login);
+          esql.userChanged(login, login);
 
           System.out.println("User role updated!");
        }
@@ -1289,20 +1991,21 @@
              item = in.readLine();
           }
 
-          String query = "SELECT I.itemName FROM Items I WHERE I.itemName = '" + item + "';";
-          int rowCount = esql.executeQuery(query);
+          String query = "SELECT I.itemName FROM Items I WHERE I.itemName = ?;";
+          int rowCount = esql.executeQuery(query, item);
 
           if (rowCount < 1) {
              System.out.println("Item not found. Please try again.");
              return;
           }
 
-          System.out.print("Enter field to update: ");
+          System.out.print("Enter field to update (ingredients, typeOfItem, price, description): ");
           String field = in.readLine();
-          while (field == null || field.trim().isEmpty()) {
-             System.out.println("\nField cannot be empty. Please try again.");
+          while (field == null || !MENU_ITEM_FIELDS.contains(field.trim())) {
+             System.out.println("\nField must be one of ingredients, typeOfItem, price or description. Please try again.");
              field = in.readLine();
           }
+          field = field.trim();
 
           System.out.println("Enter updated information: ");
           String info = in.readLine();
@@ -1311,9 +2014,15 @@
              info = in.readLine();
           }
 
-          query = "UPDATE Item SET " + field + " = " + info + " WHERE itemName = '" + item + "';";
-
-          esql.executeUpdate(query);
+          // Column names cannot be bound, so field is checked against MENU_ITEM_FIELDS above.
+          if (field.equals("price")) {
+             query = "UPDATE Items SET price = ? WHERE itemName = ?;";
+             esql.executeUpdate(query, Double.parseDouble(info.trim()), item);
+          } else {
+             query = "UPDATE Items SET " + field + " = ? WHERE itemName = ?;";
+             esql.executeUpdate(query, info, item);
+          }
+          esql.getMenu().invalidate();
 
           System.out.println("Menu item updated!");
        }
@@ -1331,8 +2040,8 @@
              item = in.readLine();
           }
 
-          String query = "SELECT I.itemName FROM Items I WHERE I.itemName = '" + item + "';";
-          int rowCount = esql.executeQuery(query);
+          String query = "SELECT I.itemName FROM Items I WHERE I.itemName = ?;";
+          int rowCount = esql.executeQuery(query, item);
 
           if (rowCount >= 1) {
              System.out.println("Item already exists. Please try again.");
@@ -1363,9 +2072,10 @@
           System.out.print("Enter description: ");
           String description = in.readLine();
 
-          query = "INSERT INTO Items (itemName, ingredients, typeOfItem, price, description) VALUES ('" + item + "', '" + ingredients + "', '" + type + "', " + price + ", '" + description + "');";
+          query = "INSERT INTO Items (itemName, ingredients, typeOfItem, price, description) VALUES (?, ?, ?, ?, ?);";
 
-          esql.executeUpdate(query);
+          esql.executeUpdate(query, item, ingredients, type, price, description);
+          esql.getMenu().invalidate();
 
           System.out.println("Menu item added!");
        }
@@ -0,0 +1,582 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.io.BufferedReader;
+ import java.io.OutputStream;
+ import java.io.PrintStream;
+ import java.io.StringReader;
+ import java.lang.management.ManagementFactory;
+ import java.sql.SQLException;
+ import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.LinkedHashMap;
+ import java.util.List;
+ import java.util.Map;
+ import java.util.concurrent.Callable;
+ import java.util.function.Function;
+
+ /**
+  * Benchmarks for the PizzaStore data-access helpers and menu actions.
+  *
+  * Each benchmark runs an operation for a number of warm-up iterations and
+  * then for a number of measured iterations on the calling thread, and
+  * reports throughput, latency percentiles and allocation (bytes per
+  * operation and MB/s, measured with the HotSpot per-thread allocation
+  * counter).
+  *
+  * Menu actions are driven by replacing PizzaStore.in with a scripted
+  * reader; their console output is discarded while they are measured.
+  * The manager and driver actions run under a manager session.
+  *
+  * Everything runs in a BenchmarkSchema, loaded from DataGenerator CSV
+  * files at the scale set by the gen.* options and dropped afterwards, so
+  * the orders placed and updated never reach the database's own tables.
+  * The bench.schema, bench.tables, bench.data and bench.keepSchema options
+  * are described there. The helpers and menu actions can also be run
+  * under JMH with the benchmarks module; see Fixture.
+  *
+  * Options (-D on the java command line):
+  *   bench.only=text      only run benchmarks whose name contains text
+  *   bench.warmup=N       warm-up iterations per benchmark
+  *   bench.iterations=N   measured iterations per benchmark
+  *   bench.threads=N      concurrent callers in the status update benchmarks
+  *   bench.insertBatch=N  orders per operation in the batched insert benchmarks
+  *
+  */
+ public class PizzaStoreBenchmark {
+
+    static final int WARMUP_ITERATIONS = Integer.getInteger("bench.warmup", 200);
+    static final int MEASURED_ITERATIONS = Integer.getInteger("bench.iterations", 2000);
+    static final String ONLY = System.getProperty("bench.only", "");
+    static final int THREADS = Integer.getInteger("bench.threads", 16);
+
+    // orders written per operation by the batched order insert benchmarks.
+    static final int INSERT_BATCH = Integer.getInteger("bench.insertBatch", 100);
+
+    // rows written per operation by the executeBatchUpdate benchmark.
+    static final int BATCH_ROWS = 10;
+
+    // rows read per operation by the row mapping benchmarks.
+    static final int MAPPING_ROWS = Integer.getInteger("bench.mappingRows", 1000);
+
+    // results go to the real standard out even while menu output is discarded.
+    static final PrintStream REPORT = System.out;
+    static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+       public void write(int b) { }
+       public void write(byte[] b, int off, int len) { }
+    });
+
+    /**
+     * One benchmarked unit of work.
+     */
+    interface Operation {
+       void run() throws Exception;
+    }
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <dbname> <port> <user>
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length != 3) {
+          System.err.println (
+             "Usage: " +
+             "java [-classpath <classpath>] [-Dgen.orders=N] [-Dbench.iterations=N] " +
+             PizzaStoreBenchmark.class.getName () +
+             " <dbname> <port> <user>");
+          return;
+       }//end if
+
+       Class.forName ("org.postgresql.Driver");
+       try (BenchmarkSchema schema = BenchmarkSchema.prepare(args[0], args[1], args[2])) {
+          final PizzaStore esql = new PizzaStore (schema.dbname(), args[1], args[2], "");
+          try {
+             printHeader();
+             benchmarkHelpers(esql);
+             benchmarkStatusUpdates(esql);
+             benchmarkOrderInserts(esql);
+             benchmarkRowMapping(esql);
+             benchmarkMenuActions(esql);
+             REPORT.println(esql.getPoolStats());
+             REPORT.println(esql.getStatusPipeline().stats());
+             REPORT.print(esql.getMetrics().dump());
+          } finally {
+             esql.cleanup();
+          }
+       }
+    }//end main
+
+    /*
+     * One benchmark per query helper. The read helpers each read a single
+     * customer's recent orders so they are comparable; the write helpers
+     * make no-op updates.
+     */
+    static void benchmarkHelpers(final PizzaStore esql) throws Exception {
+       for (Map.Entry<String, Operation> helper : helperOperations(esql, sampleLogin(esql)).entrySet()) {
+          measure(helper.getKey(), 0, helper.getValue());
+       }
+    }//end benchmarkHelpers
+
+    static Map<String, Operation> helperOperations(final PizzaStore esql, final String login) throws Exception {
+       final String query = PizzaStore.RECENT_ORDER_IDS_QUERY;
+       final List<Object[]> batchLogins = new ArrayList<Object[]>();
+       for (List<String> row : esql.executeQueryAndReturnResult(
+             "SELECT U.login FROM Users U ORDER BY U.login LIMIT ?;", BATCH_ROWS)) {
+          batchLogins.add(new Object[] { row.get(0).trim() });
+       }
+       Map<String, Operation> helpers = new LinkedHashMap<String, Operation>();
+
+       helpers.put("executeQuery", new Operation() {
+          public void run() throws Exception {
+             esql.executeQuery(query, login);
+          }
+       });
+       helpers.put("executeQueryAndReturnResult", new Operation() {
+          public void run() throws Exception {
+             esql.executeQueryAndReturnResult(query, login);
+          }
+       });
+       helpers.put("executeQueryAndPrintResult", new Operation() {
+          public void run() throws Exception {
+             System.setOut(DISCARD);
+             try {
+                esql.executeQueryAndPrintResult(query, login);
+             } finally {
+                System.setOut(REPORT);
+             }
+          }
+       });
+       helpers.put("executeQueryAndMap", new Operation() {
+          public void run() throws Exception {
+             esql.executeQueryAndMap(PizzaStore.orderPageQuery(true, false), FoodOrder.MAPPER, login, 5);
+          }
+       });
+       helpers.put("executeQueryAndStream", new Operation() {
+          public void run() throws Exception {
+             esql.executeQueryAndStream(query, rs -> rs.getInt(1), login);
+          }
+       });
+       helpers.put("executeUpdate", new Operation() {
+          public void run() throws Exception {
+             // a no-op write, so the benchmark does not change the data
+             esql.executeUpdate("UPDATE Users SET phoneNum = phoneNum WHERE login = ?;", login);
+          }
+       });
+       helpers.put("executeBatchUpdate", new Operation() {
+          public void run() throws Exception {
+             // the same no-op write for BATCH_ROWS customers in one batch
+             esql.executeBatchUpdate("UPDATE Users SET phoneNum = phoneNum WHERE login = ?;", batchLogins);
+          }
+       });
+       helpers.put("getCurrSeqVal", new Operation() {
+          public void run() throws Exception {
+             try {
+                esql.getCurrSeqVal("orderID_seq");
+             } catch (SQLException e) {
+                // currval is per session: draw once on a connection that has
+                // not used the sequence yet, which the next call then reuses
+                if (!"55000".equals(e.getSQLState())) {
+                   throw e;
+                }
+                esql.executeQuery("SELECT nextval('orderID_seq');");
+             }
+          }
+       });
+       return helpers;
+    }//end helperOperations
+
+    /*
+     * Flips the status of the newest orders from THREADS concurrent
+     * callers, once with one autocommitted UPDATE per change and once
+     * through the store's OrderStatusPipeline.
+     */
+    static void benchmarkStatusUpdates(final PizzaStore esql) throws Exception {
+       List<List<String>> rows = esql.executeQueryAndReturnResult(
+          "SELECT F.orderID FROM FoodOrder F ORDER BY F.orderID DESC LIMIT 1000;");
+       if (rows.isEmpty()) {
+          REPORT.println("(status update benchmarks need orders; set gen.orders)");
+          return;
+       }
+       final int[] orderIDs = new int[rows.size()];
+       for (int i = 0; i < orderIDs.length; ++i) {
+          orderIDs[i] = Integer.parseInt(rows.get(i).get(0).trim());
+       }
+
+       measureConcurrent("updateOrderStatus direct x" + THREADS + " threads", orderIDs, new StatusUpdate() {
+          public void run(int orderID, String orderStatus) throws Exception {
+             esql.executeUpdate(OrderStatusPipeline.UPDATE_QUERY, orderStatus, orderID);
+          }
+       });
+       measureConcurrent("updateOrderStatus pipeline x" + THREADS + " threads", orderIDs, new StatusUpdate() {
+          public void run(int orderID, String orderStatus) throws Exception {
+             esql.getStatusPipeline().submit(orderID, orderStatus);
+          }
+       });
+    }//end benchmarkStatusUpdates
+
+    /*
+     * Inserts orders with IDs from the orderID_trigger, read back
+     * with RETURNING, and with IDs from the OrderIdAllocator, one at a time
+     * and in batches of INSERT_BATCH.
+     */
+    static void benchmarkOrderInserts(final PizzaStore esql) throws Exception {
+       List<List<String>> store = esql.executeQueryAndReturnResult("SELECT S.storeID FROM Store S ORDER BY S.storeID LIMIT 1;");
+       if (store.isEmpty()) {
+          REPORT.println("(order insert benchmarks need a store)");
+          return;
+       }
+       final int storeID = Integer.parseInt(store.get(0).get(0).trim());
+       final String login = sampleLogin(esql);
+       final String triggerInsert =
+          "INSERT INTO FoodOrder (login, storeID, totalPrice, orderTimestamp, orderStatus) "
+          + "VALUES (?, ?, 9.99, NOW(), 'completed') RETURNING orderID;";
+       final String allocatorInsert =
+          "INSERT INTO FoodOrder (orderID, login, storeID, totalPrice, orderTimestamp, orderStatus) "
+          + "VALUES (?, ?, ?, 9.99, NOW(), 'completed');";
+
+       measure("insert order, trigger + RETURNING", 1, new Operation() {
+          public void run() throws Exception {
+             esql.executeQueryAndReturnResult(triggerInsert, login, storeID);
+          }
+       });
+       measure("insert order, allocator", 1, new Operation() {
+          public void run() throws Exception {
+             esql.executeUpdate(allocatorInsert, esql.getOrderIds().next(), login, storeID);
+          }
+       });
+       measure("insert " + INSERT_BATCH + " orders, trigger + RETURNING", INSERT_BATCH, new Operation() {
+          public void run() throws Exception {
+             // RETURNING needs a round-trip per row, so these cannot be batched
+             for (int i = 0; i < INSERT_BATCH; ++i) {
+                esql.executeQueryAndReturnResult(triggerInsert, login, storeID);
+             }
+          }
+       });
+       measure("insert " + INSERT_BATCH + " orders, allocator batch", INSERT_BATCH, new Operation() {
+          public void run() throws Exception {
+             List<Object[]> rows = new ArrayList<Object[]>(INSERT_BATCH);
+             for (int orderID : esql.getOrderIds().next(INSERT_BATCH)) {
+                rows.add(new Object[] { orderID, login, storeID });
+             }
+             esql.executeBatchUpdate(allocatorInsert, rows);
+          }
+       });
+       REPORT.println(esql.getOrderIds().stats());
+    }//end benchmarkOrderInserts
+
+    interface StatusUpdate {
+       void run(int orderID, String orderStatus) throws Exception;
+    }
+
+    /*
+     * Runs MEASURED_ITERATIONS updates on each of THREADS threads and prints
+     * aggregate throughput and the latency percentiles of all callers.
+     */
+    static void measureConcurrent(String name, final int[] orderIDs, final StatusUpdate update) throws Exception {
+       if (!name.contains(ONLY)) {
+          return;
+       }
+
+       final long[][] latencies = new long[THREADS][MEASURED_ITERATIONS];
+       final Exception[] failure = new Exception[1];
+       Thread[] workers = new Thread[THREADS];
+       long start = System.nanoTime();
+       for (int t = 0; t < THREADS; ++t) {
+          final int thread = t;
+          workers[t] = new Thread(() -> {
+             try {
+                for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+                   int orderID = orderIDs[(thread * 31 + i) % orderIDs.length];
+                   long t0 = System.nanoTime();
+                   update.run(orderID, i % 2 == 0 ? "completed" : "incomplete");
+                   latencies[thread][i] = System.nanoTime() - t0;
+                }
+             } catch (Exception e) {
+                synchronized (failure) {
+                   failure[0] = e;
+                }
+             }
+          });
+          workers[t].start();
+       }
+       for (Thread worker : workers) {
+          worker.join();
+       }
+       long elapsed = System.nanoTime() - start;
+       if (failure[0] != null) {
+          throw failure[0];
+       }
+
+       long[] all = new long[THREADS * MEASURED_ITERATIONS];
+       for (int t = 0; t < THREADS; ++t) {
+          System.arraycopy(latencies[t], 0, all, t * MEASURED_ITERATIONS, MEASURED_ITERATIONS);
+       }
+       Arrays.sort(all);
+       REPORT.println(String.format("%-48s %12.1f %10.1f %10.1f %10.1f %14s %10s %12s",
+          name,
+          all.length / (elapsed / 1e9),
+          percentile(all, 0.50) / 1e3,
+          percentile(all, 0.99) / 1e3,
+          all[all.length - 1] / 1e3,
+          "-", "-", "-"));
+    }//end measureConcurrent
+
+    /*
+     * Reads the same FoodOrder rows as List<List<String>> and as typed
+     * FoodOrder records, to compare allocation per row.
+     */
+    static void benchmarkRowMapping(final PizzaStore esql) throws Exception {
+       final String query = "SELECT * FROM FoodOrder F ORDER BY F.orderID LIMIT ?;";
+
+       measure("FoodOrder x" + MAPPING_ROWS + " as List<List<String>>", MAPPING_ROWS, new Operation() {
+          public void run() throws Exception {
+             List<List<String>> rows = esql.executeQueryAndReturnResult(query, MAPPING_ROWS);
+             for (List<String> row : rows) {
+                // what callers did with the strings before typed records
+                PizzaStore.parseIntOr(row.get(0), -1);
+                PizzaStore.parseDoubleOr(row.get(3), 0.0);
+             }
+          }
+       });
+
+       measure("FoodOrder x" + MAPPING_ROWS + " as FoodOrder.MAPPER", MAPPING_ROWS, new Operation() {
+          public void run() throws Exception {
+             List<FoodOrder> rows = esql.executeQueryAndMap(query, FoodOrder.MAPPER, MAPPING_ROWS);
+             for (FoodOrder row : rows) {
+                row.getOrderID();
+                row.getTotalPrice();
+             }
+          }
+       });
+    }//end benchmarkRowMapping
+
+    /*
+     * Runs the customer menu actions end to end with scripted input.
+     */
+    static void benchmarkMenuActions(final PizzaStore esql) throws Exception {
+       String login = sampleLogin(esql);
+       esql.setSession(new SessionUser(login, "customer", "0000000000", null));
+       try {
+          for (Map.Entry<String, Operation> action : menuOperations(esql, login).entrySet()) {
+             measure(action.getKey(), 0, action.getValue());
+          }
+       } finally {
+          esql.setSession(null);
+       }
+    }//end benchmarkMenuActions
+
+    /*
+     * The menu actions, to be run with login's customer session set. The
+     * manager actions switch to a manager session for the call, and their
+     * scripted input writes back values the rows already hold.
+     */
+    static Map<String, Operation> menuOperations(final PizzaStore esql, String login) throws Exception {
+       List<List<String>> store = esql.executeQueryAndReturnResult("SELECT S.storeID FROM Store S ORDER BY S.storeID LIMIT 1;");
+       List<List<String>> item = esql.executeQueryAndReturnResult("SELECT I.itemName, I.price FROM Items I ORDER BY I.itemName LIMIT 1;");
+       List<List<String>> order = esql.executeQueryAndReturnResult("SELECT F.orderID FROM FoodOrder F WHERE F.login = ? LIMIT 1;", login);
+       List<List<String>> user = esql.executeQueryAndReturnResult("SELECT U.password, U.phoneNum FROM Users U WHERE U.login = ?;", login);
+       List<List<String>> other = esql.executeQueryAndReturnResult(
+          "SELECT U.login, U.role FROM Users U WHERE U.login <> ? ORDER BY U.login LIMIT 1;", login);
+       String storeID = store.isEmpty() ? "0" : store.get(0).get(0);
+       String itemName = item.isEmpty() ? "none" : item.get(0).get(0);
+       String price = item.isEmpty() ? "0" : item.get(0).get(1).trim();
+       String orderID = order.isEmpty() ? "0" : order.get(0).get(0);
+       String password = user.isEmpty() ? "none" : user.get(0).get(0).trim();
+       // updatePhoneNumber asks again until it gets 10 digits, and would spin on the end of the script
+       String phoneNum = user.isEmpty() ? "" : user.get(0).get(1).replaceAll("\\D", "");
+       if (phoneNum.length() != 10) {
+          phoneNum = "0000000000";
+       }
+       String otherLogin = other.isEmpty() ? "none" : other.get(0).get(0).trim();
+       String otherRole = other.isEmpty() ? "customer" : other.get(0).get(1).trim();
+
+       Map<String, Operation> actions = new LinkedHashMap<String, Operation>();
+       actions.put("menu: viewMenu", menuAction(esql, "all\n0\n1\n", PizzaStore::viewMenu));
+       actions.put("menu: viewStores", menuAction(esql, "", PizzaStore::viewStores));
+       actions.put("menu: viewRecentOrders", menuAction(esql, "", PizzaStore::viewRecentOrders));
+       actions.put("menu: viewAllOrders", menuAction(esql, "q\n", PizzaStore::viewAllOrders));
+       actions.put("menu: viewOrderInfo", menuAction(esql, orderID + "\n", PizzaStore::viewOrderInfo));
+       actions.put("menu: placeOrder", menuAction(esql, storeID + "\n" + itemName + "\n1\ndone\n", PizzaStore::placeOrder));
+       actions.put("menu: viewProfile", menuAction(esql, "", PizzaStore::viewProfile));
+       actions.put("menu: updateProfile", menuAction(esql, "2\n" + password + "\n" + phoneNum + "\n", PizzaStore::updateProfile));
+       actions.put("menu: updateOrderStatus", asManager(esql, login,
+          menuAction(esql, orderID + "\n1\n", PizzaStore::updateOrderStatus)));
+       actions.put("menu: updateMenu", asManager(esql, login,
+          menuAction(esql, "1\n" + itemName + "\nprice\n" + price + "\n", PizzaStore::updateMenu)));
+       actions.put("menu: updateUser", asManager(esql, login,
+          menuAction(esql, "2\n" + otherLogin + "\n" + otherRole + "\n", PizzaStore::updateUser)));
+       return actions;
+    }//end menuOperations
+
+    /**
+     * A console menu action, i.e. one of the PizzaStore static methods.
+     */
+    interface MenuAction {
+       void run(PizzaStore esql) throws Exception;
+    }
+
+    static Operation menuAction(final PizzaStore esql, final String input, final MenuAction action) {
+       return new Operation() {
+          public void run() throws Exception {
+             PizzaStore.in = new BufferedReader(new StringReader(input));
+             System.setOut(DISCARD);
+             try {
+                action.run(esql);
+             } finally {
+                System.setOut(REPORT);
+             }
+          }
+       };
+    }//end menuAction
+
+    /*
+     * Runs op with a manager session for login, then restores the session.
+     */
+    static Operation asManager(final PizzaStore esql, final String login, final Operation op) {
+       return new Operation() {
+          public void run() throws Exception {
+             SessionUser previous = esql.getSession();
+             esql.setSession(new SessionUser(login, "manager", "0000000000", null));
+             try {
+                op.run();
+             } finally {
+                esql.setSession(previous);
+             }
+          }
+       };
+    }//end asManager
+
+    /**
+     * The helper and menu action benchmarks for an external harness such
+     * as JMH, which reaches them through the JDK interfaces because its
+     * benchmark classes cannot live in the default package: apply() returns
+     * the named operation as a Callable, and close() releases the store.
+     *
+     * The BenchmarkSchema must already exist; open it with
+     * BenchmarkSchema.prepare() and bench.keepSchema, or as the benchmarks
+     * module's runner does.
+     */
+    public static class Fixture implements Function<String, Callable<Object>>, AutoCloseable {
+
+       private final PizzaStore _esql;
+       private final Map<String, Operation> _operations = new LinkedHashMap<String, Operation>();
+
+       public Fixture(String dbname, String dbport, String user) throws Exception {
+          Class.forName ("org.postgresql.Driver");
+          BenchmarkSchema schema = new BenchmarkSchema(dbname, dbport, user, BenchmarkSchema.SCHEMA);
+          if (!schema.exists()) {
+             throw new IllegalStateException("No benchmark schema " + BenchmarkSchema.SCHEMA + " in " + dbname);
+          }
+          _esql = new PizzaStore(schema.dbname(), dbport, user, "");
+          try {
+             String login = sampleLogin(_esql);
+             _operations.putAll(helperOperations(_esql, login));
+             _operations.putAll(menuOperations(_esql, login));
+             _esql.setSession(new SessionUser(login, "customer", "0000000000", null));
+          } catch (Exception e) {
+             _esql.cleanup();
+             throw e;
+          }
+       }
+
+       /**
+        * @param name a helper name such as "executeQuery", or a menu action
+        *        such as "menu: placeOrder"
+        */
+       public Callable<Object> apply(String name) {
+          final Operation op = _operations.get(name);
+          if (op == null) {
+             throw new IllegalArgumentException("No benchmark operation " + name + "; expected one of " + _operations.keySet());
+          }
+          return () -> {
+             op.run();
+             return null;
+          };
+       }
+
+       public void close() {
+          _esql.setSession(null);
+          _esql.cleanup();
+       }
+    }//end Fixture
+
+    /*
+     * Returns the login of the customer with the newest order.
+     */
+    static String sampleLogin(PizzaStore esql) throws Exception {
+       List<List<String>> result = esql.executeQueryAndReturnResult(
+          "SELECT F.login FROM FoodOrder F ORDER BY F.orderID DESC LIMIT 1;");
+       if (result.isEmpty()) {
+          throw new IllegalStateException("The benchmarks need orders; set gen.orders");
+       }
+       return result.get(0).get(0).trim();
+    }
+
+    static void printHeader() {
+       REPORT.println(String.format("%-48s %12s %10s %10s %10s %14s %10s %12s",
+          "benchmark", "ops/s", "p50 us", "p99 us", "max us", "bytes/op", "MB/s", "bytes/row"));
+    }
+
+    /**
+     * Runs op WARMUP_ITERATIONS times, then MEASURED_ITERATIONS times while
+     * recording latency and allocation, and prints one result line.
+     * Benchmarks whose name does not contain bench.only are skipped.
+     *
+     * @param name the label printed for the benchmark
+     * @param rowsPerOp rows each operation reads, for the bytes/row column;
+     *        0 when not applicable
+     * @param op the operation to measure
+     */
+    static void measure(String name, int rowsPerOp, Operation op) throws Exception {
+       if (!name.contains(ONLY)) {
+          return;
+       }
+
+       com.sun.management.ThreadMXBean threads =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+       long threadId = Thread.currentThread().getId();
+
+       for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+          op.run();
+       }
+
+       long[] latencies = new long[MEASURED_ITERATIONS];
+       long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+       long start = System.nanoTime();
+       for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+          long t0 = System.nanoTime();
+          op.run();
+          latencies[i] = System.nanoTime() - t0;
+       }
+       long elapsed = System.nanoTime() - start;
+       long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+       Arrays.sort(latencies);
+       double seconds = elapsed / 1e9;
+       double bytesPerOp = (double) allocated / MEASURED_ITERATIONS;
+       REPORT.println(String.format("%-48s %12.1f %10.1f %10.1f %10.1f %14.0f %10.1f %12s",
+          name,
+          MEASURED_ITERATIONS / seconds,
+          percentile(latencies, 0.50) / 1e3,
+          percentile(latencies, 0.99) / 1e3,
+          latencies[latencies.length - 1] / 1e3,
+          bytesPerOp,
+          allocated / seconds / (1024 * 1024),
+          rowsPerOp > 0 ? String.format("%.1f", bytesPerOp / rowsPerOp) : "-"));
+    }//end measure
+
+    static long percentile(long[] sorted, double p) {
+       int index = (int) Math.ceil(p * sorted.length) - 1;
+       return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+ }//end PizzaStoreBenchmark
@@ -0,0 +1,784 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import com.sun.net.httpserver.HttpExchange;
+ import com.sun.net.httpserver.HttpServer;
+ import java.io.IOException;
+ import java.io.InputStream;
+ import java.io.StringWriter;
+ import java.io.ByteArrayOutputStream;
+ import java.net.InetSocketAddress;
+ import java.net.URLDecoder;
+ import java.nio.charset.StandardCharsets;
+ import java.sql.SQLDataException;
+ import java.sql.SQLException;
+ import java.sql.SQLTransientException;
+ import java.sql.Timestamp;
+ import java.util.ArrayList;
+ import java.util.HashMap;
+ import java.util.LinkedHashMap;
+ import java.util.List;
+ import java.util.Map;
+ import java.util.UUID;
+ import java.util.concurrent.ConcurrentHashMap;
+ import java.util.concurrent.ExecutorService;
+ import java.util.concurrent.Executors;
+
+ /**
+  * Serves the store operations as JSON over HTTP with the JDK's built-in
+  * HttpServer.
+  *
+  * Each request runs on its own virtual thread when the JVM supports them
+  * (Java 21 and later) and on a cached platform thread otherwise, so the
+  * handlers can use the ordinary blocking PizzaStore helpers. Responses
+  * are built in memory and sent once the handler is done: the pooled
+  * connection is back in the pool before a slow client reads anything,
+  * and a query that fails still gets an error status. List endpoints are
+  * capped (MAX_PAGE_SIZE, MAX_LIST_ROWS) to bound that buffer.
+  *
+  * Endpoints (parameters in the query string or a form-encoded body):
+  *   POST /login                login, password -> token
+  *   POST /logout
+  *   GET  /menu                 [type] [maxPrice] [order=asc|desc]
+  *   GET  /menu/search          q [limit] -> items, didYouMean
+  *   GET  /stores
+  *   GET  /orders               [login] [afterTimestamp afterID] [limit]
+  *   GET  /orders/recent        [login] [n]
+  *   GET  /orders/{id}          with store and line items
+  *   POST /orders               storeID, item=name:quantity (repeated)
+  *   POST /orders/{id}/status   completed=true|false
+  *   GET  /metrics              latency table as plain text (managers only)
+  *   POST /reports/refresh      brings the sales rollups up to date (managers only)
+  *   GET  /reports/stores       [days] [storeID] per-store sales (managers only)
+  *   GET  /reports/sales        [days] [storeID] [granularity=day|hour] (managers only)
+  *   GET  /reports/items        [days] [storeID] [limit] top items (managers only)
+  *
+  * All endpoints but /login need an "Authorization: Bearer <token>"
+  * header. Tokens expire after sessionIdleMillis without use; the user's
+  * role is re-read every sessionRecheckMillis, and on the next request
+  * when this process changes the user. Customers only see their own orders;
+  * changing an order's status needs a manager or driver.
+  *
+  */
+ public class PizzaStoreHttpServer {
+
+    static final int DEFAULT_HTTP_PORT = 8080;
+    static final int BACKLOG = Integer.getInteger("pizzastore.http.backlog", 1024);
+    static final int MAX_PAGE_SIZE = 500;
+    static final int MAX_LIST_ROWS = Integer.getInteger("pizzastore.http.maxListRows", 10000);
+    static final int MAX_BODY_BYTES = Integer.getInteger("pizzastore.http.maxBodyBytes", 65536);
+
+    // sessions unused this long are dropped; at most MAX_SESSIONS are kept.
+    static final long SESSION_IDLE_MILLIS = Long.getLong("pizzastore.http.sessionIdleMillis", 1800000L);
+    static final long SESSION_RECHECK_MILLIS = Long.getLong("pizzastore.http.sessionRecheckMillis", 60000L);
+    static final int MAX_SESSIONS = Integer.getInteger("pizzastore.http.maxSessions", 100000);
+
+    // the response of the exchange this thread is handling, built by beginJson
+    // and sent by respond. Not an exchange attribute: before Java 21 those are
+    // shared by every exchange of the context and reject null.
+    private static final ThreadLocal<Response> PENDING_RESPONSE = new ThreadLocal<Response>();
+
+    private final PizzaStore _esql;
+    private final PizzaStoreService _service;
+    private final HttpServer _server;
+    private final ExecutorService _executor;
+
+    // logged-in users by bearer token.
+    private final ConcurrentHashMap<String, Session> _sessions = new ConcurrentHashMap<String, Session>();
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <dbname> <port> <user> [http port]
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length != 3 && args.length != 4) {
+          System.err.println (
+             "Usage: " +
+             "java [-classpath <classpath>] " +
+             PizzaStoreHttpServer.class.getName () +
+             " <dbname> <port> <user> [http port]");
+          return;
+       }//end if
+
+       Class.forName ("org.postgresql.Driver");
+       final PizzaStore esql = new PizzaStore (args[0], args[1], args[2], "");
+       int httpPort = args.length == 4 ? Integer.parseInt(args[3]) : DEFAULT_HTTP_PORT;
+
+       final PizzaStoreHttpServer server = new PizzaStoreHttpServer(esql, httpPort);
+       Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          server.stop();
+          esql.cleanup();
+       }));
+       server.start();
+       System.out.println("Listening on http://localhost:" + httpPort + "/");
+    }//end main
+
+    public PizzaStoreHttpServer(PizzaStore esql, int port) throws IOException {
+       _esql = esql;
+       _service = esql.getService();
+       _executor = newRequestExecutor();
+       _server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+       _server.createContext("/", this::handle);
+       _server.setExecutor(_executor);
+       esql.addUserListener(this::userChanged);
+    }
+
+    public void start() {
+       _server.start();
+    }
+
+    public void stop() {
+       _server.stop(1);
+       _executor.shutdown();
+    }
+
+    /*
+     * Returns a virtual-thread-per-task executor where available. It is
+     * looked up reflectively so the class still builds and runs on Java 17.
+     */
+    static ExecutorService newRequestExecutor() {
+       try {
+          return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+       } catch (ReflectiveOperationException e) {
+          return Executors.newCachedThreadPool();
+       }
+    }
+
+    private void handle(HttpExchange exchange) {
+       try {
+          Map<String, List<String>> params = readParams(exchange);
+          route(exchange, exchange.getRequestMethod(), exchange.getRequestURI().getPath(), params);
+          respond(exchange);
+       } catch (HttpError e) {
+          sendError(exchange, e.status, e.getMessage());
+       } catch (SQLTransientException e) {
+          // e.g. no pooled connection came free in time.
+          sendError(exchange, 503, e.getMessage());
+       } catch (Exception e) {
+          sendError(exchange, 500, e.getMessage());
+       } finally {
+          // request threads may be pooled
+          PENDING_RESPONSE.remove();
+          exchange.close();
+       }
+    }//end handle
+
+    private void route(HttpExchange exchange, String method, String path,
+                       Map<String, List<String>> params) throws Exception {
+       String[] parts = path.replaceAll("^/+|/+$", "").split("/");
+
+       if (method.equals("POST") && path.equals("/login")) {
+          logIn(exchange, params);
+          return;
+       }
+
+       SessionUser user = authenticate(exchange);
+       ReplicaRouter.Scope acting = ReplicaRouter.actingAs(user.getLogin());
+       try {
+          dispatch(exchange, method, path, parts, user, params);
+       } finally {
+          acting.close();
+       }
+    }//end route
+
+    private void dispatch(HttpExchange exchange, String method, String path, String[] parts,
+                          SessionUser user, Map<String, List<String>> params) throws Exception {
+       if (method.equals("POST") && path.equals("/logout")) {
+          _sessions.remove(bearerToken(exchange));
+          sendEmpty(exchange);
+       } else if (method.equals("GET") && path.equals("/menu")) {
+          menu(exchange, params);
+       } else if (method.equals("GET") && path.equals("/menu/search")) {
+          searchMenu(exchange, params);
+       } else if (method.equals("GET") && path.equals("/metrics")) {
+          metrics(exchange, user);
+       } else if (parts.length == 2 && parts[0].equals("reports")) {
+          reports(exchange, method, parts[1], user, params);
+       } else if (method.equals("GET") && path.equals("/stores")) {
+          stores(exchange);
+       } else if (method.equals("GET") && path.equals("/orders")) {
+          orders(exchange, user, params);
+       } else if (method.equals("GET") && path.equals("/orders/recent")) {
+          recentOrders(exchange, user, params);
+       } else if (method.equals("POST") && path.equals("/orders")) {
+          placeOrder(exchange, user, params);
+       } else if (method.equals("GET") && parts.length == 2 && parts[0].equals("orders")) {
+          order(exchange, user, parseInt(parts[1], "order ID"));
+       } else if (method.equals("POST") && parts.length == 3 && parts[0].equals("orders") && parts[2].equals("status")) {
+          orderStatus(exchange, user, parseInt(parts[1], "order ID"), params);
+       } else {
+          throw new HttpError(404, "No such endpoint: " + method + " " + path);
+       }
+    }//end dispatch
+
+    private void logIn(HttpExchange exchange, Map<String, List<String>> params) throws Exception {
+       SessionUser user = _service.logIn(required(params, "login"), required(params, "password"));
+       if (user == null) {
+          throw new HttpError(401, "A user with the specific login and password does not exist.");
+       }
+
+       if (_sessions.size() >= MAX_SESSIONS) {
+          expireSessions();
+          if (_sessions.size() >= MAX_SESSIONS) {
+             throw new HttpError(503, "Too many sessions; try again later.");
+          }
+       }
+       String token = UUID.randomUUID().toString();
+       _sessions.put(token, new Session(user));
+
+       JsonWriter json = beginJson(exchange);
+       json.beginObject()
+          .name("token").value(token)
+          .name("login").value(user.getLogin())
+          .name("role").value(user.getRole())
+          .endObject();
+       json.flush();
+    }//end logIn
+
+    private void menu(HttpExchange exchange, Map<String, List<String>> params) throws Exception {
+       String type = optional(params, "type");
+       String maxPrice = optional(params, "maxPrice");
+       String order = optional(params, "order");
+       List<Item> items = _service.findMenu(type == null || type.equals("all") ? null : type,
+          maxPrice == null ? 0 : parseDouble(maxPrice, "maxPrice"), !"desc".equals(order));
+
+       JsonWriter json = beginJson(exchange);
+       json.beginArray();
+       for (Item item : items) {
+          json.beginObject()
+             .name("itemName").value(item.getItemName())
+             .name("typeOfItem").value(item.getTypeOfItem().trim())
+             .name("price").value(item.getPrice())
+             .name("description").value(item.getDescription())
+             .name("ingredients").value(item.getIngredients())
+             .endObject();
+       }
+       json.endArray();
+       json.flush();
+    }//end menu
+
+    private void searchMenu(HttpExchange exchange, Map<String, List<String>> params) throws Exception {
+       String query = required(params, "q");
+       List<Item> items = _service.searchMenu(query, parseLimit(params, "limit", PizzaStore.MENU_SEARCH_LIMIT));
+       List<String> suggestions = items.isEmpty()
+          ? _service.suggestItems(query, PizzaStore.MENU_SUGGESTIONS) : new ArrayList<String>();
+
+       JsonWriter json = beginJson(exchange);
+       json.beginObject().name("items").beginArray();
+       for (Item item : items) {
+          json.beginObject()
+             .name("itemName").value(item.getItemName())
+             .name("typeOfItem").value(item.getTypeOfItem().trim())
+             .name("price").value(item.getPrice())
+             .name("description").value(item.getDescription())
+             .name("ingredients").value(item.getIngredients())
+             .endObject();
+       }
+       json.endArray().name("didYouMean").beginArray();
+       for (String name : suggestions) {
+          json.value(name);
+       }
+       json.endArray().endObject();
+       json.flush();
+    }//end searchMenu
+
+    private void metrics(HttpExchange exchange, SessionUser user) throws Exception {
+       if (!user.isManager()) {
+          throw new HttpError(403, "Insufficient privileges.");
+       }
+       byte[] body = (_esql.getMetrics().dump() + _esql.getPoolStats() + "\n"
+          + _esql.getStatusPipeline().stats() + "\n").getBytes(StandardCharsets.UTF_8);
+       exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+       exchange.sendResponseHeaders(200, body.length);
+       exchange.getResponseBody().write(body);
+    }//end metrics
+
+    private void reports(HttpExchange exchange, String method, String report, SessionUser user,
+                         Map<String, List<String>> params) throws Exception {
+       if (!user.isManager()) {
+          throw new HttpError(403, "Insufficient privileges.");
+       }
+       if (method.equals("POST") && report.equals("refresh")) {
+          String summary = _service.refreshSalesReports();
+          JsonWriter json = beginJson(exchange);
+          json.beginObject()
+             .name("summary").value(summary)
+             .name("refreshedThrough").value(_esql.getReports().refreshedThrough())
+             .endObject();
+          json.flush();
+          return;
+       }
+       if (!method.equals("GET") || !(report.equals("stores") || report.equals("sales") || report.equals("items"))) {
+          throw new HttpError(404, "No such endpoint: " + method + " /reports/" + report);
+       }
+
+       String days = optional(params, "days");
+       String store = optional(params, "storeID");
+       int dayCount = days == null ? 7 : parseInt(days, "days");
+       int storeID = store == null ? 0 : parseInt(store, "storeID");
+       int itemLimit = parseLimit(params, "limit", 10);
+       if (dayCount < 1) {
+          throw new HttpError(400, "days must be at least 1");
+       }
+
+       JsonWriter json = beginJson(exchange);
+       json.beginObject().name("refreshedThrough").value(_esql.getReports().refreshedThrough());
+       if (report.equals("stores") || report.equals("sales")) {
+          boolean hourly = "hour".equals(optional(params, "granularity"));
+          List<StoreSales> rows = report.equals("stores") ? _service.storeSales(dayCount, storeID)
+             : _service.periodSales(dayCount, storeID, hourly);
+          json.name(report).beginArray();
+          for (StoreSales sales : rows) {
+             json.beginObject();
+             if (sales.getPeriod() != null) {
+                json.name("period").value(sales.getPeriod().toString());
+             } else {
+                json.name("storeID").value(sales.getStoreID());
+             }
+             json.name("orderCount").value(sales.getOrderCount())
+                .name("completedCount").value(sales.getCompletedCount())
+                .name("revenue").value(sales.getRevenue())
+                .name("itemCount").value(sales.getItemCount())
+                .name("averageBasket").value(sales.getAverageBasket())
+                .name("completionRate").value(sales.getCompletionRate())
+                .endObject();
+          }
+          json.endArray();
+       } else {
+          json.name("items").beginArray();
+          for (ItemSales item : _service.topItems(dayCount, storeID, itemLimit)) {
+             json.beginObject()
+                .name("itemName").value(item.getItemName())
+                .name("quantity").value(item.getQuantity())
+                .name("orderCount").value(item.getOrderCount())
+                .endObject();
+          }
+          json.endArray();
+       }
+       json.endObject();
+       json.flush();
+    }//end reports
+
+    private void stores(HttpExchange exchange) throws Exception {
+       final JsonWriter json = beginJson(exchange);
+       json.beginArray();
+       _esql.executeQueryAndStream("SELECT S.storeID, S.address, S.city, S.state, S.isOpen, S.reviewScore FROM Store S ORDER BY S.storeID ASC LIMIT ?;", rs -> {
+          try {
+             double reviewScore = rs.getDouble(6);
+             json.beginObject()
+                .name("storeID").value(rs.getInt(1))
+                .name("address").value(rs.getString(2))
+                .name("city").value(rs.getString(3))
+                .name("state").value(rs.getString(4))
+                .name("isOpen").value(rs.getString(5))
+                .name("reviewScore").value(rs.wasNull() ? null : Double.valueOf(reviewScore))
+                .endObject();
+          } catch (IOException e) {
+             throw new SQLException("Client went away", e);
+          }
+       }, MAX_LIST_ROWS);
+       json.endArray();
+       json.flush();
+    }//end stores
+
+    private void orders(HttpExchange exchange, SessionUser user, Map<String, List<String>> params) throws Exception {
+       String login = visibleLogin(user, optional(params, "login"));
+       String afterTimestamp = optional(params, "afterTimestamp");
+       int limit = parseLimit(params, "limit", PizzaStore.ORDER_PAGE_SIZE);
+
+       List<Object> args = new ArrayList<Object>();
+       if (login != null) {
+          args.add(login);
+       }
+       if (afterTimestamp != null) {
+          try {
+             Timestamp after = Timestamp.valueOf(afterTimestamp);
+             args.add(after);
+             args.add(after);
+          } catch (IllegalArgumentException e) {
+             throw new HttpError(400, "afterTimestamp must look like 2024-01-31 18:30:00.0");
+          }
+          args.add(parseInt(required(params, "afterID"), "afterID"));
+       }
+       args.add(limit);
+
+       streamOrders(exchange, PizzaStore.orderPageQuery(login != null, afterTimestamp != null), args.toArray());
+    }//end orders
+
+    private void recentOrders(HttpExchange exchange, SessionUser user, Map<String, List<String>> params) throws Exception {
+       String login = visibleLogin(user, optional(params, "login"));
+       if (login == null) {
+          throw new HttpError(400, "Missing parameter: login");
+       }
+       int limit = parseLimit(params, "n", 5);
+
+       streamOrders(exchange, PizzaStore.orderPageQuery(true, false), login, limit);
+    }//end recentOrders
+
+    private void order(HttpExchange exchange, SessionUser user, int orderID) throws Exception {
+       OrderDetail detail = _service.orderDetail(orderID);
+       if (detail == null) {
+          throw new HttpError(404, "Order not found.");
+       }
+       FoodOrder order = detail.getOrder();
+       if (!user.isManagerOrDriver() && !order.getLogin().equals(user.getLogin())) {
+          throw new HttpError(403, "This order does not belong to you.");
+       }
+
+       JsonWriter json = beginJson(exchange);
+       json.beginObject()
+          .name("orderID").value(order.getOrderID())
+          .name("login").value(order.getLogin())
+          .name("storeID").value(order.getStoreID())
+          .name("totalPrice").value(order.getTotalPrice())
+          .name("orderTimestamp").value(order.getOrderTimestamp() == null ? null : order.getOrderTimestamp().toString())
+          .name("orderStatus").value(order.getOrderStatus())
+          .name("archived").value(detail.isArchived());
+       Store store = detail.getStore();
+       json.name("store");
+       if (store == null) {
+          json.value((String) null);
+       } else {
+          json.beginObject()
+             .name("address").value(store.getAddress())
+             .name("city").value(store.getCity())
+             .name("state").value(store.getState())
+             .name("isOpen").value(store.getIsOpen())
+             .name("reviewScore").value(store.getReviewScore())
+             .endObject();
+       }
+       json.name("items").beginArray();
+       for (OrderDetail.Line line : detail.getLines()) {
+          json.beginObject()
+             .name("itemName").value(line.getItemName())
+             .name("quantity").value(line.getQuantity())
+             .name("price").value(line.getPrice())
+             .name("lineTotal").value(line.getLineTotal())
+             .endObject();
+       }
+       json.endArray().endObject();
+       json.flush();
+    }//end order
+
+    private void placeOrder(HttpExchange exchange, SessionUser user, Map<String, List<String>> params) throws Exception {
+       int storeID = parseInt(required(params, "storeID"), "storeID");
+
+       Map<String, Integer> lines = new LinkedHashMap<String, Integer>();
+       List<String> items = params.get("item");
+       if (items == null || items.isEmpty()) {
+          throw new HttpError(400, "Missing parameter: item (name:quantity)");
+       }
+       for (String item : items) {
+          int colon = item.lastIndexOf(':');
+          if (colon <= 0) {
+             throw new HttpError(400, "item must look like name:quantity");
+          }
+          String itemName = item.substring(0, colon);
+          int quantity = parseInt(item.substring(colon + 1), "quantity");
+          if (quantity <= 0) {
+             throw new HttpError(400, "Quantity must be at least 1.");
+          }
+          Integer previous = lines.get(itemName);
+          lines.put(itemName, previous == null ? quantity : previous + quantity);
+       }
+
+       OrderReceipt receipt;
+       try {
+          receipt = _service.placeOrder(user.getLogin(), storeID, lines);
+       } catch (SQLDataException e) {
+          // an item that is not on the menu; anything else is not the client's fault
+          throw new HttpError(422, e.getMessage());
+       }
+
+       JsonWriter json = beginJson(exchange, 201);
+       json.beginObject()
+          .name("orderID").value(receipt.getOrderID())
+          .name("totalPrice").value(receipt.getTotalPrice())
+          .name("commitMillis").value(receipt.getTransactionNanos() / 1e6)
+          .endObject();
+       json.flush();
+    }//end placeOrder
+
+    private void orderStatus(HttpExchange exchange, SessionUser user, int orderID,
+                             Map<String, List<String>> params) throws Exception {
+       if (!user.isManagerOrDriver()) {
+          throw new HttpError(403, "Insufficient privileges. Please ask a manager or driver for assistance.");
+       }
+       boolean completed = Boolean.parseBoolean(required(params, "completed"));
+       if (!_service.updateOrderStatus(orderID, completed)) {
+          throw new HttpError(404, "Order not found.");
+       }
+       sendEmpty(exchange);
+    }//end orderStatus
+
+    /*
+     * Writes the orders selected by an orderPageQuery as a JSON array.
+     */
+    private void streamOrders(HttpExchange exchange, String query, Object... args) throws Exception {
+       final JsonWriter json = beginJson(exchange);
+       json.beginArray();
+       _esql.executeQueryAndStream(query, rs -> {
+          try {
+             writeOrder(json, rs.getInt(1), rs.getString(2), rs.getInt(3),
+                rs.getBigDecimal(4), rs.getTimestamp(5), rs.getString(6));
+          } catch (IOException e) {
+             throw new SQLException("Client went away", e);
+          }
+       }, args);
+       json.endArray();
+       json.flush();
+    }//end streamOrders
+
+    private static void writeOrder(JsonWriter json, int orderID, String login, int storeID,
+                                   java.math.BigDecimal totalPrice, Timestamp orderTimestamp,
+                                   String orderStatus) throws IOException {
+       json.beginObject()
+          .name("orderID").value(orderID)
+          .name("login").value(login)
+          .name("storeID").value(storeID)
+          .name("totalPrice").value(totalPrice)
+          .name("orderTimestamp").value(orderTimestamp == null ? null : orderTimestamp.toString())
+          .name("orderStatus").value(orderStatus == null ? null : orderStatus.trim())
+          .endObject();
+    }
+
+    /*
+     * Customers may only list their own orders; managers and drivers may
+     * list anyone's, or everyone's when login is null.
+     */
+    private static String visibleLogin(SessionUser user, String requested) throws HttpError {
+       if (user.isManagerOrDriver()) {
+          return requested;
+       }
+       if (requested != null && !requested.equals(user.getLogin())) {
+          throw new HttpError(403, "You can only see your own orders.");
+       }
+       return user.getLogin();
+    }
+
+    private SessionUser authenticate(HttpExchange exchange) throws HttpError, SQLException {
+       String token = bearerToken(exchange);
+       Session session = token == null ? null : _sessions.get(token);
+       long now = System.currentTimeMillis();
+       if (session != null && now - session.lastUsedAt > SESSION_IDLE_MILLIS) {
+          _sessions.remove(token, session);
+          session = null;
+       }
+       if (session != null && now - session.checkedAt > SESSION_RECHECK_MILLIS) {
+          // the role may have been changed by another process.
+          SessionUser user = _service.findUser(session.user.getLogin());
+          Session checked = user == null ? null : new Session(user);
+          if (checked == null) {
+             _sessions.remove(token, session);
+          } else {
+             _sessions.replace(token, session, checked);
+          }
+          session = checked;
+       }
+       if (session == null) {
+          throw new HttpError(401, "Log in first (POST /login) and send the token as \"Authorization: Bearer <token>\".");
+       }
+       session.lastUsedAt = now;
+       return session.user;
+    }
+
+    /*
+     * Makes the sessions of a user changed by this process re-read it on
+     * their next request; see PizzaStore.userChanged.
+     */
+    private void userChanged(String oldLogin, String newLogin) {
+       for (Session session : _sessions.values()) {
+          if (session.user.getLogin().equals(oldLogin)) {
+             session.checkedAt = 0;
+          }
+       }
+    }
+
+    private void expireSessions() {
+       long now = System.currentTimeMillis();
+       _sessions.values().removeIf(session -> now - session.lastUsedAt > SESSION_IDLE_MILLIS);
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+       String header = exchange.getRequestHeaders().getFirst("Authorization");
+       if (header == null || !header.startsWith("Bearer ")) {
+          return null;
+       }
+       return header.substring("Bearer ".length()).trim();
+    }
+
+    private static JsonWriter beginJson(HttpExchange exchange) {
+       return beginJson(exchange, 200);
+    }
+
+    /*
+     * Returns a writer over an in-memory response body, sent by respond
+     * with this status unless the handler fails first.
+     */
+    private static JsonWriter beginJson(HttpExchange exchange, int status) {
+       Response response = new Response(status);
+       PENDING_RESPONSE.set(response);
+       return new JsonWriter(response.body);
+    }
+
+    /*
+     * Sends the response begun by beginJson, if any; handlers that send
+     * their own have nothing pending.
+     */
+    private static void respond(HttpExchange exchange) throws IOException {
+       Response response = PENDING_RESPONSE.get();
+       if (response == null) {
+          return;
+       }
+       PENDING_RESPONSE.remove();
+       byte[] body = response.body.toString().getBytes(StandardCharsets.UTF_8);
+       exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+       exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+       exchange.getResponseBody().write(body);
+    }
+
+    private static void sendEmpty(HttpExchange exchange) throws IOException {
+       exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+       try {
+          JsonWriter json = beginJson(exchange, status);
+          json.beginObject().name("error").value(message).endObject();
+          respond(exchange);
+       } catch (IOException e) {
+          // the response was already started or the client went away.
+       }
+    }
+
+    /*
+     * Collects the query string parameters and, for form-encoded POSTs,
+     * the body parameters.
+     */
+    private static Map<String, List<String>> readParams(HttpExchange exchange) throws IOException, HttpError {
+       Map<String, List<String>> params = new HashMap<String, List<String>>();
+       parseForm(exchange.getRequestURI().getRawQuery(), params);
+
+       String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+       if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+          InputStream body = exchange.getRequestBody();
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          byte[] buffer = new byte[4096];
+          int n;
+          while ((n = body.read(buffer)) > 0) {
+             if (bytes.size() + n > MAX_BODY_BYTES) {
+                throw new HttpError(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+             }
+             bytes.write(buffer, 0, n);
+          }
+          parseForm(new String(bytes.toByteArray(), StandardCharsets.UTF_8), params);
+       }
+       return params;
+    }//end readParams
+
+    private static void parseForm(String form, Map<String, List<String>> params) {
+       if (form == null || form.isEmpty()) {
+          return;
+       }
+       for (String pair : form.split("&")) {
+          int eq = pair.indexOf('=');
+          String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+          String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+          params.computeIfAbsent(name, k -> new ArrayList<String>()).add(value);
+       }
+    }
+
+    private static String optional(Map<String, List<String>> params, String name) {
+       List<String> values = params.get(name);
+       if (values == null || values.isEmpty() || values.get(0).trim().isEmpty()) {
+          return null;
+       }
+       return values.get(0).trim();
+    }
+
+    private static String required(Map<String, List<String>> params, String name) throws HttpError {
+       String value = optional(params, name);
+       if (value == null) {
+          throw new HttpError(400, "Missing parameter: " + name);
+       }
+       return value;
+    }
+
+    private static int parseInt(String value, String name) throws HttpError {
+       try {
+          return Integer.parseInt(value.trim());
+       } catch (NumberFormatException e) {
+          throw new HttpError(400, name + " must be a whole number");
+       }
+    }
+
+    /*
+     * Reads a row count parameter, which must be at least 1 and is capped
+     * at MAX_PAGE_SIZE.
+     */
+    private static int parseLimit(Map<String, List<String>> params, String name, int defaultValue) throws HttpError {
+       String value = optional(params, name);
+       int limit = value == null ? defaultValue : parseInt(value, name);
+       if (limit < 1) {
+          throw new HttpError(400, name + " must be at least 1");
+       }
+       return Math.min(MAX_PAGE_SIZE, limit);
+    }
+
+    private static double parseDouble(String value, String name) throws HttpError {
+       try {
+          return Double.parseDouble(value.trim());
+       } catch (NumberFormatException e) {
+          throw new HttpError(400, name + " must be a number");
+       }
+    }
+
+    /*
+     * A request that fails with a specific HTTP status.
+     */
+    private static final class HttpError extends Exception {
+       private static final long serialVersionUID = 1L;
+
+       final int status;
+
+       HttpError(int status, String message) {
+          super(message);
+          this.status = status;
+       }
+    }
+
+    /*
+     * A logged-in user behind a bearer token.
+     */
+    private static final class Session {
+       final SessionUser user;
+       volatile long checkedAt = System.currentTimeMillis();
+       volatile long lastUsedAt = checkedAt;
+
+       Session(SessionUser user) {
+          this.user = user;
+       }
+    }
+
+    /*
+     * A JSON response body being built for one exchange.
+     */
+    private static final class Response {
+       final int status;
+       final StringWriter body = new StringWriter();
+
+       Response(int status) {
+          this.status = status;
+       }
+    }
+ }//end PizzaStoreHttpServer
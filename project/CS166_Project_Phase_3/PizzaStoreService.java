@@ -0,0 +1,248 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.io.IOException;
+ import java.sql.SQLException;
+ import java.util.List;
+ import java.util.Map;
+
+ /**
+  * Programmatic access to the store operations, for callers that are not
+  * the interactive console (servers, load tests, scripts).
+  *
+  * Every method takes the acting user explicitly and returns its result
+  * instead of printing it, and none of them read PizzaStore.in. All state
+  * lives in the connection pool and the menu catalog, which are thread
+  * safe, so one service can be shared by any number of concurrent callers.
+  * Privilege checks are left to the caller, as the console does with
+  * SessionUser.
+  *
+  */
+ public class PizzaStoreService {
+
+    private final PizzaStore _esql;
+
+    /**
+     * @param esql the store whose connection pool and menu catalog are used
+     */
+    public PizzaStoreService(PizzaStore esql) {
+       _esql = esql;
+    }
+
+    /**
+     * Checks log in credentials.
+     *
+     * @return the logged-in user, or null if the login and password do not match
+     */
+    public SessionUser logIn(String login, String password) throws SQLException {
+       String query = "SELECT U.login, U.role, U.phoneNum, U.favoriteItems FROM Users U WHERE U.login = ? AND U.password = ?;";
+       List<User> result = _esql.executeQueryAndMap(query, User.MAPPER, login, password);
+       return result.isEmpty() ? null : new SessionUser(result.get(0));
+    }
+
+    /**
+     * Reloads a logged-in user, to pick up a role change.
+     *
+     * @return the user, or null if the login no longer exists
+     */
+    public SessionUser findUser(String login) throws SQLException {
+       String query = "SELECT U.login, U.role, U.phoneNum, U.favoriteItems FROM Users U WHERE U.login = ?;";
+       List<User> result = _esql.executeQueryAndMap(query, User.MAPPER, login);
+       return result.isEmpty() ? null : new SessionUser(result.get(0));
+    }
+
+    /**
+     * Returns menu items, served from the in-memory catalog.
+     *
+     * @param typeOfItem the type to match; null for every type
+     * @param maxPrice the highest price to include; 0 or less for no limit
+     * @param ascending true for cheapest first
+     */
+    public List<Item> findMenu(String typeOfItem, double maxPrice, boolean ascending) throws SQLException {
+       return _esql.getMenu().find(typeOfItem, maxPrice, ascending);
+    }
+
+    /**
+     * Returns the menu items matching every word of a free-text query,
+     * best match first.
+     *
+     * @param query words to look for in names, ingredients and descriptions
+     * @param limit the most items to return
+     */
+    public List<Item> searchMenu(String query, int limit) throws SQLException {
+       return _esql.getMenu().search(query, limit);
+    }
+
+    /**
+     * Returns the names of the menu items closest to the given text.
+     */
+    public List<String> suggestItems(String text, int limit) throws SQLException {
+       return _esql.getMenu().suggest(text, limit);
+    }
+
+    /**
+     * Brings the sales rollups up to date; see SalesReports.
+     *
+     * @return a one-line description of what was refreshed
+     */
+    public String refreshSalesReports() throws SQLException {
+       return _esql.getReports().refresh();
+    }
+
+    /**
+     * Returns per-store sales over the last days, highest revenue first.
+     *
+     * @param storeID the store to report on; 0 for every store
+     */
+    public List<StoreSales> storeSales(int days, int storeID) throws SQLException {
+       return _esql.getReports().storeSales(days, storeID);
+    }
+
+    /**
+     * Returns orders and revenue per hour or day over the last days.
+     *
+     * @param storeID the store to report on; 0 for every store
+     */
+    public List<StoreSales> periodSales(int days, int storeID, boolean hourly) throws SQLException {
+       return _esql.getReports().periodSales(days, storeID, hourly);
+    }
+
+    /**
+     * Returns the best-selling items over the last days.
+     *
+     * @param storeID the store to report on; 0 for every store
+     */
+    public List<ItemSales> topItems(int days, int storeID, int limit) throws SQLException {
+       return _esql.getReports().topItems(days, storeID, limit);
+    }
+
+    /**
+     * Returns every store, ordered by storeID.
+     */
+    public List<Store> stores() throws SQLException {
+       return _esql.executeQueryAndMap("SELECT * FROM Store S ORDER BY S.storeID ASC;", Store.MAPPER);
+    }
+
+    /**
+     * Places an order in one transaction.
+     *
+     * @param lines quantity ordered per item name, each at least 1
+     * @throws IllegalArgumentException when there are no lines or a
+     *         quantity is missing or below 1
+     * @throws java.sql.SQLException when an item is not on the menu or the
+     *         order could not be stored; nothing is written in that case
+     */
+    public OrderReceipt placeOrder(String login, int storeID, Map<String, Integer> lines) throws SQLException {
+       if (lines.isEmpty()) {
+          throw new IllegalArgumentException("An order needs at least one item");
+       }
+       for (Map.Entry<String, Integer> line : lines.entrySet()) {
+          if (line.getValue() == null || line.getValue() < 1) {
+             throw new IllegalArgumentException("Quantity must be at least 1: " + line.getKey());
+          }
+       }
+       ReplicaRouter.Scope acting = ReplicaRouter.actingAs(login);
+       try {
+          return _esql.submitOrder(login, storeID, lines);
+       } finally {
+          acting.close();
+       }
+    }
+
+    /**
+     * Returns a customer's most recent orders, newest first.
+     *
+     * @param n the maximum number of orders
+     */
+    public List<FoodOrder> recentOrders(String login, int n) throws SQLException {
+       // read as the customer, so an order they just placed is included
+       ReplicaRouter.Scope acting = ReplicaRouter.actingAs(login);
+       try {
+          return _esql.findOrderPage(login, null, n);
+       } finally {
+          acting.close();
+       }
+    }
+
+    /**
+     * Returns a customer's order count, lifetime spend and last 5 order
+     * IDs with one primary key lookup on CustomerOrderSummary.
+     *
+     * @return the summary; all zero for a customer with no orders
+     */
+    public CustomerOrderSummary customerSummary(String login) throws SQLException {
+       ReplicaRouter.Scope acting = ReplicaRouter.actingAs(login);
+       try {
+          List<CustomerOrderSummary> result =
+             _esql.executeQueryAndMap(PizzaStore.CUSTOMER_SUMMARY_QUERY, CustomerOrderSummary.MAPPER, login);
+          return result.isEmpty() ? CustomerOrderSummary.empty(login) : result.get(0);
+       } finally {
+          acting.close();
+       }
+    }
+
+    /**
+     * Returns one page of order history, newest first.
+     *
+     * @param login the customer; null for the orders of all customers
+     * @param after the last order of the previous page; null for the first page
+     */
+    public List<FoodOrder> orderHistory(String login, FoodOrder after, int pageSize) throws SQLException {
+       if (login == null) {
+          return _esql.findOrderPage(null, after, pageSize);
+       }
+       ReplicaRouter.Scope acting = ReplicaRouter.actingAs(login);
+       try {
+          return _esql.findOrderPage(login, after, pageSize);
+       } finally {
+          acting.close();
+       }
+    }
+
+    /**
+     * Returns an order, or null if there is no order with that ID. Orders
+     * moved to the archive are read from there.
+     */
+    public FoodOrder findOrder(int orderID) throws SQLException {
+       List<FoodOrder> result = _esql.executeQueryAndMap(PizzaStore.ORDER_INFO_QUERY, FoodOrder.MAPPER, orderID);
+       if (!result.isEmpty()) {
+          return result.get(0);
+       }
+       try {
+          OrderArchive.Entry entry = _esql.getArchive().find(orderID);
+          return entry == null ? null : entry.getOrder();
+       } catch (IOException e) {
+          throw new SQLException("Cannot read the order archive: " + e.getMessage(), e);
+       }
+    }
+
+    /**
+     * Returns an order with its store and priced line items, or null if
+     * there is no order with that ID. Completed orders are served from the
+     * OrderDetails cache once read.
+     */
+    public OrderDetail orderDetail(int orderID) throws SQLException {
+       return _esql.getOrderDetails().find(orderID);
+    }
+
+    /**
+     * Sets an order's status through the store's OrderStatusPipeline, so
+     * concurrent changes are written in batches.
+     *
+     * @param completed true for 'completed', false for 'incomplete'
+     * @return false if there is no order with that ID; with ASYNC
+     *         durability the change is only queued and this is always true
+     */
+    public boolean updateOrderStatus(int orderID, boolean completed) throws SQLException {
+       return _esql.getStatusPipeline().submit(orderID, completed ? "completed" : "incomplete");
+    }
+ }//end PizzaStoreService
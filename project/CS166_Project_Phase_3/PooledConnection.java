@@ -0,0 +1,109 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.Connection;
+ import java.sql.PreparedStatement;
+ import java.sql.SQLException;
+
+ /**
+  * A physical connection owned by a ConnectionPool together with the
+  * bookkeeping the pool needs to validate, evict and track it.
+  *
+  */
+ public class PooledConnection {
+
+    // the physical database connection.
+    private final Connection _connection;
+
+    // prepared statements kept open on this connection.
+    private final StatementCache _statements;
+
+    // when the connection was last handed back to the pool.
+    private volatile long _lastReleasedMillis;
+
+    // when the connection was last handed out, and by whom (for leak reports).
+    private volatile long _borrowedAtMillis;
+    private volatile Thread _borrower;
+    private volatile Throwable _borrowSite;
+    private volatile boolean _leakReported;
+
+    PooledConnection(Connection connection, StatementCache statements) {
+       _connection = connection;
+       _statements = statements;
+       _lastReleasedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the physical connection. Callers must not close it; hand the
+     * PooledConnection back to the pool with ConnectionPool.release instead.
+     */
+    public Connection getConnection() {
+       return _connection;
+    }
+
+    /**
+     * Returns a cached PreparedStatement for the SQL text, preparing it on
+     * first use. Callers must not close it.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+       return _statements.prepare(sql);
+    }
+
+    long getLastReleasedMillis() {
+       return _lastReleasedMillis;
+    }
+
+    long getBorrowedAtMillis() {
+       return _borrowedAtMillis;
+    }
+
+    Thread getBorrower() {
+       return _borrower;
+    }
+
+    Throwable getBorrowSite() {
+       return _borrowSite;
+    }
+
+    boolean isLeakReported() {
+       return _leakReported;
+    }
+
+    void markLeakReported() {
+       _leakReported = true;
+    }
+
+    void markBorrowed(Thread borrower, Throwable borrowSite) {
+       _borrowedAtMillis = System.currentTimeMillis();
+       _borrower = borrower;
+       _borrowSite = borrowSite;
+       _leakReported = false;
+    }
+
+    void markReleased() {
+       _lastReleasedMillis = System.currentTimeMillis();
+       _borrower = null;
+       _borrowSite = null;
+    }
+
+    /**
+     * Closes the physical connection, ignoring errors.
+     */
+    void closeQuietly() {
+       _statements.clear();
+       try {
+          _connection.close();
+       } catch (SQLException e) {
+          // ignored.
+       }
+    }
+ }//end PooledConnection
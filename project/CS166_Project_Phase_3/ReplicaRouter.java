@@ -0,0 +1,277 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.PreparedStatement;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.util.Iterator;
+ import java.util.Map;
+ import java.util.concurrent.ConcurrentHashMap;
+ import java.util.concurrent.Executors;
+ import java.util.concurrent.ScheduledExecutorService;
+ import java.util.concurrent.TimeUnit;
+ import java.util.concurrent.atomic.AtomicLong;
+
+ /**
+  * Decides whether a read-only statement may run on the replica pool
+  * instead of the primary.
+  *
+  * A read goes to the replica only when all of these hold:
+  *   - the statement is a read with no side effects, as decided by
+  *     SlowQueryLog.isReadOnly (no writes, sequence or other side-effecting
+  *     function calls, or locking clause);
+  *   - the last lag probe succeeded and measured at most maxLagMillis;
+  *   - the user it runs for has not written through this process within
+  *     the read-your-writes window (maxLagMillis plus the probe interval),
+  *     so a customer always sees the order they just placed.
+  * Otherwise it runs on the primary.
+  *
+  * The user a statement runs for is set per thread with actingAs; the
+  * console sets it to the logged-in user and the HTTP server to the
+  * request's user. Statements with no acting user share one anonymous
+  * entry, so e.g. a new account is read back from the primary at log in.
+  *
+  * Lag is measured on the replica with pg_last_xact_replay_timestamp(),
+  * and counts as zero while the replica has replayed all the WAL it has
+  * received and is still receiving: its WAL receiver must be streaming
+  * and have heard from the primary within maxSilenceMillis, or the
+  * replica counts as down, since a disconnected standby has replayed
+  * everything it received but falls further behind with every write.
+  * Reading pg_stat_wal_receiver takes pg_read_all_stats, so the replica
+  * user needs it. A replica that is not a physical standby (for example
+  * a logically replicated second instance) reports no lag.
+  *
+  * Routing is off unless a replica is configured, e.g. a second local
+  * instance with -Dpizzastore.replica.port=5433 (same database name and
+  * user) or a full -Dpizzastore.replica.url.
+  *
+  */
+ public class ReplicaRouter {
+
+    // NULL while the standby is not receiving WAL; the parameter is maxSilenceMillis.
+    static final String LAG_QUERY =
+       "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+       + "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver R WHERE R.status = 'streaming' "
+       + "AND R.last_msg_receipt_time > now() - make_interval(secs => ? / 1000.0)) THEN NULL "
+       + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+       + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END;";
+
+    // read-your-writes entries are pruned once there are this many.
+    static final int MAX_TRACKED_WRITERS = 10000;
+
+    private static final ThreadLocal<String> ACTING_USER = new ThreadLocal<String>();
+
+    private final ConnectionPool _replica;
+    private final long _maxLagMillis;
+    private final long _probeIntervalMillis;
+    private final long _maxSilenceMillis;
+    private final ScheduledExecutorService _prober;
+
+    // last write through this process per acting user ("" when none).
+    private final ConcurrentHashMap<String, Long> _lastWrite = new ConcurrentHashMap<String, Long>();
+
+    private final ConcurrentHashMap<String, Boolean> _plainReads = new ConcurrentHashMap<String, Boolean>();
+
+    private volatile long _lagMillis = Long.MAX_VALUE;
+    private volatile String _probeError = "not probed yet";
+
+    private final AtomicLong _replicaReads = new AtomicLong();
+    private final AtomicLong _primaryReads = new AtomicLong();
+    private final AtomicLong _readYourWrites = new AtomicLong();
+
+    /**
+     * @param replica the pool of replica connections
+     * @param maxLagMillis send no reads to a replica further behind than this
+     * @param probeIntervalMillis how often the replica lag is measured
+     * @param maxSilenceMillis count a standby as down once its WAL receiver
+     *        has not heard from the primary for this long
+     */
+    public ReplicaRouter(ConnectionPool replica, long maxLagMillis, long probeIntervalMillis,
+                         long maxSilenceMillis) {
+       _replica = replica;
+       _maxLagMillis = maxLagMillis;
+       _probeIntervalMillis = probeIntervalMillis;
+       _maxSilenceMillis = maxSilenceMillis;
+
+       _prober = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "replica-lag-probe");
+          thread.setDaemon(true);
+          return thread;
+       });
+       probe();
+       _prober.scheduleWithFixedDelay(this::probe, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the user statements on this thread run for, until the returned
+     * scope is closed.
+     *
+     * @param login the acting user; null for none
+     */
+    public static Scope actingAs(String login) {
+       String previous = ACTING_USER.get();
+       ACTING_USER.set(login);
+       return new Scope(previous);
+    }
+
+    /**
+     * Sets the user statements on this thread run for, with no scope; for
+     * the console, which has one user at a time.
+     */
+    public static void setActingUser(String login) {
+       if (login == null) {
+          ACTING_USER.remove();
+       } else {
+          ACTING_USER.set(login);
+       }
+    }
+
+    /**
+     * Returns the user statements on this thread run for, or null for none.
+     */
+    public static String actingUser() {
+       return ACTING_USER.get();
+    }
+
+    /**
+     * Returns the replica pool if sql may read from it now, or null if it
+     * must run on the primary.
+     */
+    public ConnectionPool route(String sql) {
+       if (!isPlainRead(sql)) {
+          return null;
+       }
+       if (_lagMillis > _maxLagMillis) {
+          _primaryReads.incrementAndGet();
+          return null;
+       }
+
+       Long written = _lastWrite.get(actingKey());
+       if (written != null && System.currentTimeMillis() - written < readYourWritesMillis()) {
+          _readYourWrites.incrementAndGet();
+          _primaryReads.incrementAndGet();
+          return null;
+       }
+       _replicaReads.incrementAndGet();
+       return _replica;
+    }//end route
+
+    /**
+     * Records a write by the acting user, so their next reads go to the
+     * primary until the replica has caught up.
+     */
+    public void noteWrite() {
+       noteWrite(ACTING_USER.get());
+    }
+
+    /**
+     * Records a write made for login on another thread, such as the
+     * OrderStatusPipeline flusher.
+     *
+     * @param login the user the write was made for; null for none
+     */
+    public void noteWrite(String login) {
+       long now = System.currentTimeMillis();
+       _lastWrite.put(login == null ? "" : login, now);
+       if (_lastWrite.size() > MAX_TRACKED_WRITERS) {
+          for (Iterator<Map.Entry<String, Long>> it = _lastWrite.entrySet().iterator(); it.hasNext(); ) {
+             if (now - it.next().getValue() >= readYourWritesMillis()) {
+                it.remove();
+             }
+          }
+       }
+    }
+
+    /**
+     * Returns a one-line summary of routing decisions and replica health.
+     */
+    public String stats() {
+       long lag = _lagMillis;
+       return String.format("replica[lag=%s, maxLag=%dms, replicaReads=%d, primaryReads=%d, readYourWrites=%d, %s]",
+          lag == Long.MAX_VALUE ? "down (" + _probeError + ")" : lag + "ms", _maxLagMillis,
+          _replicaReads.get(), _primaryReads.get(), _readYourWrites.get(), _replica.stats());
+    }
+
+    public void close() {
+       _prober.shutdownNow();
+       _replica.close();
+    }
+
+    private long readYourWritesMillis() {
+       return _maxLagMillis + _probeIntervalMillis;
+    }
+
+    private static String actingKey() {
+       String login = ACTING_USER.get();
+       return login == null ? "" : login;
+    }
+
+    private void probe() {
+       try {
+          PooledConnection pooled = _replica.borrow();
+          try {
+             PreparedStatement stmt = pooled.prepare(LAG_QUERY);
+             stmt.setLong(1, _maxSilenceMillis);
+             ResultSet rs = stmt.executeQuery();
+             rs.next();
+             long lag = rs.getLong(1);
+             if (rs.wasNull()) {
+                _probeError = "WAL receiver not streaming";
+                _lagMillis = Long.MAX_VALUE;
+             } else {
+                _lagMillis = Math.max(0, lag);
+             }
+             rs.close();
+          } finally {
+             _replica.release(pooled);
+          }
+       } catch (SQLException | RuntimeException e) {
+          _probeError = e.getMessage();
+          _lagMillis = Long.MAX_VALUE;
+       }
+    }//end probe
+
+    /*
+     * True for a read with no side effects, as SlowQueryLog.isReadOnly
+     * decides it. Answers are cached per statement, like LatencyMetrics templates.
+     */
+    private boolean isPlainRead(String sql) {
+       Boolean plain = _plainReads.get(sql);
+       if (plain == null) {
+          plain = SlowQueryLog.isReadOnly(sql);
+          if (_plainReads.size() < LatencyMetrics.MAX_CACHED_TEMPLATES) {
+             _plainReads.put(sql, plain);
+          }
+       }
+       return plain;
+    }
+
+    /**
+     * Restores the previous acting user when closed.
+     */
+    public static final class Scope implements AutoCloseable {
+       private final String _previous;
+
+       private Scope(String previous) {
+          _previous = previous;
+       }
+
+       @Override
+       public void close() {
+          if (_previous == null) {
+             ACTING_USER.remove();
+          } else {
+             ACTING_USER.set(_previous);
+          }
+       }
+    }
+ }//end ReplicaRouter
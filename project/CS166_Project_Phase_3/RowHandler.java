@@ -0,0 +1,31 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+
+ /**
+  * Receives the rows of a query streamed by PizzaStore.executeQueryAndStream.
+  *
+  */
+ public interface RowHandler {
+
+    /**
+     * Called once per row, with the result set positioned on that row.
+     * Read the columns needed before returning; the result set must not be
+     * advanced, closed or kept.
+     *
+     * @param rs the result set positioned on the current row
+     * @throws java.sql.SQLException to abort the query
+     */
+    void handleRow(ResultSet rs) throws SQLException;
+ }//end RowHandler
@@ -0,0 +1,75 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.util.concurrent.ConcurrentHashMap;
+
+ /**
+  * Maps result set rows to typed objects by column name.
+  *
+  * Column names are resolved to positions once per SQL text and cached, so
+  * mapping a row is just positional getInt/getBigDecimal/... calls with no
+  * name lookups and no intermediate strings.
+  *
+  */
+ public abstract class RowMapper<T> {
+
+    private final String[] _columns;
+
+    // column positions per SQL text; a statement's result shape does not change.
+    private final ConcurrentHashMap<String, int[]> _positions = new ConcurrentHashMap<String, int[]>();
+
+    /**
+     * @param columns the column names map reads, in the order its positions
+     *        array is indexed
+     */
+    protected RowMapper(String... columns) {
+       _columns = columns;
+    }
+
+    /**
+     * Maps the row the result set is positioned on.
+     *
+     * @param sql the SQL text that produced rs, used as the cache key
+     * @param rs the result set positioned on a row
+     * @return the mapped object
+     * @throws java.sql.SQLException when a column is missing or unreadable
+     */
+    public T mapRow(String sql, ResultSet rs) throws SQLException {
+       int[] positions = _positions.get(sql);
+       if (positions == null) {
+          positions = new int[_columns.length];
+          for (int i = 0; i < _columns.length; ++i) {
+             positions[i] = rs.findColumn(_columns[i]);
+          }
+          _positions.put(sql, positions);
+       }
+       return map(rs, positions);
+    }//end mapRow
+
+    /**
+     * Builds the object from the current row.
+     *
+     * @param rs the result set positioned on a row
+     * @param columns the position of each constructor column, in order
+     */
+    protected abstract T map(ResultSet rs, int[] columns) throws SQLException;
+
+    /**
+     * Returns the trimmed string value of a char(n) column, or null.
+     */
+    protected static String getTrimmed(ResultSet rs, int column) throws SQLException {
+       String value = rs.getString(column);
+       return value == null ? null : value.trim();
+    }
+ }//end RowMapper
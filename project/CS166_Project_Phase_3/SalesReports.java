@@ -0,0 +1,235 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.sql.SQLException;
+ import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.List;
+ import java.util.concurrent.Callable;
+ import java.util.concurrent.ExecutionException;
+ import java.util.concurrent.ExecutorService;
+ import java.util.concurrent.Executors;
+ import java.util.concurrent.Future;
+
+ /**
+  * Store sales reports: revenue per store per hour or day, top items,
+  * average basket and completion rate.
+  *
+  * Reports read the StoreSalesHourly and ItemSalesDaily rollups, never
+  * FoodOrder or ItemsInOrder, so they take the same time however many
+  * orders there are. refresh brings the rollups up to date incrementally:
+  * the stores are dealt into groups and each group is re-aggregated by
+  * refresh_sales_rollups() on its own pooled connection, in parallel.
+  *
+  * Each refresh re-aggregates every order placed since restateHours
+  * before the previous refresh (from the start of that day), so late
+  * commits and status changes within that window are picked up; older
+  * rollups are final. The first refresh aggregates every order. Order
+  * tables are only read, with no locks that block order writes.
+  *
+  */
+ public class SalesReports {
+
+    // store groups per refresh thread, so one busy group does not hold up the rest.
+    static final int GROUPS_PER_THREAD = 4;
+
+    // the report range; its one parameter is the number of days before today to include.
+    static final String RANGE = "WITH R AS (SELECT date_trunc('day', LOCALTIMESTAMP) - make_interval(days => ?) AS since) ";
+
+    static final String WINDOW_QUERY =
+       "SELECT LOCALTIMESTAMP, GREATEST(W.finalizedBefore, date_trunc('day', W.refreshedThrough - make_interval(hours => ?))) "
+       + "FROM SalesRollupWatermark W;";
+
+    static final String ADVANCE_WATERMARK =
+       "UPDATE SalesRollupWatermark SET refreshedThrough = GREATEST(refreshedThrough, ?::timestamp), "
+       + "finalizedBefore = GREATEST(finalizedBefore, date_trunc('day', ?::timestamp - make_interval(hours => ?))), "
+       + "refreshedAt = LOCALTIMESTAMP;";
+
+    private final PizzaStore _esql;
+    private final int _threads;
+    private final int _restateHours;
+
+    // guarded by this.
+    private long _refreshes = 0;
+    private long _lastRefreshNanos = 0;
+
+    /**
+     * @param esql the store whose pool runs the refresh and the reports
+     * @param threads store groups refreshed at once, each holding a connection
+     * @param restateHours how far before the previous refresh to re-aggregate
+     */
+    public SalesReports(PizzaStore esql, int threads, int restateHours) {
+       _esql = esql;
+       _threads = Math.max(1, threads);
+       _restateHours = Math.max(0, restateHours);
+    }
+
+    /**
+     * Brings the rollups up to date.
+     *
+     * @return a one-line description of what was refreshed
+     * @throws java.sql.SQLException when a store group failed; the groups
+     *         that finished stay refreshed and the next refresh redoes the rest
+     */
+    public synchronized String refresh() throws SQLException {
+       long start = System.nanoTime();
+
+       List<String> window = _esql.executeQueryAndReturnResult(WINDOW_QUERY, _restateHours).get(0);
+       String now = window.get(0);
+       String since = window.get(1).equals("-infinity") ? null : window.get(1);
+
+       List<List<String>> stores = _esql.executeQueryAndReturnResult("SELECT S.storeID FROM Store S ORDER BY S.storeID ASC;");
+       int groups = Math.max(1, Math.min(stores.size(), _threads * GROUPS_PER_THREAD));
+       List<StringBuilder> members = new ArrayList<StringBuilder>();
+       for (int g = 0; g < groups; ++g) {
+          members.add(new StringBuilder());
+       }
+       for (int i = 0; i < stores.size(); ++i) {
+          StringBuilder group = members.get(i % groups);
+          group.append(group.length() == 0 ? "" : ",").append(stores.get(i).get(0));
+       }
+
+       ExecutorService pool = Executors.newFixedThreadPool(Math.min(_threads, groups), r -> {
+          Thread thread = new Thread(r, "sales-rollup");
+          thread.setDaemon(true);
+          return thread;
+       });
+       try {
+          List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+          for (StringBuilder group : members) {
+             final String ids = "{" + group + "}";
+             results.add(pool.submit((Callable<Integer>) () ->
+                _esql.executeUpdate("CALL refresh_sales_rollups(?::integer[], ?::timestamp);", ids, since)));
+          }
+          for (Future<Integer> result : results) {
+             try {
+                result.get();
+             } catch (ExecutionException e) {
+                throw e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+                   : new SQLException("Sales rollup failed: " + e.getCause(), e.getCause());
+             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Sales rollup interrupted", e);
+             }
+          }
+       } finally {
+          pool.shutdownNow();
+       }
+
+       _esql.executeUpdate(ADVANCE_WATERMARK, now, now, _restateHours);
+
+       long nanos = System.nanoTime() - start;
+       ++_refreshes;
+       _lastRefreshNanos = nanos;
+       return String.format("Rolled up %d stores in %d groups, orders since %s, in %.1f s",
+          stores.size(), groups, since == null ? "the beginning" : since, nanos / 1e9);
+    }//end refresh
+
+    /**
+     * Returns the time the rollups are current to; "-infinity" before the
+     * first refresh.
+     */
+    public String refreshedThrough() throws SQLException {
+       return _esql.executeQueryAndReturnResult("SELECT W.refreshedThrough FROM SalesRollupWatermark W;").get(0).get(0);
+    }
+
+    /**
+     * Returns each store's orders, revenue, items sold and completions,
+     * highest revenue first.
+     *
+     * @param days days to report on, counting today
+     * @param storeID the store to report on; 0 for every store
+     */
+    public List<StoreSales> storeSales(int days, int storeID) throws SQLException {
+       String query = RANGE
+          + ", H AS (SELECT H.storeID, SUM(H.orderCount) AS orderCount, SUM(H.completedCount) AS completedCount, "
+          + "SUM(H.revenue) AS revenue FROM StoreSalesHourly H, R WHERE H.hourStart >= R.since"
+          + (storeID > 0 ? " AND H.storeID = ?" : "") + " GROUP BY H.storeID)"
+          + ", D AS (SELECT D.storeID, SUM(D.quantity) AS itemCount FROM ItemSalesDaily D, R WHERE D.day >= R.since::date"
+          + (storeID > 0 ? " AND D.storeID = ?" : "") + " GROUP BY D.storeID) "
+          + "SELECT H.storeID, NULL::timestamp AS period, H.orderCount, H.completedCount, H.revenue, "
+          + "COALESCE(D.itemCount, 0) AS itemCount FROM H LEFT JOIN D ON D.storeID = H.storeID "
+          + "ORDER BY H.revenue DESC, H.storeID ASC;";
+       return _esql.executeQueryAndMap(query, StoreSales.MAPPER, params(days, storeID, 2));
+    }//end storeSales
+
+    /**
+     * Returns orders and revenue per hour or day, oldest first. The rows
+     * have no store ID, even when one store was chosen.
+     *
+     * @param days days to report on, counting today
+     * @param storeID the store to report on; 0 for every store
+     * @param hourly true for one row per hour, false for one per day
+     */
+    public List<StoreSales> periodSales(int days, int storeID, boolean hourly) throws SQLException {
+       String storeFilter = storeID > 0 ? " AND H.storeID = ?" : "";
+       String query;
+       if (hourly) {
+          query = RANGE
+             + "SELECT 0 AS storeID, H.hourStart AS period, "
+             + "SUM(H.orderCount) AS orderCount, SUM(H.completedCount) AS completedCount, SUM(H.revenue) AS revenue, "
+             + "0 AS itemCount FROM StoreSalesHourly H, R WHERE H.hourStart >= R.since" + storeFilter
+             + " GROUP BY H.hourStart ORDER BY H.hourStart ASC;";
+       } else {
+          query = RANGE
+             + ", H AS (SELECT date_trunc('day', H.hourStart) AS period, SUM(H.orderCount) AS orderCount, "
+             + "SUM(H.completedCount) AS completedCount, SUM(H.revenue) AS revenue "
+             + "FROM StoreSalesHourly H, R WHERE H.hourStart >= R.since" + storeFilter + " GROUP BY 1)"
+             + ", D AS (SELECT D.day::timestamp AS period, SUM(D.quantity) AS itemCount "
+             + "FROM ItemSalesDaily D, R WHERE D.day >= R.since::date" + (storeID > 0 ? " AND D.storeID = ?" : "")
+             + " GROUP BY 1) "
+             + "SELECT 0 AS storeID, H.period, H.orderCount, H.completedCount, H.revenue, "
+             + "COALESCE(D.itemCount, 0) AS itemCount FROM H LEFT JOIN D ON D.period = H.period ORDER BY H.period ASC;";
+       }
+       return _esql.executeQueryAndMap(query, StoreSales.MAPPER,
+          params(days, storeID, hourly ? 1 : 2));
+    }//end periodSales
+
+    /**
+     * Returns the best-selling items by units sold.
+     *
+     * @param days days to report on, counting today
+     * @param storeID the store to report on; 0 for every store
+     * @param limit the most items to return
+     */
+    public List<ItemSales> topItems(int days, int storeID, int limit) throws SQLException {
+       String query = RANGE
+          + "SELECT D.itemName, SUM(D.quantity) AS quantity, SUM(D.orderCount) AS orderCount "
+          + "FROM ItemSalesDaily D, R WHERE D.day >= R.since::date" + (storeID > 0 ? " AND D.storeID = ?" : "")
+          + " GROUP BY D.itemName ORDER BY quantity DESC, D.itemName ASC LIMIT ?;";
+       List<Object> params = new ArrayList<Object>(Arrays.asList(params(days, storeID, 1)));
+       params.add(limit);
+       return _esql.executeQueryAndMap(query, ItemSales.MAPPER, params.toArray());
+    }//end topItems
+
+    /**
+     * Returns a one-line summary of refresh activity.
+     */
+    public synchronized String stats() {
+       return String.format("reports[refreshes=%d, lastRefresh=%.1fs, threads=%d, restateHours=%d]",
+          _refreshes, _lastRefreshNanos / 1e9, _threads, _restateHours);
+    }
+
+    /*
+     * The bind values of a report: the range, then the store ID once per
+     * store filter when a store is chosen.
+     */
+    private static Object[] params(int days, int storeID, int filters) {
+       Object[] params = new Object[storeID > 0 ? 1 + filters : 1];
+       params[0] = Math.max(1, days) - 1;
+       for (int i = 1; i < params.length; ++i) {
+          params[i] = storeID;
+       }
+       return params;
+    }
+ }//end SalesReports
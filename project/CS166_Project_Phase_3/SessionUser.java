@@ -0,0 +1,71 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ /**
+  * The user logged in to a PizzaStore session, loaded once by LogIn so menu
+  * actions can check privileges without querying Users again.
+  *
+  * Instances are immutable; PizzaStore replaces its SessionUser when the
+  * underlying Users row changes.
+  *
+  */
+ public final class SessionUser {
+
+    private final String _login;
+    private final String _role;
+    private final String _phoneNum;
+    private final String _favoriteItems;
+
+    /**
+     * @param login the user's login
+     * @param role the user's role; the char(20) padding is trimmed
+     * @param phoneNum the user's phone number
+     * @param favoriteItems the user's favorite items, may be null
+     */
+    public SessionUser(String login, String role, String phoneNum, String favoriteItems) {
+       _login = login;
+       _role = role == null ? "" : role.trim();
+       _phoneNum = phoneNum;
+       _favoriteItems = favoriteItems;
+    }
+
+    /**
+     * @param user the Users row of the logged-in user
+     */
+    public SessionUser(User user) {
+       this(user.getLogin(), user.getRole(), user.getPhoneNum(), user.getFavoriteItems());
+    }
+
+    public String getLogin() {
+       return _login;
+    }
+
+    public String getRole() {
+       return _role;
+    }
+
+    public String getPhoneNum() {
+       return _phoneNum;
+    }
+
+    public String getFavoriteItems() {
+       return _favoriteItems;
+    }
+
+    public boolean isManager() {
+       return _role.equals("manager");
+    }
+
+    public boolean isManagerOrDriver() {
+       return _role.equals("manager") || _role.equals("driver");
+    }
+ }//end SessionUser
@@ -0,0 +1,323 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.io.FileWriter;
+ import java.io.IOException;
+ import java.io.PrintWriter;
+ import java.sql.Connection;
+ import java.sql.DriverManager;
+ import java.sql.PreparedStatement;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Statement;
+ import java.time.LocalDateTime;
+ import java.util.ArrayList;
+ import java.util.List;
+ import java.util.Properties;
+ import java.util.concurrent.ConcurrentHashMap;
+ import java.util.concurrent.ExecutorService;
+ import java.util.concurrent.LinkedBlockingQueue;
+ import java.util.concurrent.RejectedExecutionException;
+ import java.util.concurrent.ThreadPoolExecutor;
+ import java.util.concurrent.TimeUnit;
+ import java.util.regex.Matcher;
+ import java.util.regex.Pattern;
+
+ /**
+  * Logs statements issued by the PizzaStore helpers that take longer than
+  * a threshold, with their SQL template, bind values, duration and rows.
+  * Values bound to a password column are written as <redacted>.
+  *
+  * With explain on, a slow SELECT is re-run as EXPLAIN (ANALYZE, BUFFERS)
+  * on a separate connection, outside the pool, and the plan is logged
+  * under the entry. This happens on a background thread, at most once per
+  * template per EXPLAIN_INTERVAL_MILLIS, and never for writes, since
+  * EXPLAIN ANALYZE executes the statement. For the same reason SELECTs
+  * that take row locks or call a function with side effects (nextval,
+  * setval, set_config, advisory locks and the schema's maintenance
+  * functions) are logged without a plan: re-running SELECT nextval
+  * would burn another block of order IDs.
+  *
+  */
+ public class SlowQueryLog {
+
+    // a template is explained again only after this long.
+    static final long EXPLAIN_INTERVAL_MILLIS = 60000L;
+
+    // calls that change something; a statement making one is never re-run by EXPLAIN ANALYZE.
+    static final Pattern SIDE_EFFECT_CALL = Pattern.compile(
+       "\\b(nextval|setval|set_config|pg_(try_)?advisory_\\w+|refresh_\\w+|backfill_\\w+"
+       + "|create_order_partitions?|detach_order_partitions)\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    static final Pattern LOCKING_CLAUSE = Pattern.compile(
+       "\\bFOR\\s+(UPDATE|NO\\s+KEY\\s+UPDATE|SHARE|KEY\\s+SHARE)\\b", Pattern.CASE_INSENSITIVE);
+
+    // slow statements waiting to be explained; more are logged without a plan.
+    static final int EXPLAIN_QUEUE = 16;
+
+    static final int MAX_BIND_CHARS = 100;
+
+    private static final Pattern PASSWORD_COMPARISON = Pattern.compile("(?i)\\bpassword\\s*(=|<>|!=)\\s*$");
+    private static final Pattern INSERT_COLUMNS = Pattern.compile(
+       "(?is)INSERT\\s+INTO\\s+\\S+\\s*\\(([^)]*)\\)\\s*VALUES\\s*\\(");
+
+    private final long _thresholdNanos;
+    private final boolean _explain;
+    private final String _url;
+    private final Properties _props;
+    private final PrintWriter _out;
+    private final LatencyMetrics _templates;
+    private final ExecutorService _explainer;
+    private final ConcurrentHashMap<String, Long> _lastExplained = new ConcurrentHashMap<String, Long>();
+
+    // the side connection EXPLAIN runs on; only used by the explainer thread.
+    private Connection _conn = null;
+
+    /**
+     * @param thresholdMillis log statements at least this slow
+     * @param explain whether to capture EXPLAIN (ANALYZE, BUFFERS) for slow SELECTs
+     * @param logFile file entries are appended to; empty for standard error
+     * @param url the database URL for the EXPLAIN connection
+     * @param props the connection properties for the EXPLAIN connection
+     * @param templates normalizes SQL the same way the latency metrics do
+     */
+    public SlowQueryLog(long thresholdMillis, boolean explain, String logFile,
+                        String url, Properties props, LatencyMetrics templates) throws IOException {
+       _thresholdNanos = thresholdMillis * 1000000L;
+       _explain = explain;
+       _url = url;
+       _props = props;
+       _templates = templates;
+       _out = logFile.isEmpty()
+          ? new PrintWriter(System.err, true)
+          : new PrintWriter(new FileWriter(logFile, true), true);
+
+       ThreadPoolExecutor explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(EXPLAIN_QUEUE), r -> {
+             Thread thread = new Thread(r, "slow-query-explain");
+             thread.setDaemon(true);
+             return thread;
+          });
+       _explainer = explainer;
+    }
+
+    /**
+     * Logs the statement if it was slow.
+     *
+     * @param operation the helper that ran it
+     * @param sql the statement
+     * @param params its bind values, or null when not applicable
+     * @param startNanos System.nanoTime() when the call began
+     * @param rowCount rows read or written; -1 if the call failed
+     */
+    public void check(String operation, String sql, Object[] params, long startNanos, long rowCount) {
+       long nanos = System.nanoTime() - startNanos;
+       if (nanos < _thresholdNanos) {
+          return;
+       }
+
+       final String template = _templates.template(sql);
+       final String binds = params == null ? "-" : formatBinds(sql, params);
+       final String header = String.format("%s slow %s: %.1f ms, rows=%s%n  template: %s%n  binds: %s",
+          LocalDateTime.now(), operation, nanos / 1e6, rowCount < 0 ? "failed" : String.valueOf(rowCount),
+          template, binds);
+
+       if (!_explain || params == null || !isReadOnly(sql) || !dueForExplain(template)) {
+          log(header);
+          return;
+       }
+
+       final Object[] values = params.clone();
+       try {
+          _explainer.execute(() -> log(header + "\n  plan:\n" + explain(sql, values)));
+       } catch (RejectedExecutionException e) {
+          // the queue is full or the log is closing
+          log(header);
+       }
+    }//end check
+
+    /**
+     * Stops the explainer and closes the log.
+     */
+    public void close() {
+       _explainer.shutdown();
+       try {
+          _explainer.awaitTermination(5, TimeUnit.SECONDS);
+       } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+       }
+       if (_conn != null) {
+          try {
+             _conn.close();
+          } catch (SQLException e) {
+             // ignored.
+          }
+       }
+       _out.flush();
+    }
+
+    private synchronized void log(String entry) {
+       _out.println(entry);
+    }
+
+    private boolean dueForExplain(String template) {
+       long now = System.currentTimeMillis();
+       Long last = _lastExplained.get(template);
+       if (last != null && now - last < EXPLAIN_INTERVAL_MILLIS) {
+          return false;
+       }
+       return _lastExplained.put(template, now) == last;
+    }
+
+    /**
+     * True for a read with no side effects: a SELECT or a WITH query that
+     * writes nothing, calls none of the SIDE_EFFECT_CALL functions and takes
+     * no row locks. Such a statement can be re-run by EXPLAIN ANALYZE, and
+     * ReplicaRouter sends it to the replica.
+     */
+    static boolean isReadOnly(String sql) {
+       String head = sql.trim().toUpperCase();
+       boolean read = head.startsWith("SELECT")
+          || head.startsWith("WITH") && !head.matches("(?s).*\\b(INSERT|UPDATE|DELETE)\\b.*");
+       return read && !SIDE_EFFECT_CALL.matcher(sql).find() && !LOCKING_CLAUSE.matcher(sql).find();
+    }
+
+    /*
+     * Runs EXPLAIN (ANALYZE, BUFFERS) on the side connection and returns
+     * the plan, indented; or the reason it could not.
+     */
+    private String explain(String sql, Object[] params) {
+       StringBuilder plan = new StringBuilder();
+       try {
+          if (_conn == null || !_conn.isValid(1)) {
+             _conn = DriverManager.getConnection(_url, _props);
+             Statement setup = _conn.createStatement();
+             setup.execute("SET statement_timeout = '30s'");
+             setup.close();
+          }
+
+          // rolled back so the statement has no lasting effect even if it had one.
+          _conn.setAutoCommit(false);
+          try {
+             PreparedStatement stmt = _conn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql.trim());
+             for (int i = 0; i < params.length; ++i) {
+                stmt.setObject(i + 1, params[i]);
+             }
+             ResultSet rs = stmt.executeQuery();
+             while (rs.next()) {
+                plan.append("    ").append(rs.getString(1)).append('\n');
+             }
+             stmt.close();
+          } finally {
+             _conn.rollback();
+             _conn.setAutoCommit(true);
+          }
+       } catch (SQLException e) {
+          plan.append("    (EXPLAIN failed: ").append(e.getMessage()).append(")\n");
+       }
+       return plan.toString().replaceAll("\n$", "");
+    }//end explain
+
+    /*
+     * Formats the bind values, replacing the ones bound to a password
+     * column with <redacted>.
+     */
+    static String formatBinds(String sql, Object[] params) {
+       boolean[] redact = passwordPlaceholders(sql, params.length);
+       StringBuilder out = new StringBuilder("[");
+       for (int i = 0; i < params.length; ++i) {
+          if (i > 0) {
+             out.append(", ");
+          }
+          Object value = params[i];
+          if (redact[i]) {
+             out.append("<redacted>");
+          } else if (value == null) {
+             out.append("NULL");
+          } else {
+             String text = value instanceof Object[] ? java.util.Arrays.toString((Object[]) value) : value.toString();
+             if (text.length() > MAX_BIND_CHARS) {
+                text = text.substring(0, MAX_BIND_CHARS) + "...";
+             }
+             out.append(value instanceof Number ? text : "'" + text + "'");
+          }
+       }
+       return out.append(']').toString();
+    }//end formatBinds
+
+    /*
+     * Marks the placeholders bound to a password column: those compared
+     * with or assigned to password, and those under password in an
+     * INSERT column list. If the statement mentions password in any other
+     * way, every placeholder is marked, to be safe.
+     */
+    static boolean[] passwordPlaceholders(String sql, int count) {
+       boolean[] redact = new boolean[count];
+       if (!sql.toLowerCase().contains("password")) {
+          return redact;
+       }
+
+       List<Integer> positions = placeholders(sql);
+       boolean attributed = false;
+       for (int k = 0; k < positions.size() && k < count; ++k) {
+          if (PASSWORD_COMPARISON.matcher(sql.substring(0, positions.get(k))).find()) {
+             redact[k] = true;
+             attributed = true;
+          }
+       }
+
+       Matcher insert = INSERT_COLUMNS.matcher(sql);
+       if (insert.find()) {
+          String[] columns = insert.group(1).split(",");
+          int valuesStart = insert.end();
+          int valuesEnd = sql.indexOf(')', valuesStart);
+          String[] values = sql.substring(valuesStart, valuesEnd < 0 ? sql.length() : valuesEnd).split(",");
+          int ordinal = 0;
+          for (int p : positions) {
+             if (p < valuesStart) {
+                ++ordinal;
+             }
+          }
+          for (int i = 0; i < values.length && i < columns.length; ++i) {
+             if (values[i].trim().startsWith("?")) {
+                if (columns[i].trim().equalsIgnoreCase("password") && ordinal < count) {
+                   redact[ordinal] = true;
+                   attributed = true;
+                }
+                ++ordinal;
+             }
+          }
+       }
+
+       if (!attributed) {
+          java.util.Arrays.fill(redact, true);
+       }
+       return redact;
+    }//end passwordPlaceholders
+
+    /*
+     * Returns the offsets of the '?' placeholders outside string literals.
+     */
+    static List<Integer> placeholders(String sql) {
+       List<Integer> positions = new ArrayList<Integer>();
+       boolean quoted = false;
+       for (int i = 0; i < sql.length(); ++i) {
+          char c = sql.charAt(i);
+          if (c == '\'') {
+             quoted = !quoted;
+          } else if (c == '?' && !quoted) {
+             positions.add(i);
+          }
+       }
+       return positions;
+    }
+ }//end SlowQueryLog
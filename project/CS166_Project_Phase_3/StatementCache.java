@@ -0,0 +1,102 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.Connection;
+ import java.sql.PreparedStatement;
+ import java.sql.SQLException;
+ import java.util.LinkedHashMap;
+ import java.util.Map;
+ import java.util.concurrent.atomic.AtomicLong;
+
+ /**
+  * A least-recently-used cache of PreparedStatements for one connection,
+  * keyed by SQL text. Statements stay open while cached so the driver can
+  * keep the server-side prepared plan; evicted statements are closed.
+  *
+  * Not thread safe: a connection (and therefore its cache) is only ever
+  * used by the borrower that currently holds it.
+  *
+  */
+ public class StatementCache {
+
+    private final Connection _connection;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+    private final LinkedHashMap<String, PreparedStatement> _statements;
+
+    /**
+     * @param connection the connection statements are prepared on
+     * @param capacity the maximum number of statements kept open
+     * @param hits counter incremented when a cached statement is reused
+     * @param misses counter incremented when a statement has to be prepared
+     */
+    public StatementCache(Connection connection, final int capacity,
+                          AtomicLong hits, AtomicLong misses) {
+       _connection = connection;
+       _hits = hits;
+       _misses = misses;
+       _statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+             if (size() > capacity) {
+                closeQuietly(eldest.getValue());
+                return true;
+             }
+             return false;
+          }
+       };
+    }//end StatementCache
+
+    /**
+     * Returns an open PreparedStatement for the SQL text, preparing it on a
+     * miss. The caller must not close it.
+     *
+     * @param sql the SQL text with '?' placeholders
+     * @return the cached statement with its parameters cleared
+     * @throws java.sql.SQLException when the statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+       PreparedStatement stmt = _statements.get(sql);
+       if (stmt != null && !stmt.isClosed()) {
+          _hits.incrementAndGet();
+          stmt.clearParameters();
+          return stmt;
+       }
+
+       _misses.incrementAndGet();
+       stmt = _connection.prepareStatement(sql);
+       _statements.put(sql, stmt);
+       return stmt;
+    }//end prepare
+
+    /**
+     * Closes every cached statement.
+     */
+    public void clear() {
+       for (PreparedStatement stmt : _statements.values()) {
+          closeQuietly(stmt);
+       }
+       _statements.clear();
+    }
+
+    public int size() {
+       return _statements.size();
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+       try {
+          stmt.close();
+       } catch (SQLException e) {
+          // ignored.
+       }
+    }
+ }//end StatementCache
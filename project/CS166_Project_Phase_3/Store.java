@@ -0,0 +1,76 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+
+ /**
+  * One row of the Store table.
+  *
+  */
+ public final class Store {
+
+    public static final RowMapper<Store> MAPPER =
+       new RowMapper<Store>("storeID", "address", "city", "state", "isOpen", "reviewScore") {
+          @Override
+          protected Store map(ResultSet rs, int[] columns) throws SQLException {
+             double reviewScore = rs.getDouble(columns[5]);
+             return new Store(rs.getInt(columns[0]), rs.getString(columns[1]),
+                              rs.getString(columns[2]), rs.getString(columns[3]),
+                              rs.getString(columns[4]), rs.wasNull() ? null : reviewScore);
+          }
+       };
+
+    private final int _storeID;
+    private final String _address;
+    private final String _city;
+    private final String _state;
+    private final String _isOpen;
+    private final Double _reviewScore;
+
+    public Store(int storeID, String address, String city, String state,
+                 String isOpen, Double reviewScore) {
+       _storeID = storeID;
+       _address = address;
+       _city = city;
+       _state = state;
+       _isOpen = isOpen;
+       _reviewScore = reviewScore;
+    }
+
+    public int getStoreID() {
+       return _storeID;
+    }
+
+    public String getAddress() {
+       return _address;
+    }
+
+    public String getCity() {
+       return _city;
+    }
+
+    public String getState() {
+       return _state;
+    }
+
+    public String getIsOpen() {
+       return _isOpen;
+    }
+
+    /**
+     * Returns the review score, or null if the store has none.
+     */
+    public Double getReviewScore() {
+       return _reviewScore;
+    }
+ }//end Store
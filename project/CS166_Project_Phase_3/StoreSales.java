@@ -0,0 +1,110 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+ import java.math.BigDecimal;
+ import java.math.RoundingMode;
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+ import java.sql.Timestamp;
+
+ /**
+  * Sales of one store, or of every store in one period, over a report
+  * range, read from the StoreSalesHourly and ItemSalesDaily rollups.
+  *
+  */
+ public final class StoreSales {
+
+    public static final RowMapper<StoreSales> MAPPER =
+       new RowMapper<StoreSales>("storeID", "period", "orderCount", "completedCount", "revenue", "itemCount") {
+          @Override
+          protected StoreSales map(ResultSet rs, int[] columns) throws SQLException {
+             return new StoreSales(rs.getInt(columns[0]), rs.getTimestamp(columns[1]),
+                                   rs.getLong(columns[2]), rs.getLong(columns[3]),
+                                   rs.getBigDecimal(columns[4]), rs.getLong(columns[5]));
+          }
+       };
+
+    private final int _storeID;
+    private final Timestamp _period;
+    private final long _orderCount;
+    private final long _completedCount;
+    private final BigDecimal _revenue;
+    private final long _itemCount;
+
+    public StoreSales(int storeID, Timestamp period, long orderCount, long completedCount,
+                      BigDecimal revenue, long itemCount) {
+       _storeID = storeID;
+       _period = period;
+       _orderCount = orderCount;
+       _completedCount = completedCount;
+       _revenue = revenue;
+       _itemCount = itemCount;
+    }
+
+    /**
+     * Returns the store, or 0 for a period row.
+     */
+    public int getStoreID() {
+       return _storeID;
+    }
+
+    /**
+     * Returns the start of the hour or day the row covers, or null for a
+     * row over the whole report range.
+     */
+    public Timestamp getPeriod() {
+       return _period;
+    }
+
+    public long getOrderCount() {
+       return _orderCount;
+    }
+
+    public long getCompletedCount() {
+       return _completedCount;
+    }
+
+    public BigDecimal getRevenue() {
+       return _revenue;
+    }
+
+    /**
+     * Returns the number of items sold; 0 in hourly rows, since items are
+     * rolled up per day.
+     */
+    public long getItemCount() {
+       return _itemCount;
+    }
+
+    /**
+     * Returns the average order total, or zero when there were no orders.
+     */
+    public BigDecimal getAverageBasket() {
+       return _orderCount == 0 ? BigDecimal.ZERO
+          : _revenue.divide(BigDecimal.valueOf(_orderCount), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Returns the average number of items per order.
+     */
+    public double getAverageItems() {
+       return _orderCount == 0 ? 0 : (double) _itemCount / _orderCount;
+    }
+
+    /**
+     * Returns the fraction of orders completed, between 0 and 1.
+     */
+    public double getCompletionRate() {
+       return _orderCount == 0 ? 0 : (double) _completedCount / _orderCount;
+    }
+ }//end StoreSales
@@ -0,0 +1,58 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ import java.sql.ResultSet;
+ import java.sql.SQLException;
+
+ /**
+  * One row of the Users table, without the password.
+  *
+  */
+ public final class User {
+
+    public static final RowMapper<User> MAPPER =
+       new RowMapper<User>("login", "role", "favoriteItems", "phoneNum") {
+          @Override
+          protected User map(ResultSet rs, int[] columns) throws SQLException {
+             return new User(rs.getString(columns[0]), getTrimmed(rs, columns[1]),
+                             rs.getString(columns[2]), rs.getString(columns[3]));
+          }
+       };
+
+    private final String _login;
+    private final String _role;
+    private final String _favoriteItems;
+    private final String _phoneNum;
+
+    public User(String login, String role, String favoriteItems, String phoneNum) {
+       _login = login;
+       _role = role;
+       _favoriteItems = favoriteItems;
+       _phoneNum = phoneNum;
+    }
+
+    public String getLogin() {
+       return _login;
+    }
+
+    public String getRole() {
+       return _role;
+    }
+
+    public String getFavoriteItems() {
+       return _favoriteItems;
+    }
+
+    public String getPhoneNum() {
+       return _phoneNum;
+    }
+ }//end User
@@ -0,0 +1,186 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+ package pizzastore.bench;
+
+ import java.lang.reflect.InvocationTargetException;
+ import java.util.ArrayList;
+ import java.util.Arrays;
+ import java.util.List;
+ import java.util.concurrent.Callable;
+ import java.util.concurrent.TimeUnit;
+ import java.util.function.Function;
+ import org.openjdk.jmh.annotations.Benchmark;
+ import org.openjdk.jmh.annotations.BenchmarkMode;
+ import org.openjdk.jmh.annotations.Fork;
+ import org.openjdk.jmh.annotations.Level;
+ import org.openjdk.jmh.annotations.Measurement;
+ import org.openjdk.jmh.annotations.Mode;
+ import org.openjdk.jmh.annotations.OutputTimeUnit;
+ import org.openjdk.jmh.annotations.Param;
+ import org.openjdk.jmh.annotations.Scope;
+ import org.openjdk.jmh.annotations.Setup;
+ import org.openjdk.jmh.annotations.State;
+ import org.openjdk.jmh.annotations.TearDown;
+ import org.openjdk.jmh.annotations.Threads;
+ import org.openjdk.jmh.annotations.Warmup;
+ import org.openjdk.jmh.profile.GCProfiler;
+ import org.openjdk.jmh.runner.Runner;
+ import org.openjdk.jmh.runner.options.CommandLineOptions;
+ import org.openjdk.jmh.runner.options.Options;
+ import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+ /**
+  * JMH benchmarks for each PizzaStore query helper and menu action, reporting throughput, sampled latency (p50, p99 and the other
+  * percentiles) and, through the GC profiler, allocation rate and bytes
+  * per operation.
+  *
+  * The operations themselves are PizzaStoreBenchmark's, reached through
+  * PizzaStoreBenchmark.Fixture: JMH does not accept benchmark classes in
+  * the default package, and a named package cannot import from it.
+  *
+  * main() loads a BenchmarkSchema once, runs every benchmark against it in
+  * forked JVMs and drops it afterwards, so placeOrder and the other writes
+  * never reach the database's own tables. The scale and schema are set
+  * with the gen.* and bench.* options of DataGenerator and BenchmarkSchema,
+  * and JMH options may follow the connection arguments, e.g.
+  *
+  *   java -Dgen.orders=100000 -jar benchmarks/target/benchmarks.jar \
+  *        pizzastore 5432 postgres -p "operation=menu: placeOrder"
+  *
+  * Run it from the directory holding the SQL scripts.
+  *
+  */
+ @State(Scope.Benchmark)
+ @BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+ @OutputTimeUnit(TimeUnit.MILLISECONDS)
+ @Warmup(iterations = 3, time = 5)
+ @Measurement(iterations = 5, time = 5)
+ @Fork(1)
+ // menu actions swap PizzaStore.in and System.out, so one caller at a time
+ @Threads(1)
+ public class DataAccessBenchmark {
+
+    @Param({
+       "executeQuery",
+       "executeQueryAndReturnResult",
+       "executeQueryAndPrintResult",
+       "executeQueryAndMap",
+       "executeQueryAndStream",
+       "executeUpdate",
+       "executeBatchUpdate",
+       "getCurrSeqVal",
+       "menu: viewMenu",
+       "menu: viewStores",
+       "menu: viewRecentOrders",
+       "menu: viewAllOrders",
+       "menu: viewOrderInfo",
+       "menu: placeOrder",
+       "menu: viewProfile",
+       "menu: updateProfile",
+       "menu: updateOrderStatus",
+       "menu: updateMenu",
+       "menu: updateUser"
+    })
+    public String operation;
+
+    private AutoCloseable _fixture;
+    private Callable<Object> _operation;
+
+    /**
+     * Connects to the benchmark schema named by bench.db, bench.port,
+     * bench.user and bench.schema, which main() passes to the forked JVMs.
+     */
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+       Object fixture = construct("PizzaStoreBenchmark$Fixture",
+          System.getProperty("bench.db"), System.getProperty("bench.port"), System.getProperty("bench.user"));
+       _fixture = (AutoCloseable) fixture;
+       _operation = ((Function<String, Callable<Object>>) fixture).apply(operation);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+       return _operation.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+       _fixture.close();
+    }
+
+    /**
+     * The main execution method
+     *
+     * @param args the command line arguments: <dbname> <port> <user> [JMH options]
+     */
+    public static void main(String[] args) throws Exception {
+       if (args.length < 3) {
+          System.err.println (
+             "Usage: " +
+             "java [-Dgen.orders=N] -jar benchmarks.jar " +
+             "<dbname> <port> <user> [JMH options]");
+          return;
+       }//end if
+
+       Class.forName ("org.postgresql.Driver");
+       AutoCloseable schema;
+       try {
+          schema = (AutoCloseable) Class.forName("BenchmarkSchema")
+             .getMethod("prepare", String.class, String.class, String.class)
+             .invoke(null, args[0], args[1], args[2]);
+       } catch (InvocationTargetException e) {
+          throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+       }
+       try {
+          Options options = new OptionsBuilder()
+             .parent(new CommandLineOptions(Arrays.copyOfRange(args, 3, args.length)))
+             .include(DataAccessBenchmark.class.getName())
+             .addProfiler(GCProfiler.class)
+             .jvmArgsAppend(forkProperties(args))
+             .build();
+          new Runner(options).run();
+       } finally {
+          schema.close();
+       }
+    }//end main
+
+    /*
+     * The connection arguments as bench.db, bench.port and bench.user, and
+     * this JVM's other bench.* and pizzastore.* options, so the forks open
+     * the same schema with the same store settings.
+     */
+    private static String[] forkProperties(String[] args) {
+       List<String> properties = new ArrayList<String>();
+       for (String name : System.getProperties().stringPropertyNames()) {
+          if ((name.startsWith("bench.") || name.startsWith("pizzastore."))
+                && !name.equals("bench.db") && !name.equals("bench.port") && !name.equals("bench.user")) {
+             properties.add("-D" + name + "=" + System.getProperty(name));
+          }
+       }
+       properties.add("-Dbench.db=" + args[0]);
+       properties.add("-Dbench.port=" + args[1]);
+       properties.add("-Dbench.user=" + args[2]);
+       return properties.toArray(new String[0]);
+    }
+
+    private static Object construct(String className, String... args) throws Exception {
+       Class<?>[] types = new Class<?>[args.length];
+       Arrays.fill(types, String.class);
+       try {
+          return Class.forName(className).getConstructor(types).newInstance((Object[]) args);
+       } catch (InvocationTargetException e) {
+          throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+       }
+    }
+ }//end DataAccessBenchmark
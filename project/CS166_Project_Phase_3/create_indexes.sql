@@ -1,6 +1,13 @@
 DROP INDEX IF EXISTS USER_LOGIN_INDEX;
 DROP INDEX IF EXISTS ITEM_TYPE_INDEX;
 DROP INDEX IF EXISTS ITEM_PRICE_INDEX;
+DROP INDEX IF EXISTS FOOD_ORDER_TIMESTAMP_INDEX;
+DROP INDEX IF EXISTS FOOD_ORDER_LOGIN_TIMESTAMP_INDEX;
+DROP INDEX IF EXISTS FOOD_ORDER_STORE_TIMESTAMP_INDEX;
+DROP INDEX IF EXISTS FOOD_ORDER_INCOMPLETE_INDEX;
+DROP INDEX IF EXISTS ITEMS_IN_ORDER_ITEM_INDEX;
+DROP INDEX IF EXISTS STORE_SALES_HOUR_INDEX;
+DROP INDEX IF EXISTS ITEM_SALES_DAY_INDEX;
 
 -- Speeds up the login process.
 CREATE INDEX USER_LOGIN_INDEX
@@ -17,4 +24,51 @@ CREATE INDEX ITEM_PRICE_INDEX
 ON Items
 -- This is a range query, so we use a B-tree.
 USING BTREE
-(price);
\ No newline at end of file
+(price);
+
+-- Lets the order history screens page through all orders, newest first,
+-- with an index range scan (keyset pagination on orderTimestamp, orderID).
+-- The remaining FoodOrder columns are included so pages are index-only scans.
+CREATE INDEX FOOD_ORDER_TIMESTAMP_INDEX
+ON FoodOrder
+(orderTimestamp DESC, orderID DESC)
+INCLUDE (login, storeID, totalPrice, orderStatus);
+
+-- Same as above, for the orders of one customer. Also serves
+-- recent_order_ids(), which keeps the "past 5 orders" of
+-- CustomerOrderSummary (login = ? ORDER BY orderTimestamp DESC LIMIT 5).
+CREATE INDEX FOOD_ORDER_LOGIN_TIMESTAMP_INDEX
+ON FoodOrder
+(login, orderTimestamp DESC, orderID DESC)
+INCLUDE (storeID, totalPrice, orderStatus);
+
+-- Speeds up per-store order lookups and reports over a time range.
+CREATE INDEX FOOD_ORDER_STORE_TIMESTAMP_INDEX
+ON FoodOrder
+(storeID, orderTimestamp DESC)
+INCLUDE (totalPrice, orderStatus);
+
+-- Small partial index over the orders drivers still have to deliver.
+CREATE INDEX FOOD_ORDER_INCOMPLETE_INDEX
+ON FoodOrder
+(storeID, orderTimestamp)
+WHERE orderStatus = 'incomplete';
+
+-- ItemsInOrder joins on orderID use the (orderID, itemName) primary key.
+-- This one serves per-item lookups and the ON DELETE CASCADE from Items.
+CREATE INDEX ITEMS_IN_ORDER_ITEM_INDEX
+ON ItemsInOrder
+(itemName)
+INCLUDE (quantity);
+
+-- Sales reports over every store for a time range read the rollups with
+-- index-only scans; per-store reports use the primary keys.
+CREATE INDEX STORE_SALES_HOUR_INDEX
+ON StoreSalesHourly
+(hourStart)
+INCLUDE (storeID, orderCount, completedCount, revenue);
+
+CREATE INDEX ITEM_SALES_DAY_INDEX
+ON ItemSalesDaily
+(day)
+INCLUDE (itemName, quantity, orderCount);
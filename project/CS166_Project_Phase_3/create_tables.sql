@@ -3,6 +3,11 @@ DROP TABLE IF EXISTS Items CASCADE;
 DROP TABLE IF EXISTS FoodOrder CASCADE;
 DROP TABLE IF EXISTS Store CASCADE;
 DROP TABLE IF EXISTS ItemsInOrder CASCADE;
+DROP TABLE IF EXISTS CustomerOrderSummary CASCADE;
+DROP TABLE IF EXISTS ArchivedCustomerTotals CASCADE;
+DROP TABLE IF EXISTS StoreSalesHourly CASCADE;
+DROP TABLE IF EXISTS ItemSalesDaily CASCADE;
+DROP TABLE IF EXISTS SalesRollupWatermark CASCADE;
 
 CREATE TABLE Users ( login varchar(50) NOT NULL,
                      password varchar(30) NOT NULL,
@@ -53,3 +58,55 @@ CREATE TABLE ItemsInOrder ( orderID integer NOT NULL,
                            ON DELETE CASCADE
 );
 
+-- One row per customer with orders, kept up to date by the
+-- customer_summary_trigger on FoodOrder (see create_triggers.sql).
+CREATE TABLE CustomerOrderSummary ( login varchar(50) NOT NULL,
+                           orderCount integer NOT NULL,
+                           lifetimeSpend decimal(14,2) NOT NULL,
+                           recentOrderIDs integer[] NOT NULL, --newest first, at most 5
+                           lastOrderTimestamp timestamp,
+                           PRIMARY KEY(login),
+                           FOREIGN KEY(login) REFERENCES Users(login)
+                           ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+-- Order count and spend of each customer's orders that have left
+-- FoodOrder, archived by OrderArchiver or detached with their monthly
+-- partition. The CustomerOrderSummary rebuilds add these back in, so
+-- archived orders keep counting towards the lifetime totals.
+CREATE TABLE ArchivedCustomerTotals ( login varchar(50) NOT NULL,
+                           orderCount integer NOT NULL,
+                           lifetimeSpend decimal(14,2) NOT NULL,
+                           lastOrderTimestamp timestamp,
+                           PRIMARY KEY(login),
+                           FOREIGN KEY(login) REFERENCES Users(login)
+                           ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+-- Sales report rollups, rebuilt incrementally by refresh_sales_rollups()
+-- (see create_triggers.sql and SalesReports.java). Reports read these
+-- instead of scanning FoodOrder and ItemsInOrder.
+CREATE TABLE StoreSalesHourly ( storeID integer NOT NULL,
+                           hourStart timestamp NOT NULL,
+                           orderCount integer NOT NULL,
+                           completedCount integer NOT NULL, --orderStatus = 'completed' when rolled up
+                           revenue decimal(14,2) NOT NULL,
+                           PRIMARY KEY(storeID, hourStart)
+);
+
+CREATE TABLE ItemSalesDaily ( storeID integer NOT NULL,
+                           day date NOT NULL,
+                           itemName varchar(50) NOT NULL,
+                           quantity bigint NOT NULL,
+                           orderCount integer NOT NULL,
+                           PRIMARY KEY(storeID, day, itemName)
+);
+
+-- A single row. Rollups cover orders up to refreshedThrough; those before
+-- finalizedBefore are never re-aggregated again.
+CREATE TABLE SalesRollupWatermark ( refreshedThrough timestamp NOT NULL,
+                           finalizedBefore timestamp NOT NULL,
+                           refreshedAt timestamp
+);
+
+INSERT INTO SalesRollupWatermark (refreshedThrough, finalizedBefore) VALUES ('-infinity', '-infinity');
@@ -0,0 +1,259 @@
+-- Variant of create_tables.sql with FoodOrder and ItemsInOrder range
+-- partitioned by month on orderTimestamp (PostgreSQL 13 or later). Run it
+-- instead of create_tables.sql; create_triggers.sql and create_indexes.sql
+-- apply unchanged, their indexes cascading to every partition. Keep future
+-- partitions created, and old ones detached, with PartitionMaintainer.
+
+DROP TABLE IF EXISTS Users CASCADE;
+DROP TABLE IF EXISTS Items CASCADE;
+DROP TABLE IF EXISTS FoodOrder CASCADE;
+DROP TABLE IF EXISTS Store CASCADE;
+DROP TABLE IF EXISTS ItemsInOrder CASCADE;
+DROP TABLE IF EXISTS CustomerOrderSummary CASCADE;
+DROP TABLE IF EXISTS ArchivedCustomerTotals CASCADE;
+DROP TABLE IF EXISTS StoreSalesHourly CASCADE;
+DROP TABLE IF EXISTS ItemSalesDaily CASCADE;
+DROP TABLE IF EXISTS SalesRollupWatermark CASCADE;
+
+CREATE TABLE Users ( login varchar(50) NOT NULL,
+                     password varchar(30) NOT NULL,
+                     role char(20) NOT NULL,
+                     favoriteItems text,
+                     phoneNum varchar(20) NOT NULL,
+                     PRIMARY KEY(login)
+);
+
+CREATE TABLE Items ( itemName varchar(50) NOT NULL,
+                       ingredients varchar(300) NOT NULL,
+                       typeOfItem varchar(30) NOT NULL,
+                       price decimal(10,2) NOT NULL,
+                       description text,
+                       PRIMARY KEY(itemName)
+);
+
+CREATE TABLE Store ( storeID integer NOT NULL,
+                           address varchar(50) NOT NULL,
+                           city varchar(50) NOT NULL,
+                           state varchar(60) NOT NULL,
+                           isOpen varchar(60) NOT NULL,
+                           reviewScore float,
+                           PRIMARY KEY(storeID)
+);
+
+-- Orders are range partitioned by month on orderTimestamp, so screens
+-- that only need recent orders read only recent partitions, and old
+-- months can be detached as whole tables. The partition key must be
+-- part of every unique constraint, hence the (orderID, orderTimestamp)
+-- primary key; orderID alone still comes from orderID_seq.
+CREATE TABLE FoodOrder ( orderID integer NOT NULL,
+                           login varchar(50) NOT NULL, --places relationship
+                           storeID integer NOT NULL, --placedAt relationship
+                           totalPrice decimal(10,2) NOT NULL,
+                           orderTimestamp timestamp NOT NULL,
+                           orderStatus char(50),
+                           PRIMARY KEY(orderID, orderTimestamp),
+                           FOREIGN KEY(login) REFERENCES Users(login)
+                           ON DELETE CASCADE,
+                           FOREIGN KEY(storeID) REFERENCES Store(storeID)
+                           ON DELETE CASCADE
+) PARTITION BY RANGE (orderTimestamp);
+
+-- Co-partitioned with FoodOrder: each line carries its order's timestamp.
+-- The default is the transaction start time, which is the NOW() the order
+-- was written with when both are inserted in one transaction, as
+-- submitOrder does; the foreign key rejects a line whose timestamp does
+-- not match its order.
+CREATE TABLE ItemsInOrder ( orderID integer NOT NULL,
+                           orderTimestamp timestamp NOT NULL DEFAULT now(),
+                           itemName varchar(50) NOT NULL,
+                           quantity integer NOT NULL,
+                           PRIMARY KEY(orderID, orderTimestamp, itemName),
+                           FOREIGN KEY(orderID, orderTimestamp) REFERENCES FoodOrder(orderID, orderTimestamp)
+                           ON DELETE CASCADE,
+                           FOREIGN KEY(itemName) REFERENCES Items(itemName)
+                           ON DELETE CASCADE
+) PARTITION BY RANGE (orderTimestamp);
+
+-- Catch orders outside every monthly partition, so inserts never fail;
+-- create_order_partition() moves them out when their month is created.
+CREATE TABLE FoodOrder_default PARTITION OF FoodOrder DEFAULT;
+CREATE TABLE ItemsInOrder_default PARTITION OF ItemsInOrder DEFAULT;
+
+-- One row per customer with orders, kept up to date by the
+-- customer_summary_trigger on FoodOrder (see create_triggers.sql).
+CREATE TABLE CustomerOrderSummary ( login varchar(50) NOT NULL,
+                           orderCount integer NOT NULL,
+                           lifetimeSpend decimal(14,2) NOT NULL,
+                           recentOrderIDs integer[] NOT NULL, --newest first, at most 5
+                           lastOrderTimestamp timestamp,
+                           PRIMARY KEY(login),
+                           FOREIGN KEY(login) REFERENCES Users(login)
+                           ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+-- Order count and spend of each customer's orders that have left
+-- FoodOrder, archived by OrderArchiver or detached with their monthly
+-- partition. The CustomerOrderSummary rebuilds add these back in, so
+-- archived orders keep counting towards the lifetime totals.
+CREATE TABLE ArchivedCustomerTotals ( login varchar(50) NOT NULL,
+                           orderCount integer NOT NULL,
+                           lifetimeSpend decimal(14,2) NOT NULL,
+                           lastOrderTimestamp timestamp,
+                           PRIMARY KEY(login),
+                           FOREIGN KEY(login) REFERENCES Users(login)
+                           ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+-- Sales report rollups, rebuilt incrementally by refresh_sales_rollups()
+-- (see create_triggers.sql and SalesReports.java). Reports read these
+-- instead of scanning FoodOrder and ItemsInOrder.
+CREATE TABLE StoreSalesHourly ( storeID integer NOT NULL,
+                           hourStart timestamp NOT NULL,
+                           orderCount integer NOT NULL,
+                           completedCount integer NOT NULL, --orderStatus = 'completed' when rolled up
+                           revenue decimal(14,2) NOT NULL,
+                           PRIMARY KEY(storeID, hourStart)
+);
+
+CREATE TABLE ItemSalesDaily ( storeID integer NOT NULL,
+                           day date NOT NULL,
+                           itemName varchar(50) NOT NULL,
+                           quantity bigint NOT NULL,
+                           orderCount integer NOT NULL,
+                           PRIMARY KEY(storeID, day, itemName)
+);
+
+-- A single row. Rollups cover orders up to refreshedThrough; those before
+-- finalizedBefore are never re-aggregated again.
+CREATE TABLE SalesRollupWatermark ( refreshedThrough timestamp NOT NULL,
+                           finalizedBefore timestamp NOT NULL,
+                           refreshedAt timestamp
+);
+
+INSERT INTO SalesRollupWatermark (refreshedThrough, finalizedBefore) VALUES ('-infinity', '-infinity');
+
+
+-- Partition maintenance (see PartitionMaintainer.java).
+--
+-- Creates the FoodOrder and ItemsInOrder partitions of the month holding
+-- the given time, named foodorder_pYYYYMM and itemsinorder_pYYYYMM, and
+-- moves that month's rows out of the default partitions into them. The
+-- tables are built detached and then attached, which locks the parents
+-- less than CREATE TABLE ... PARTITION OF does, so orders can still be
+-- read and written. Returns false if the month already has its partitions.
+CREATE OR REPLACE FUNCTION create_order_partition(monthTs timestamp)
+RETURNS boolean AS
+$BODY$
+DECLARE
+    lo timestamp := date_trunc('month', monthTs);
+    hi timestamp := date_trunc('month', monthTs) + interval '1 month';
+    orders text := 'foodorder_p' || to_char(monthTs, 'YYYYMM');
+    items text := 'itemsinorder_p' || to_char(monthTs, 'YYYYMM');
+BEGIN
+    IF to_regclass(orders) IS NOT NULL THEN
+        RETURN false;
+    END IF;
+
+    -- moved rows are not new orders; keeps the summary trigger out of it.
+    PERFORM set_config('pizzastore.archiving', 'on', true);
+
+    EXECUTE format('CREATE TABLE %I (LIKE FoodOrder INCLUDING DEFAULTS)', orders);
+    EXECUTE format('CREATE TABLE %I (LIKE ItemsInOrder INCLUDING DEFAULTS)', items);
+    EXECUTE format('WITH moved AS (DELETE FROM ItemsInOrder_default WHERE orderTimestamp >= $1 AND orderTimestamp < $2 RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved', items) USING lo, hi;
+    EXECUTE format('WITH moved AS (DELETE FROM FoodOrder_default WHERE orderTimestamp >= $1 AND orderTimestamp < $2 RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved', orders) USING lo, hi;
+
+    -- attaching builds the partitions' share of the indexes and foreign keys.
+    EXECUTE format('ALTER TABLE FoodOrder ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', orders, lo, hi);
+    EXECUTE format('ALTER TABLE ItemsInOrder ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', items, lo, hi);
+
+    PERFORM set_config('pizzastore.archiving', 'off', true);
+    RETURN true;
+END;
+$BODY$
+LANGUAGE plpgsql;
+
+-- Creates the partitions of every month from fromTs up to toTs; returns
+-- how many were new.
+CREATE OR REPLACE FUNCTION create_order_partitions(fromTs timestamp, toTs timestamp)
+RETURNS integer AS
+$BODY$
+DECLARE
+    monthStart timestamp := date_trunc('month', fromTs);
+    created integer := 0;
+BEGIN
+    WHILE monthStart < toTs LOOP
+        IF create_order_partition(monthStart) THEN
+            created := created + 1;
+        END IF;
+        monthStart := monthStart + interval '1 month';
+    END LOOP;
+    RETURN created;
+END;
+$BODY$
+LANGUAGE plpgsql;
+
+-- Detaches the monthly partitions that end on or before beforeTs, and
+-- returns the names of the detached FoodOrder tables. The detached tables
+-- keep their rows, with no foreign keys, until archived or dropped.
+--
+-- A month is only detached once the sales rollups are final for it
+-- (SalesRollupWatermark.finalizedBefore), so reports keep counting it.
+-- Detached orders also keep counting in CustomerOrderSummary: their
+-- totals move to ArchivedCustomerTotals, which its rebuilds add in.
+-- OrderArchiver copies detached months into the order archive, where
+-- lookups find them, and marks them archived; only then may
+-- PartitionMaintainer drop them.
+-- DETACH needs a brief ACCESS EXCLUSIVE lock on FoodOrder and ItemsInOrder.
+CREATE OR REPLACE FUNCTION detach_order_partitions(beforeTs timestamp)
+RETURNS SETOF text AS
+$BODY$
+DECLARE
+    cutoff timestamp := LEAST(beforeTs, (SELECT W.finalizedBefore FROM SalesRollupWatermark W));
+    part record;
+    fk record;
+    items text;
+BEGIN
+    FOR part IN
+        SELECT C.relname AS orders,
+               to_timestamp(substr(C.relname, 12), 'YYYYMM')::timestamp + interval '1 month' AS hi
+        FROM pg_inherits I JOIN pg_class C ON C.oid = I.inhrelid
+        WHERE I.inhparent = 'foodorder'::regclass AND C.relname ~ '^foodorder_p[0-9]{6}$'
+        ORDER BY C.relname
+    LOOP
+        EXIT WHEN part.hi > cutoff;
+        items := 'itemsinorder_p' || substr(part.orders, 12);
+
+        -- lines first: an attached line would still reference the orders. Their
+        -- foreign keys stay behind on the detached table and must go before
+        -- the orders are detached, which would otherwise find them referenced.
+        EXECUTE format('ALTER TABLE ItemsInOrder DETACH PARTITION %I', items);
+        FOR fk IN
+            SELECT N.conname FROM pg_constraint N
+            WHERE N.contype = 'f' AND N.conrelid = to_regclass(items)
+        LOOP
+            EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', items, fk.conname);
+        END LOOP;
+        EXECUTE format('ALTER TABLE FoodOrder DETACH PARTITION %I', part.orders);
+        EXECUTE format('INSERT INTO ArchivedCustomerTotals AS A (login, orderCount, lifetimeSpend, lastOrderTimestamp) '
+                       'SELECT F.login, COUNT(*), SUM(F.totalPrice), MAX(F.orderTimestamp) FROM %I F GROUP BY F.login '
+                       'ON CONFLICT (login) DO UPDATE SET orderCount = A.orderCount + EXCLUDED.orderCount, '
+                       'lifetimeSpend = A.lifetimeSpend + EXCLUDED.lifetimeSpend, '
+                       'lastOrderTimestamp = GREATEST(A.lastOrderTimestamp, EXCLUDED.lastOrderTimestamp)', part.orders);
+        FOR fk IN
+            SELECT N.conname FROM pg_constraint N
+            WHERE N.contype = 'f' AND N.conrelid = to_regclass(part.orders)
+        LOOP
+            EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', part.orders, fk.conname);
+        END LOOP;
+        RETURN NEXT part.orders;
+    END LOOP;
+END;
+$BODY$
+LANGUAGE plpgsql;
+
+-- Monthly partitions for the past year and the next three months; older
+-- orders land in the default partitions until their month is created.
+SELECT create_order_partitions(date_trunc('month', LOCALTIMESTAMP) - interval '12 months',
+                               date_trunc('month', LOCALTIMESTAMP) + interval '4 months');
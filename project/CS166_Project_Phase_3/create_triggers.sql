@@ -1,19 +1,202 @@
 DROP SEQUENCE IF EXISTS orderID_seq;
 DROP TRIGGER IF EXISTS orderID_trigger ON FoodOrder;
 
-CREATE SEQUENCE orderID_seq START WITH 10000;
+-- Each nextval reserves a block of 50 IDs. OrderIdAllocator hands its
+-- blocks out in-process; rows inserted without an orderID take theirs
+-- from a block the trigger below keeps per database session, so they
+-- use up the ID space no faster than the allocator. IDs left in a block
+-- when its session ends are skipped.
+CREATE SEQUENCE orderID_seq START WITH 10000 INCREMENT BY 50;
 
+-- Start past any orders that are already loaded.
+SELECT setval('orderID_seq', GREATEST(10000, (SELECT COALESCE(MAX(orderID), 0) + 1 FROM FoodOrder)), false);
+
+-- The session's block is [pizzastore.order_id_next, pizzastore.order_id_limit).
+-- The settings roll back with the transaction, which at worst skips the
+-- rest of a block reserved in it, never hands out an ID twice.
 CREATE OR REPLACE FUNCTION increment_orderID()
 RETURNS TRIGGER AS
 $BODY$
+DECLARE
+    nextID bigint := COALESCE(NULLIF(current_setting('pizzastore.order_id_next', true), ''), '0')::bigint;
+    limitID bigint := COALESCE(NULLIF(current_setting('pizzastore.order_id_limit', true), ''), '0')::bigint;
 BEGIN
-    NEW.orderID := nextval('orderID_seq');
+    IF nextID >= limitID THEN
+        nextID := nextval('orderID_seq');
+        limitID := nextID + (SELECT S.seqincrement FROM pg_sequence S WHERE S.seqrelid = 'orderID_seq'::regclass);
+        PERFORM set_config('pizzastore.order_id_limit', limitID::text, false);
+    END IF;
+    NEW.orderID := nextID;
+    PERFORM set_config('pizzastore.order_id_next', (nextID + 1)::text, false);
     RETURN NEW;
 END;
 $BODY$
 LANGUAGE plpgsql;
 
+-- Rows with an orderID, e.g. from OrderIdAllocator, skip the trigger.
 CREATE TRIGGER orderID_trigger
 BEFORE INSERT ON FoodOrder
 FOR EACH ROW
+WHEN (NEW.orderID IS NULL)
 EXECUTE PROCEDURE increment_orderID();
+
+-- CustomerOrderSummary maintenance.
+--
+-- New orders update their customer's row in place; when an order is not
+-- the customer's newest (e.g. loaded out of order), the five most recent
+-- IDs are re-read through FOOD_ORDER_LOGIN_TIMESTAMP_INDEX. Status updates
+-- do not touch the summary. The trigger does nothing in sessions that
+-- SET pizzastore.archiving = on (archived orders keep counting towards
+-- the lifetime totals, through ArchivedCustomerTotals once the row is
+-- rebuilt) or pizzastore.bulk_load = on (the loader calls
+-- backfill_customer_order_summary() once at the end instead).
+DROP TRIGGER IF EXISTS customer_summary_trigger ON FoodOrder;
+DROP TRIGGER IF EXISTS customer_summary_update_trigger ON FoodOrder;
+
+CREATE OR REPLACE FUNCTION customer_summary_suspended()
+RETURNS boolean AS
+$BODY$
+BEGIN
+    RETURN COALESCE(current_setting('pizzastore.archiving', true), '') = 'on'
+        OR COALESCE(current_setting('pizzastore.bulk_load', true), '') = 'on';
+END;
+$BODY$
+LANGUAGE plpgsql STABLE;
+
+CREATE OR REPLACE FUNCTION recent_order_ids(customer varchar)
+RETURNS integer[] AS
+$BODY$
+    SELECT COALESCE(ARRAY(SELECT F.orderID FROM FoodOrder F WHERE F.login = customer
+                          ORDER BY F.orderTimestamp DESC, F.orderID DESC LIMIT 5), '{}');
+$BODY$
+LANGUAGE sql STABLE;
+
+-- Recomputes one customer's row from FoodOrder and ArchivedCustomerTotals,
+-- removing it if they have no orders.
+CREATE OR REPLACE FUNCTION refresh_customer_order_summary(customer varchar)
+RETURNS void AS
+$BODY$
+BEGIN
+    INSERT INTO CustomerOrderSummary (login, orderCount, lifetimeSpend, recentOrderIDs, lastOrderTimestamp)
+    SELECT customer, SUM(T.orderCount), SUM(T.lifetimeSpend), recent_order_ids(customer), MAX(T.lastOrderTimestamp)
+    FROM (SELECT COUNT(*) AS orderCount, SUM(F.totalPrice) AS lifetimeSpend, MAX(F.orderTimestamp) AS lastOrderTimestamp
+          FROM FoodOrder F WHERE F.login = customer
+          UNION ALL
+          SELECT A.orderCount, A.lifetimeSpend, A.lastOrderTimestamp
+          FROM ArchivedCustomerTotals A WHERE A.login = customer) T
+    HAVING SUM(T.orderCount) > 0
+    ON CONFLICT (login) DO UPDATE SET
+        orderCount = EXCLUDED.orderCount,
+        lifetimeSpend = EXCLUDED.lifetimeSpend,
+        recentOrderIDs = EXCLUDED.recentOrderIDs,
+        lastOrderTimestamp = EXCLUDED.lastOrderTimestamp;
+    IF NOT FOUND THEN
+        DELETE FROM CustomerOrderSummary WHERE login = customer;
+    END IF;
+END;
+$BODY$
+LANGUAGE plpgsql;
+
+-- Rebuilds every row from FoodOrder in one pass, then adds in the
+-- ArchivedCustomerTotals.
+CREATE OR REPLACE FUNCTION backfill_customer_order_summary()
+RETURNS void AS
+$BODY$
+BEGIN
+    TRUNCATE CustomerOrderSummary;
+    INSERT INTO CustomerOrderSummary (login, orderCount, lifetimeSpend, recentOrderIDs, lastOrderTimestamp)
+    SELECT F.login, COUNT(*), SUM(F.totalPrice),
+           (ARRAY_AGG(F.orderID ORDER BY F.orderTimestamp DESC, F.orderID DESC))[1:5],
+           MAX(F.orderTimestamp)
+    FROM FoodOrder F
+    GROUP BY F.login;
+    INSERT INTO CustomerOrderSummary AS S (login, orderCount, lifetimeSpend, recentOrderIDs, lastOrderTimestamp)
+    SELECT A.login, A.orderCount, A.lifetimeSpend, '{}', A.lastOrderTimestamp
+    FROM ArchivedCustomerTotals A
+    ON CONFLICT (login) DO UPDATE SET
+        orderCount = S.orderCount + EXCLUDED.orderCount,
+        lifetimeSpend = S.lifetimeSpend + EXCLUDED.lifetimeSpend,
+        lastOrderTimestamp = GREATEST(S.lastOrderTimestamp, EXCLUDED.lastOrderTimestamp);
+END;
+$BODY$
+LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION maintain_customer_order_summary()
+RETURNS TRIGGER AS
+$BODY$
+BEGIN
+    IF customer_summary_suspended() THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO CustomerOrderSummary AS S (login, orderCount, lifetimeSpend, recentOrderIDs, lastOrderTimestamp)
+        VALUES (NEW.login, 1, NEW.totalPrice, ARRAY[NEW.orderID], NEW.orderTimestamp)
+        ON CONFLICT (login) DO UPDATE SET
+            orderCount = S.orderCount + 1,
+            lifetimeSpend = S.lifetimeSpend + NEW.totalPrice,
+            recentOrderIDs = CASE WHEN NEW.orderTimestamp >= S.lastOrderTimestamp
+                                  THEN (ARRAY[NEW.orderID] || S.recentOrderIDs)[1:5]
+                                  ELSE recent_order_ids(NEW.login) END,
+            lastOrderTimestamp = GREATEST(S.lastOrderTimestamp, NEW.orderTimestamp);
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM refresh_customer_order_summary(OLD.login);
+    ELSE
+        PERFORM refresh_customer_order_summary(OLD.login);
+        IF NEW.login <> OLD.login THEN
+            PERFORM refresh_customer_order_summary(NEW.login);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_summary_trigger
+AFTER INSERT OR DELETE ON FoodOrder
+FOR EACH ROW
+EXECUTE PROCEDURE maintain_customer_order_summary();
+
+CREATE TRIGGER customer_summary_update_trigger
+AFTER UPDATE OF login, totalPrice, orderTimestamp ON FoodOrder
+FOR EACH ROW
+EXECUTE PROCEDURE maintain_customer_order_summary();
+
+-- Summarizes any orders that are already loaded.
+SELECT backfill_customer_order_summary();
+
+-- Sales report rollups.
+--
+-- Re-aggregates the orders of some stores placed at or after fromTs into
+-- StoreSalesHourly and ItemSalesDaily, replacing the rollup rows of that
+-- window; fromTs is a day boundary, or NULL for everything. SalesReports
+-- calls this for several store groups in parallel, each on its own
+-- connection. FoodOrder and ItemsInOrder are only read, so order writes
+-- are never blocked; concurrent refreshes of the same store wait on a
+-- per-store advisory lock.
+CREATE OR REPLACE PROCEDURE refresh_sales_rollups(stores integer[], fromTs timestamp)
+AS
+$BODY$
+DECLARE
+    since timestamp := COALESCE(fromTs, '-infinity');
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('sales_rollup'), S.storeID)
+    FROM (SELECT DISTINCT unnest(stores) AS storeID ORDER BY 1) S;
+
+    DELETE FROM StoreSalesHourly H WHERE H.storeID = ANY(stores) AND H.hourStart >= since;
+    INSERT INTO StoreSalesHourly (storeID, hourStart, orderCount, completedCount, revenue)
+    SELECT F.storeID, date_trunc('hour', F.orderTimestamp), COUNT(*),
+           COUNT(*) FILTER (WHERE F.orderStatus = 'completed'), SUM(F.totalPrice)
+    FROM FoodOrder F
+    WHERE F.storeID = ANY(stores) AND F.orderTimestamp >= since
+    GROUP BY 1, 2;
+
+    DELETE FROM ItemSalesDaily D WHERE D.storeID = ANY(stores) AND D.day >= since::date;
+    INSERT INTO ItemSalesDaily (storeID, day, itemName, quantity, orderCount)
+    SELECT F.storeID, F.orderTimestamp::date, I.itemName, SUM(I.quantity), COUNT(*)
+    FROM FoodOrder F JOIN ItemsInOrder I ON I.orderID = F.orderID
+    WHERE F.storeID = ANY(stores) AND F.orderTimestamp >= since
+    GROUP BY 1, 2, 3;
+END;
+$BODY$
+LANGUAGE plpgsql;
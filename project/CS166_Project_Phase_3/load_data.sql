@@ -1,4 +1,5 @@
 /* Replace the location to where you saved the data files*/
+/* To load from the client machine instead, run BulkLoader <dbname> <port> <user> <data directory> */
 COPY Users
 FROM '/class/classes/vnagp002/CS166_Project_Phase_3/data/users.csv'
 WITH DELIMITER ',' CSV HEADER;
@@ -18,3 +19,22 @@ WITH DELIMITER ',' CSV HEADER;
 COPY ItemsInOrder
 FROM '/class/classes/vnagp002/CS166_Project_Phase_3/data/itemsinorder.csv'
 WITH DELIMITER ',' CSV HEADER;
+
+/* With create_tables_partitioned.sql, create partitions for the loaded orders and
+   load the lines through a staging table instead of the COPY ItemsInOrder above:
+
+SELECT create_order_partitions(MIN(F.orderTimestamp), MAX(F.orderTimestamp) + interval '1 second') FROM FoodOrder_default F;
+
+CREATE TEMP TABLE ItemsInOrderStage (orderID integer, itemName varchar(50), quantity integer);
+
+COPY ItemsInOrderStage
+FROM '/class/classes/vnagp002/CS166_Project_Phase_3/data/itemsinorder.csv'
+WITH DELIMITER ',' CSV HEADER;
+
+INSERT INTO ItemsInOrder (orderID, orderTimestamp, itemName, quantity)
+SELECT S.orderID, F.orderTimestamp, S.itemName, S.quantity
+FROM ItemsInOrderStage S JOIN FoodOrder F ON F.orderID = S.orderID;
+*/
+
+/* Issue new order IDs past the loaded ones */
+SELECT setval('orderID_seq', GREATEST(10000, (SELECT COALESCE(MAX(orderID), 0) + 1 FROM FoodOrder)), false);